@@ -0,0 +1,96 @@
+import java.util.Arrays;
+import java.util.Iterator;
+
+import bench.StringSetTarget;
+
+/**
+ * Adapts SplayFC to the benchmarks.  This class is in the default package so
+ * it can see SplayFC, and is created by name from bench.Targets.
+ * <p>
+ *
+ * The tree's SplayPolicy is named by a string: "always", "semi", "never",
+ * "p=0.1" for SplayPolicy.probabilistic(0.1), or "depth=2" for
+ * SplayPolicy.depthTriggered(2).
+ *
+ * @version 1.1
+ */
+public class SplayFCTarget implements StringSetTarget {
+
+    /**
+     * the tree being measured
+     */
+    private SplayFC t = new SplayFC();
+    /**
+     * the policy for contains
+     */
+    private final SplayPolicy policy;
+
+    public SplayFCTarget() {
+        this("always");
+    }
+
+    public SplayFCTarget(String policyName) {
+        policy = policy(policyName);
+        t.setSplayPolicy(policy);
+    }
+
+    /**
+     * @param name a policy name, as described above
+     * @return the policy
+     */
+    private static SplayPolicy policy(String name) {
+        if (name.equals("always")) {
+            return SplayPolicy.ALWAYS;
+        } else if (name.equals("semi")) {
+            return SplayPolicy.SEMI;
+        } else if (name.equals("never")) {
+            return SplayPolicy.NEVER;
+        } else if (name.startsWith("p=")) {
+            return SplayPolicy.probabilistic(Double.parseDouble(name.substring(2)));
+        } else if (name.startsWith("depth=")) {
+            return SplayPolicy.depthTriggered(Double.parseDouble(name.substring(6)));
+        }
+        throw new IllegalArgumentException("unknown splay policy: " + name);
+    }
+
+    public void load(String[] sortedKeys) {
+        t = SplayFC.fromSorted(Arrays.asList(sortedKeys).iterator());
+        t.setSplayPolicy(policy);
+    }
+
+    public boolean add(String k) {
+        return t.add(k);
+    }
+
+    public boolean remove(String k) {
+        return t.remove(k);
+    }
+
+    public boolean contains(String k) {
+        return t.contains(k);
+    }
+
+    public Object headSet(String k) {
+        return t.headSet(k);
+    }
+
+    public Object tailSet(String k) {
+        return t.tailSet(k);
+    }
+
+    public Object subSet(String k1, String k2) {
+        return t.subSet(k1, k2);
+    }
+
+    public Object copy() {
+        return t.clone();
+    }
+
+    public Iterator<String> snapShotIterator() {
+        return t.snapShotIterator();
+    }
+
+    public Iterator<String> updatingIterator() {
+        return t.updatingIterator();
+    }
+}
@@ -0,0 +1,78 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput and allocation of SplayFC.contains under each SplayPolicy, on
+ * uniform and Zipf-skewed traces.  Run with the gc profiler to see bytes
+ * allocated per lookup:
+ * <pre>
+ * java -jar bench/target/benchmarks.jar PolicyBenchmark -prof gc
+ * </pre>
+ *
+ * @version 1.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class PolicyBenchmark {
+
+    /**
+     * the length of the precomputed access sequence; a power of two
+     */
+    private static final int PROBES = 1 << 20;
+
+    @Param({"100000", "1000000"})
+    public int size;
+
+    @Param({"uniform", "zipf"})
+    public String distribution;
+
+    @Param({"always", "semi", "never", "p=0.1", "depth=2"})
+    public String policy;
+
+    private StringSetTarget set;
+    /**
+     * keys in the set, in access order
+     */
+    private String[] present;
+    /**
+     * the position in the access sequence
+     */
+    private int i;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] keys = Workload.keys(size);
+        set = Targets.splayFC(policy);
+        set.load(keys);
+        int[] positions = Workload.positions(distribution, size, PROBES, 42);
+        present = new String[PROBES];
+        for (int j = 0; j < PROBES; j++) {
+            present[j] = keys[positions[j]];
+        }
+        i = 0;
+    }
+
+    @Benchmark
+    public boolean contains() {
+        i = (i + 1) & (PROBES - 1);
+        return set.contains(present[i]);
+    }
+}
@@ -0,0 +1,162 @@
+package bench;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of every ISplayFC operation on SplayFC, with java.util.TreeSet
+ * and java.util.concurrent.ConcurrentSkipListSet as baselines.
+ * <p>
+ *
+ * Build with "mvn package" and run, for example,
+ * <pre>
+ * java -jar bench/target/benchmarks.jar SetBenchmark -prof gc
+ * java -jar bench/target/benchmarks.jar SetBenchmark.contains -p size=1000000 -p distribution=zipf
+ * </pre>
+ * The gc profiler adds the allocation rate (gc.alloc.rate.norm is bytes per
+ * operation).  add and remove each do an add and a remove, so the set keeps
+ * the same size however long they run.
+ *
+ * @version 1.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class SetBenchmark {
+
+    /**
+     * the length of the precomputed access sequence; a power of two
+     */
+    private static final int PROBES = 1 << 20;
+    /**
+     * how many keys apart the ends of a subSet are
+     */
+    private static final int RANGE = 100;
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"sequential", "uniform", "zipf"})
+    public String distribution;
+
+    @Param({"SplayFC", "TreeSet", "ConcurrentSkipListSet"})
+    public String impl;
+
+    private StringSetTarget set;
+    /**
+     * keys in the set, in access order
+     */
+    private String[] present;
+    /**
+     * keys not in the set, each just above the corresponding present key
+     */
+    private String[] absent;
+    /**
+     * keys in the set RANGE places above the corresponding present key
+     */
+    private String[] upper;
+    /**
+     * the position in the access sequence
+     */
+    private int i;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] keys = Workload.keys(size);
+        set = Targets.create(impl);
+        set.load(keys);
+
+        int[] positions = Workload.positions(distribution, size, PROBES, 42);
+        present = new String[PROBES];
+        absent = new String[PROBES];
+        upper = new String[PROBES];
+        for (int j = 0; j < PROBES; j++) {
+            int p = positions[j];
+            present[j] = keys[p];
+            absent[j] = Workload.key(2 * p + 1);
+            upper[j] = keys[Math.min(p + RANGE, size - 1)];
+        }
+        i = 0;
+    }
+
+    private int next() {
+        i = (i + 1) & (PROBES - 1);
+        return i;
+    }
+
+    @Benchmark
+    public boolean add() {
+        String k = absent[next()];
+        boolean added = set.add(k);
+        set.remove(k);
+        return added;
+    }
+
+    @Benchmark
+    public boolean remove() {
+        String k = present[next()];
+        boolean removed = set.remove(k);
+        set.add(k);
+        return removed;
+    }
+
+    @Benchmark
+    public boolean contains() {
+        int j = next();
+        return set.contains((j & 1) == 0 ? present[j] : absent[j]);
+    }
+
+    @Benchmark
+    public Object headSet() {
+        return set.headSet(present[next()]);
+    }
+
+    @Benchmark
+    public Object tailSet() {
+        return set.tailSet(present[next()]);
+    }
+
+    @Benchmark
+    public Object subSet() {
+        int j = next();
+        return set.subSet(present[j], upper[j]);
+    }
+
+    @Benchmark
+    public Object cloneSet() {
+        return set.copy();
+    }
+
+    @Benchmark
+    public void snapShotIterator(Blackhole bh) {
+        Iterator<String> it = set.snapShotIterator();
+        while (it.hasNext()) {
+            bh.consume(it.next());
+        }
+    }
+
+    @Benchmark
+    public void updatingIterator(Blackhole bh) {
+        Iterator<String> it = set.updatingIterator();
+        while (it.hasNext()) {
+            bh.consume(it.next());
+        }
+    }
+}
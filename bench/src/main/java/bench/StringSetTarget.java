@@ -0,0 +1,47 @@
+package bench;
+
+import java.util.Iterator;
+
+/**
+ * The operations the benchmarks run, so that SplayFC and the java.util
+ * baselines can be driven by the same code.  SplayFC lives in the default
+ * package, which JMH benchmark classes cannot be in and other packages
+ * cannot refer to, so its adapter is found by name through Targets.
+ *
+ * @version 1.1
+ */
+public interface StringSetTarget {
+
+    /**
+     * Fill the empty set with keys.
+     * @param sortedKeys the keys, in strictly increasing order
+     */
+    void load(String[] sortedKeys);
+
+    boolean add(String k);
+
+    boolean remove(String k);
+
+    boolean contains(String k);
+
+    Object headSet(String k);
+
+    Object tailSet(String k);
+
+    Object subSet(String k1, String k2);
+
+    /**
+     * @return a copy of the set that later changes to the set do not affect
+     */
+    Object copy();
+
+    /**
+     * @return an iterator over the set as it is now
+     */
+    Iterator<String> snapShotIterator();
+
+    /**
+     * @return an iterator that sees later changes to the set
+     */
+    Iterator<String> updatingIterator();
+}
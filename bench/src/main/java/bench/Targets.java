@@ -0,0 +1,144 @@
+package bench;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Creates the sets the benchmarks compare.
+ *
+ * @version 1.1
+ */
+final class Targets {
+
+    private Targets() {
+    }
+
+    /**
+     * @param impl "SplayFC", "TreeSet" or "ConcurrentSkipListSet"
+     * @return a new, empty set of that kind
+     */
+    static StringSetTarget create(String impl) {
+        if (impl.equals("SplayFC")) {
+            return splayFC("always");
+        } else if (impl.equals("TreeSet")) {
+            return new TreeSetTarget();
+        } else if (impl.equals("ConcurrentSkipListSet")) {
+            return new SkipListTarget();
+        }
+        throw new IllegalArgumentException("unknown set: " + impl);
+    }
+
+    /**
+     * @param policy the name of a splay policy, as SplayFCTarget describes
+     * @return a new, empty SplayFC using that policy for contains
+     */
+    static StringSetTarget splayFC(String policy) {
+        try {
+            return (StringSetTarget) Class.forName("SplayFCTarget").getDeclaredConstructor(String.class)
+                    .newInstance(policy);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("cannot create SplayFCTarget", e);
+        }
+    }
+
+    /**
+     * A java.util.TreeSet.  Range operations return views, and the snapshot
+     * iterator has to copy the set first, since that is what TreeSet offers.
+     */
+    static final class TreeSetTarget implements StringSetTarget {
+
+        private TreeSet<String> set = new TreeSet<String>();
+
+        public void load(String[] sortedKeys) {
+            set = new TreeSet<String>(Arrays.asList(sortedKeys));
+        }
+
+        public boolean add(String k) {
+            return set.add(k);
+        }
+
+        public boolean remove(String k) {
+            return set.remove(k);
+        }
+
+        public boolean contains(String k) {
+            return set.contains(k);
+        }
+
+        public Object headSet(String k) {
+            return set.headSet(k);
+        }
+
+        public Object tailSet(String k) {
+            return set.tailSet(k);
+        }
+
+        public Object subSet(String k1, String k2) {
+            return set.subSet(k1, k2);
+        }
+
+        public Object copy() {
+            return set.clone();
+        }
+
+        public Iterator<String> snapShotIterator() {
+            return new TreeSet<String>(set).iterator();
+        }
+
+        public Iterator<String> updatingIterator() {
+            return set.iterator();
+        }
+    }
+
+    /**
+     * A java.util.concurrent.ConcurrentSkipListSet, whose own iterators are
+     * weakly consistent, so stand in for updating iterators.
+     */
+    static final class SkipListTarget implements StringSetTarget {
+
+        private NavigableSet<String> set = new ConcurrentSkipListSet<String>();
+
+        public void load(String[] sortedKeys) {
+            set = new ConcurrentSkipListSet<String>(Arrays.asList(sortedKeys));
+        }
+
+        public boolean add(String k) {
+            return set.add(k);
+        }
+
+        public boolean remove(String k) {
+            return set.remove(k);
+        }
+
+        public boolean contains(String k) {
+            return set.contains(k);
+        }
+
+        public Object headSet(String k) {
+            return set.headSet(k);
+        }
+
+        public Object tailSet(String k) {
+            return set.tailSet(k);
+        }
+
+        public Object subSet(String k1, String k2) {
+            return set.subSet(k1, k2);
+        }
+
+        public Object copy() {
+            return ((ConcurrentSkipListSet<String>) set).clone();
+        }
+
+        public Iterator<String> snapShotIterator() {
+            return ((ConcurrentSkipListSet<String>) set).clone().iterator();
+        }
+
+        public Iterator<String> updatingIterator() {
+            return set.iterator();
+        }
+    }
+}
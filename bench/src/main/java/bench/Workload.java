@@ -0,0 +1,91 @@
+package bench;
+
+import java.util.Random;
+
+/**
+ * Keys and access patterns for the benchmarks.
+ * <p>
+ *
+ * A set of n keys holds key(0), key(2), ..., key(2n - 2), so key(2i + 1) is
+ * always a key that is not in the set but falls between two that are.
+ *
+ * @version 1.1
+ */
+final class Workload {
+
+    /**
+     * the exponent of the Zipf distribution
+     */
+    private static final double ZIPF_S = 0.99;
+    /**
+     * a prime that does not divide any of the sizes, used to scatter Zipf
+     * ranks across the key space
+     */
+    private static final long SCATTER = 2654435761L;
+
+    private Workload() {
+    }
+
+    /**
+     * @param i a number from 0 to 999,999,999
+     * @return the number as a nine digit string, so keys sort numerically
+     */
+    static String key(int i) {
+        char[] c = new char[9];
+        for (int j = 8; j >= 0; j--) {
+            c[j] = (char) ('0' + i % 10);
+            i /= 10;
+        }
+        return new String(c);
+    }
+
+    /**
+     * @param n the number of keys
+     * @return the keys of a set of size n, in increasing order
+     */
+    static String[] keys(int n) {
+        String[] keys = new String[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = key(2 * i);
+        }
+        return keys;
+    }
+
+    /**
+     * Generate a sequence of positions in a set of n keys.
+     * @param distribution "sequential", "uniform" or "zipf"
+     * @param n the number of keys
+     * @param count the length of the sequence
+     * @param seed the random seed
+     * @return positions from 0 to n - 1
+     */
+    static int[] positions(String distribution, int n, int count, long seed) {
+        Random rnd = new Random(seed);
+        int[] p = new int[count];
+        for (int i = 0; i < count; i++) {
+            if (distribution.equals("sequential")) {
+                p[i] = i % n;
+            } else if (distribution.equals("uniform")) {
+                p[i] = rnd.nextInt(n);
+            } else if (distribution.equals("zipf")) {
+                p[i] = (int) (zipfRank(n, rnd.nextDouble()) * SCATTER % n);
+            } else {
+                throw new IllegalArgumentException("unknown distribution: " + distribution);
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Draw a rank from 0 to n - 1 by inverting the continuous approximation
+     * of the Zipf distribution's CDF.
+     * @param n the number of ranks
+     * @param u a uniform random number in [0, 1)
+     * @return the rank, with rank 0 the most popular
+     */
+    private static long zipfRank(int n, double u) {
+        double a = 1 - ZIPF_S;
+        double x = Math.pow((Math.pow(n + 1, a) - 1) * u + 1, 1 / a);
+        return Math.min(n - 1, Math.max(0, (long) x - 1));
+    }
+}
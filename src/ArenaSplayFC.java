@@ -0,0 +1,538 @@
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+/**
+ * A splay tree of strings with fast cloning whose cells live in a CellStore
+ * rather than as Cell objects: by default a CellArena, which takes a
+ * fraction of the memory for large trees, or a MappedCellStore, which keeps
+ * them in a file.
+ * <p>
+ *
+ * It splays exactly as SplayFC does, producing trees of the same shape, and
+ * like SplayFC it never changes a cell once made, so clone() takes constant
+ * time and the range operations share all but a few cells with this tree.
+ * The trees it returns from clone and the range operations share its arena.
+ * Cells that none of them can reach any more are reclaimed by compaction,
+ * which happens automatically once as many cells have been made since the
+ * last compaction as were then in use, or on a call to compact().
+ * <p>
+ *
+ * The tree keeps no Cell objects, so the public top field is always null.
+ * getTop() copies the tree into new cells and setTop() copies cells into the
+ * arena, each in time linear in the size of the tree; so do the SplayFC
+ * methods that work on cells, such as union and diff.  Trees sharing an
+ * arena, unlike clones of a SplayFC, must not be used from different threads
+ * at the same time.
+ *
+ * @version 1.1
+ */
+public class ArenaSplayFC extends SplayFC {
+
+    /**
+     * the store holding the cells of this tree and the trees sharing them
+     */
+    private final CellStore arena;
+    /**
+     * the slot of the root cell, or CellStore.NULL if the tree is empty
+     */
+    private int root;
+    /**
+     * to keep track of any changes to the tree; only ever increases.  Kept
+     * apart from SplayFC's count, which the arena's operations never touch.
+     */
+    private int arenaModCount;
+
+    /**
+     * Constructs an empty ArenaSplayFC with an arena of its own.
+     */
+    public ArenaSplayFC() {
+        this(new CellArena(), CellStore.NULL);
+    }
+
+    /**
+     * Constructs an ArenaSplayFC holding the keys of a tree of cells.
+     * @param c the root of the tree, which is copied into a new arena
+     */
+    public ArenaSplayFC(Cell c) {
+        this();
+        root = arena.fromCells(c);
+    }
+
+    /**
+     * Constructs an ArenaSplayFC over a tree in a store.
+     * @param arena the store holding the tree
+     * @param root the slot of the root cell
+     */
+    ArenaSplayFC(CellStore arena, int root) {
+        super();
+        this.arena = arena;
+        this.root = root;
+        arena.register(this);
+    }
+
+    /**
+     * @return The slot of the root cell.
+     */
+    int root() {
+        return root;
+    }
+
+    /**
+     * Give the root its new slot number after the arena has been compacted.
+     * @param slot The new slot of the root.
+     */
+    void renumber(int slot) {
+        root = slot;
+    }
+
+    /**
+     * @return The store holding this tree's cells.
+     */
+    public CellStore arena() {
+        return arena;
+    }
+
+    /**
+     * Reclaim the cells in the arena that no tree using it can reach.
+     *
+     * @throws UnsupportedOperationException if the store does not support it
+     */
+    public void compact() throws UnsupportedOperationException {
+        arena.compact();
+    }
+
+    /**
+     * @param slot A root slot in this tree's arena.
+     * @return A new tree sharing the arena, with that root.
+     */
+    private ArenaSplayFC sharing(int slot) {
+        ArenaSplayFC t = clone();
+        t.root = slot;
+        return t;
+    }
+
+    /**
+     * Get a copy of the tree as cells.  Every call copies the whole tree, in
+     * time and memory linear in its size, so use the lookups and iterators
+     * to read keys.
+     *
+     * @return The top cell of the copy.
+     */
+    public Cell getTop() {
+        return arena.toCells(root);
+    }
+
+    /**
+     * Replace the tree by a copy of the tree of cells with root c, made in
+     * time linear in its size.
+     *
+     * @param c The new top cell.
+     */
+    public void setTop(Cell c) {
+        root = arena.fromCells(c);
+        arenaModCount++;
+    }
+
+    /**
+     * Generates a string representation of the tree, in the same format as
+     * SplayFC.
+     *
+     * @return The string representation of the tree.
+     */
+    public String toString() {
+        if (root == CellStore.NULL) {
+            return "[]\n";
+        }
+        return getTop().toString("", "   ", "   ", " -");
+    }
+
+    /**
+     * Insert a specified string key into the tree, as SplayFC.add does.
+     *
+     * @param k The string key to insert.
+     * @return true if k was not already in the tree.
+     */
+    public boolean add(String k) {
+        arena.maybeCompact();
+        if (root == CellStore.NULL) {
+            root = arena.leaf(k);
+        } else {
+            int s = arena.splay(root, k);
+            if (arena.compare(k, s) == 0) { // checks if its already in the tree
+                return false;
+            }
+            root = arena.insertAtRoot(s, k);
+        }
+        arenaModCount++;
+        return true;
+    }
+
+    /**
+     * Remove a specified string from the tree, as SplayFC.remove does.
+     *
+     * @param k The string to remove.
+     * @return true if k is was the tree.
+     */
+    public boolean remove(String k) {
+        if (root == CellStore.NULL) {
+            return false;
+        }
+        arena.maybeCompact();
+        root = arena.splay(root, k);
+        if (arena.compare(k, root) != 0) {
+            return false;
+        }
+        root = arena.removeRoot(root);
+        arenaModCount++;
+        return true;
+    }
+
+    /**
+     * Check whether a string k appears as a key in the tree, reshaping it as
+     * the splay policy says.  A lookup the policy leaves alone writes nothing
+     * to the store.
+     * <p>
+     *
+     * The tree has no cells to hand to the policy, so it is asked with a
+     * null root.  A policy that needs the depth of the search, such as
+     * SplayPolicy.depthTriggered, also needs the root to size the tree, so
+     * it is not asked at all and every lookup splays, as under
+     * SplayPolicy.ALWAYS.
+     *
+     * @param k  The key string to look for.
+     * @return true if k is included in the tree.
+     */
+    public boolean contains(String k) {
+        if (root == CellStore.NULL) {
+            return false;
+        }
+        SplayPolicy policy = getSplayPolicy();
+        SplayPolicy.Action action = policy.needsDepth() ? SplayPolicy.Action.SPLAY : policy.onAccess(-1, null);
+        if (action == SplayPolicy.Action.NONE) {
+            return arena.find(root, k) != CellStore.NULL;
+        }
+        arena.maybeCompact();
+        if (action == SplayPolicy.Action.SEMI_SPLAY) {
+            boolean found = arena.find(root, k) != CellStore.NULL;
+            root = arena.semiSplay(root, k);
+            return found;
+        }
+        root = arena.splay(root, k);
+        return arena.compare(k, root) == 0;
+    }
+
+    /**
+     * @param slot A slot, possibly NULL.
+     * @return The key of the slot, or null for NULL.
+     */
+    private String keyOf(int slot) {
+        return slot == CellStore.NULL ? null : arena.key(slot);
+    }
+
+    public boolean containsNoSplay(String k) {
+        return arena.find(root, k) != CellStore.NULL;
+    }
+
+    public String floor(String k) {
+        return keyOf(arena.floor(root, k));
+    }
+
+    public String ceiling(String k) {
+        return keyOf(arena.ceiling(root, k));
+    }
+
+    public String first() {
+        return keyOf(arena.first(root));
+    }
+
+    public String last() {
+        return keyOf(arena.last(root));
+    }
+
+    /**
+     * Extract a splay tree that contains all keys in the current tree that are
+     * strictly less than k, splaying this tree on k.  The result shares this
+     * tree's arena.
+     *
+     * @param k  The string below which keys should be included.
+     * @return The extracted splay tree.
+     */
+    public ArenaSplayFC headSet(String k) {
+        if (root == CellStore.NULL) {
+            return sharing(CellStore.NULL);
+        }
+        arena.maybeCompact();
+        root = arena.splay(root, k);
+        return sharing(arena.headOf(root, k));
+    }
+
+    /**
+     * Extract a splay tree that contains all keys in the current tree that are
+     * greater than or equal to k, splaying this tree on k.  The result shares
+     * this tree's arena.
+     *
+     * @param k The minimum string key to include.
+     * @return The extracted splay tree.
+     */
+    public ArenaSplayFC tailSet(String k) {
+        if (root == CellStore.NULL) {
+            return sharing(CellStore.NULL);
+        }
+        arena.maybeCompact();
+        root = arena.splay(root, k);
+        return sharing(arena.tailOf(root, k));
+    }
+
+    /**
+     * Extract a splay tree that contains all keys in the current tree that are
+     * greater than or equal to k1 and strictly less than k2, as SplayFC.subSet
+     * does.  The result shares this tree's arena.
+     *
+     * @param k1  The minimum string key to include.
+     * @param k2  The string below which keys should be included.
+     * @return The extracted splay tree.
+     */
+    public ArenaSplayFC subSet(String k1, String k2) {
+        if (root == CellStore.NULL) {
+            return sharing(CellStore.NULL);
+        }
+        arena.maybeCompact();
+        root = arena.splay(root, k2);
+        int head = arena.headOf(root, k2);
+        if (head == CellStore.NULL || k1.compareTo(k2) >= 0) {
+            return sharing(CellStore.NULL);
+        }
+        return sharing(arena.tailOf(arena.splay(head, k1), k1));
+    }
+
+    /**
+     * Split this tree into the keys strictly less than k and the keys greater
+     * than or equal to k, as SplayFC.split does.  Both halves share this
+     * tree's arena.
+     *
+     * @param k The key to split at.
+     * @return An array holding the lower half then the upper half.
+     */
+    public ArenaSplayFC[] split(String k) {
+        if (root == CellStore.NULL) {
+            return new ArenaSplayFC[] {sharing(CellStore.NULL), sharing(CellStore.NULL)};
+        }
+        arena.maybeCompact();
+        root = arena.splay(root, k);
+        return new ArenaSplayFC[] {sharing(arena.headOf(root, k)), sharing(arena.tailOf(root, k))};
+    }
+
+    /**
+     * Add keys given in strictly increasing order, rebuilding the tree in
+     * balanced form as SplayFC.addAllSorted does.
+     *
+     * @param keys The keys, in strictly increasing order.
+     * @return true if any of the keys were not already in the tree.
+     * @throws IllegalArgumentException if the keys are not strictly increasing
+     */
+    public boolean addAllSorted(Iterator<String> keys) throws IllegalArgumentException {
+        SplayFC cells = new SplayFC(getTop());
+        if (!cells.addAllSorted(keys)) {
+            return false;
+        }
+        setTop(cells.getTop());
+        return true;
+    }
+
+    /**
+     * Create a new ArenaSplayFC holding the same strings, sharing this tree's
+     * arena and all its cells, in constant time.
+     *
+     * @return The created ArenaSplayFC object.
+     */
+    public ArenaSplayFC clone() {
+        ArenaSplayFC t = (ArenaSplayFC) super.clone();
+        arena.register(t);
+        return t;
+    }
+
+    /**
+     * Create a Spliterator over the strings in the tree, as they were when it
+     * was created, in order.  It does not split well; use a SplayFC for
+     * parallel streams.
+     *
+     * @return The spliterator.
+     */
+    public Spliterator<String> spliterator() {
+        return Spliterators.spliteratorUnknownSize(snapShotIterator(), Spliterator.ORDERED
+                | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.IMMUTABLE | Spliterator.NONNULL);
+    }
+
+    /**
+     * Create an iterator that visits the strings in the tree, as they were when
+     * the iterator was created, in order.  The iterator holds a clone of the
+     * tree, and picks up where it left off if the arena is compacted.
+     *
+     * @return The iterator object.
+     */
+    public Iterator<String> snapShotIterator() {
+        return new ArenaIterator(clone(), false);
+    }
+
+    /**
+     * Create an iterator that visits the strings in the live tree in order.
+     * Each call to next visits the least element currently in the tree that is
+     * greater than the previously returned element.  next throws
+     * java.util.ConcurrentModificationException if the tree has been changed
+     * since the most recent call to hasNext.
+     *
+     * @return The iterator object.
+     */
+    public Iterator<String> updatingIterator() {
+        return new ArenaIterator(this, true);
+    }
+
+    /**
+     * An in-order iterator over a tree in an arena, walking a stack of slots.
+     * A snapshot iterator walks a private clone; an updating iterator walks
+     * the live tree, and refills its stack by a non-splaying search for the
+     * keys above the last one it returned only when arenaModCount has moved.
+     * Either way, after the arena has been compacted the slots are stale, so
+     * it refills the stack in the same way.
+     */
+    private static class ArenaIterator implements Iterator<String> {
+
+        /**
+         * the tree being visited
+         */
+        private final ArenaSplayFC tree;
+        /**
+         * whether this is an updating iterator
+         */
+        private final boolean updating;
+        /**
+         * the slots whose keys are still to be visited, the next one on top;
+         * each slot's right subtree is visited straight after its key
+         */
+        private int[] stack = new int[32];
+        /**
+         * the number of slots on the stack
+         */
+        private int size = 0;
+        /**
+         * the arena's epoch when the stack was filled
+         */
+        private int epoch;
+        /**
+         * the last element returned by next, or null before the first call
+         */
+        private String last = null;
+        /**
+         * the value of arenaModCount when the stack was filled
+         */
+        private int expectedModCount;
+        /**
+         * keeps track of which string remove() should be deleting
+         */
+        private String toBeRemoved = null;
+
+        ArenaIterator(ArenaSplayFC tree, boolean updating) {
+            this.tree = tree;
+            this.updating = updating;
+            expectedModCount = tree.arenaModCount;
+            refill();
+        }
+
+        /**
+         * Fill the stack with the slots whose keys are greater than last, as
+         * they would be after visiting last.
+         */
+        private void refill() {
+            CellStore a = tree.arena;
+            epoch = a.epoch();
+            size = 0;
+            int c = tree.root;
+            while (c != CellStore.NULL) {
+                if (last == null || a.compare(last, c) < 0) {
+                    push(c);
+                    c = a.lt(c);
+                } else {
+                    c = a.rt(c);
+                }
+            }
+        }
+
+        private void push(int c) {
+            if (size == stack.length) {
+                stack = Arrays.copyOf(stack, size * 2);
+            }
+            stack[size++] = c;
+        }
+
+        /**
+         * returns true if next() returns an element rather than throw
+         * an exception
+         * @return true iff the iterator has more elements
+         */
+        public boolean hasNext() {
+            if (updating) {
+                if (tree.arenaModCount != expectedModCount) {
+                    expectedModCount = tree.arenaModCount;
+                    refill();
+                }
+            }
+            if (epoch != tree.arena.epoch()) {
+                refill();
+            }
+            return size > 0;
+        }
+
+        /**
+         * returns the next element in the iteration
+         * @return the next element in the iteration
+         * @throws NoSuchElementException iteration has no more elements
+         * @throws ConcurrentModificationException the tree has been changed
+         *  since the most recent call to hasNext()
+         */
+        public String next() throws NoSuchElementException, ConcurrentModificationException {
+            if (updating && tree.arenaModCount != expectedModCount) {
+                throw new ConcurrentModificationException("the tree has been "
+                        + "changed since the most recent call to hasNext()");
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException("Reached end of tree, no child to go to.");
+            }
+            CellStore a = tree.arena;
+            int c = stack[--size];
+            for (int x = a.rt(c); x != CellStore.NULL; x = a.lt(x)) {
+                push(x);
+            }
+            last = a.key(c);
+            toBeRemoved = last;
+            return last;
+        }
+
+        /**
+         * removes from the underlying tree the last element returned by the
+         * iterator, for an updating iterator
+         * @throws UnsupportedOperationException for a snapshot iterator
+         * @throws IllegalStateException if the next method has not yet been called,
+         *  or the remove method has already been called after the last call to the next method
+         */
+        public void remove() throws IllegalStateException {
+            if (!updating) {
+                throw new UnsupportedOperationException("remove");
+            }
+            if (toBeRemoved != null) {
+                if (tree.remove(toBeRemoved)) {
+                    expectedModCount++;
+                    refill();
+                }
+                toBeRemoved = null;
+            } else {
+                throw new IllegalStateException("next() has not yet been called,"
+                        + "or remove() has already been called after the last"
+                        + "call to next()");
+            }
+        }
+    }
+}
@@ -18,9 +18,19 @@ public class Cell {
 		key = k;
 		lt = left;
 		rt = right;
+		if (SplayStats.ENABLED) SplayStats.cellMade();
 	}
 
 	public String key() { return key; }
+
+	/**
+	 * Create a new cell of the same kind as this one.  A tree only ever holds
+	 * one kind of cell, so code that rebuilds part of a tree uses this rather
+	 * than the constructor, letting subclasses keep their extra fields right.
+	 */
+	public Cell make(String k, Cell left, Cell right) {
+		return new Cell(k, left, right);
+	}
 	
 	public String toString(String prefix,String lString, String rString, String upDown) {
 		String s = prefix + upDown + key+"\n";
@@ -0,0 +1,292 @@
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The default CellStore behind ArenaSplayFC: the cells of any number of
+ * trees held in parallel primitive arrays on the heap.
+ * <p>
+ *
+ * A cell is an int slot, with its key number, left child and right child in
+ * three int arrays; slot 0 stands for null.  The characters of all the keys
+ * are packed into one char array, key number i running from keyStart[i] to
+ * keyStart[i + 1].  A cell therefore costs 12 bytes plus two bytes per key
+ * character, where a Cell costs an object header and three references, and
+ * its String another header, a hash and an array.
+ * <p>
+ *
+ * Like cells, slots are never changed once written: splaying appends new
+ * slots for the cells on the path and shares the rest, so a tree is just the
+ * slot of its root and cloning one copies an int.  Slots that no tree can
+ * reach any more are reclaimed by compact(), which copies the reachable
+ * slots and keys into new arrays and renumbers the roots of the trees using
+ * the arena.  Anything else holding slot numbers checks epoch() to see
+ * whether they have been renumbered.
+ * <p>
+ *
+ * An arena is not thread safe, so all the trees sharing one must be used by
+ * one thread at a time.
+ *
+ * @version 1.1
+ */
+public class CellArena extends CellStore {
+
+    /**
+     * the starting capacity of the arrays
+     */
+    private static final int INITIAL_CAPACITY = 64;
+    /**
+     * the fewest slots in use before compaction is worth doing automatically
+     */
+    private static final int MIN_COMPACT = 1 << 16;
+
+    /**
+     * the key number of each slot
+     */
+    private int[] key = new int[INITIAL_CAPACITY];
+    /**
+     * the left child of each slot
+     */
+    private int[] lt = new int[INITIAL_CAPACITY];
+    /**
+     * the right child of each slot
+     */
+    private int[] rt = new int[INITIAL_CAPACITY];
+    /**
+     * the number of slots used, including slot 0
+     */
+    private int slots = 1;
+    /**
+     * the characters of all the keys, one after another
+     */
+    private char[] chars = new char[INITIAL_CAPACITY];
+    /**
+     * where each key starts in chars; entry i + 1 is where key i ends
+     */
+    private int[] keyStart = new int[INITIAL_CAPACITY];
+    /**
+     * the number of keys
+     */
+    private int keys = 0;
+    /**
+     * the trees using this arena, whose roots compaction renumbers
+     */
+    private final ArrayList<WeakReference<ArenaSplayFC>> trees = new ArrayList<WeakReference<ArenaSplayFC>>();
+    /**
+     * the size trees had reached when dead references were last pruned
+     */
+    private int treesPruned = 0;
+    /**
+     * the number of slots that were reachable after the last compaction
+     */
+    private int liveSlots = 0;
+    /**
+     * the number of compactions so far
+     */
+    private int epoch = 0;
+
+    void register(ArenaSplayFC t) {
+        if (trees.size() >= 2 * treesPruned + 16) {
+            trees.removeIf(r -> r.get() == null);
+            treesPruned = trees.size();
+        }
+        trees.add(new WeakReference<ArenaSplayFC>(t));
+    }
+
+    public int epoch() {
+        return epoch;
+    }
+
+    /**
+     * @return The number of slots in use, reachable or not.
+     */
+    public int slotsUsed() {
+        return slots - 1;
+    }
+
+    public long bytesAllocated() {
+        return 12L * key.length + 2L * chars.length + 4L * keyStart.length;
+    }
+
+    int lt(int c) {
+        return lt[c];
+    }
+
+    int rt(int c) {
+        return rt[c];
+    }
+
+    String key(int c) {
+        int i = key[c];
+        return new String(chars, keyStart[i], keyStart[i + 1] - keyStart[i]);
+    }
+
+    int compare(String k, int c) {
+        int i = key[c];
+        int start = keyStart[i];
+        int n = keyStart[i + 1] - start;
+        int m = k.length();
+        int lim = Math.min(m, n);
+        for (int j = 0; j < lim; j++) {
+            char a = k.charAt(j);
+            char b = chars[start + j];
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return m - n;
+    }
+
+    /**
+     * Store the characters of a new key.
+     * @param k The key.
+     * @return Its key number.
+     */
+    private int newKey(String k) {
+        int start = keyStart[keys];
+        if (start + k.length() > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, start + k.length()));
+        }
+        k.getChars(0, k.length(), chars, start);
+        if (keys + 2 > keyStart.length) {
+            keyStart = Arrays.copyOf(keyStart, keyStart.length * 2);
+        }
+        keys++;
+        keyStart[keys] = start + k.length();
+        return keys - 1;
+    }
+
+    /**
+     * Append a slot.
+     * @param keyNumber The key number.
+     * @param l The left child.
+     * @param r The right child.
+     * @return The new slot.
+     */
+    private int node(int keyNumber, int l, int r) {
+        if (slots == key.length) {
+            int capacity = key.length * 2;
+            key = Arrays.copyOf(key, capacity);
+            lt = Arrays.copyOf(lt, capacity);
+            rt = Arrays.copyOf(rt, capacity);
+        }
+        key[slots] = keyNumber;
+        lt[slots] = l;
+        rt[slots] = r;
+        return slots++;
+    }
+
+    int copy(int like, int l, int r) {
+        return node(key[like], l, r);
+    }
+
+    int newCell(String k, int l, int r) {
+        return node(newKey(k), l, r);
+    }
+
+    /* -- Begin compaction. -- */
+
+    /**
+     * Compact the arena if at least half the slots in use have been
+     * allocated since the last compaction, so that the cost of compacting is
+     * at most proportional to the slots allocated in between.
+     */
+    void maybeCompact() {
+        if (slots >= MIN_COMPACT && slots > 2 * liveSlots) {
+            compact();
+        }
+    }
+
+    /**
+     * Reclaim every slot and key that no tree using the arena can reach.  The
+     * reachable slots are copied, parent first, into new arrays and the roots
+     * of the trees renumbered.
+     */
+    public void compact() {
+        ArrayList<ArenaSplayFC> live = new ArrayList<ArenaSplayFC>();
+        for (WeakReference<ArenaSplayFC> r : trees) {
+            ArenaSplayFC t = r.get();
+            if (t != null) {
+                live.add(t);
+            }
+        }
+
+        // Number the reachable slots, visiting each shared subtree once.
+        int[] slotTo = new int[slots];
+        int[] keyTo = new int[keys];
+        Arrays.fill(keyTo, -1);
+        int newSlots = 1;
+        int newKeys = 0;
+        int newChars = 0;
+        int[] stack = new int[32];
+        for (ArenaSplayFC t : live) {
+            int size = 0;
+            if (t.root() != NULL && slotTo[t.root()] == 0) {
+                stack[size++] = t.root();
+            }
+            while (size > 0) {
+                int x = stack[--size];
+                slotTo[x] = newSlots++;
+                int i = key[x];
+                if (keyTo[i] < 0) {
+                    keyTo[i] = newKeys++;
+                    newChars += keyStart[i + 1] - keyStart[i];
+                }
+                if (size + 2 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                if (rt[x] != NULL && slotTo[rt[x]] == 0) {
+                    stack[size++] = rt[x];
+                }
+                if (lt[x] != NULL && slotTo[lt[x]] == 0) {
+                    stack[size++] = lt[x];
+                }
+            }
+        }
+
+        // Copy the keys that are still used.
+        int[] starts = new int[Math.max(INITIAL_CAPACITY, newKeys + 1)];
+        char[] newCharArray = new char[Math.max(INITIAL_CAPACITY, newChars)];
+        int[] keyAt = new int[newKeys];
+        for (int i = 0; i < keys; i++) {
+            if (keyTo[i] >= 0) {
+                keyAt[keyTo[i]] = i;
+            }
+        }
+        for (int j = 0; j < newKeys; j++) {
+            int i = keyAt[j];
+            int len = keyStart[i + 1] - keyStart[i];
+            System.arraycopy(chars, keyStart[i], newCharArray, starts[j], len);
+            starts[j + 1] = starts[j] + len;
+        }
+
+        // Copy the reachable slots.
+        int capacity = Math.max(INITIAL_CAPACITY, newSlots + newSlots / 4);
+        int[] newKey = new int[capacity];
+        int[] newLt = new int[capacity];
+        int[] newRt = new int[capacity];
+        for (int x = 1; x < slots; x++) {
+            int y = slotTo[x];
+            if (y != 0) {
+                newKey[y] = keyTo[key[x]];
+                newLt[y] = slotTo[lt[x]];
+                newRt[y] = slotTo[rt[x]];
+            }
+        }
+
+        for (ArenaSplayFC t : live) {
+            t.renumber(slotTo[t.root()]);
+        }
+        key = newKey;
+        lt = newLt;
+        rt = newRt;
+        slots = newSlots;
+        chars = newCharArray;
+        keyStart = starts;
+        keys = newKeys;
+        liveSlots = newSlots;
+        trees.removeIf(r -> r.get() == null);
+        treesPruned = trees.size();
+        epoch++;
+    }
+}
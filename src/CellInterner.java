@@ -0,0 +1,117 @@
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Makes trees that hold the same keys share one root, so that many copies of
+ * the same set, such as one per tenant, cost the memory of one.
+ * <p>
+ *
+ * Roots are looked up by the hash of their keys, so finding a match takes
+ * constant time plus one comparison of keys to confirm it.  The interner
+ * only holds weak references, so a root is forgotten once no tree uses it.
+ * The methods are synchronized, so any number of threads may share one
+ * interner.
+ *
+ * @version 1.1
+ */
+public class CellInterner {
+
+    /**
+     * A weak reference to an interned root that remembers its hash, so it
+     * can be removed from its bucket once the root has been collected.
+     */
+    private static final class Root extends WeakReference<HashedCell> {
+
+        /**
+         * the hash of the root's keys
+         */
+        private final long hash;
+
+        /**
+         * Constructs a Root.
+         */
+        private Root(HashedCell c, ReferenceQueue<HashedCell> queue) {
+            super(c, queue);
+            hash = c.hash;
+        }
+    }
+
+    /**
+     * the interned roots, by the hash of their keys
+     */
+    private final HashMap<Long, ArrayList<Root>> roots = new HashMap<Long, ArrayList<Root>>();
+    /**
+     * where references to collected roots are queued
+     */
+    private final ReferenceQueue<HashedCell> collected = new ReferenceQueue<HashedCell>();
+    /**
+     * the number of roots interned and not yet found collected
+     */
+    private int size = 0;
+
+    /**
+     * Find the interned root holding the same keys as c, interning c if
+     * there is none.
+     *
+     * @param c The root of a tree of HashedCells, possibly null.
+     * @return The interned root, which holds the same keys as c.
+     */
+    public synchronized HashedCell intern(HashedCell c) {
+        expunge();
+        if (c == null) {
+            return null;
+        }
+        ArrayList<Root> bucket = roots.get(c.hash);
+        if (bucket == null) {
+            bucket = new ArrayList<Root>(1);
+            roots.put(c.hash, bucket);
+        }
+        for (Root r : bucket) {
+            HashedCell d = r.get();
+            if (d != null && HashedSplayFC.sameKeys(c, d)) {
+                return d;
+            }
+        }
+        bucket.add(new Root(c, collected));
+        size++;
+        return c;
+    }
+
+    /**
+     * Make a tree share the interned root holding the same keys, interning
+     * its own root if there is none.
+     *
+     * @param t The tree.
+     * @return t, now with the interned root.
+     */
+    public HashedSplayFC intern(HashedSplayFC t) {
+        t.setTop(intern((HashedCell) t.getTop()));
+        return t;
+    }
+
+    /**
+     * @return The number of distinct roots interned and still in use.
+     */
+    public synchronized int size() {
+        expunge();
+        return size;
+    }
+
+    /**
+     * Remove the references to roots that have been collected.
+     */
+    private void expunge() {
+        Root r;
+        while ((r = (Root) collected.poll()) != null) {
+            ArrayList<Root> bucket = roots.get(r.hash);
+            if (bucket != null && bucket.remove(r)) {
+                size--;
+                if (bucket.isEmpty()) {
+                    roots.remove(r.hash);
+                }
+            }
+        }
+    }
+}
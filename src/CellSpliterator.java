@@ -0,0 +1,308 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A Spliterator over the keys of an immutable tree of cells, in order.
+ * <p>
+ *
+ * The keys still to be visited are held as a stack of items, each either a
+ * whole subtree or the key of a single cell, with the next item on top.
+ * Since cells never change, splitting just hands a run of items from the
+ * top of the stack to a new spliterator; no keys are copied and the tree is
+ * not splayed.  Splits aim at half of the remaining keys, opening up the
+ * subtree that straddles the middle.  The keys in a subtree are counted
+ * exactly for trees of SizedCell, and otherwise estimated by sampling
+ * random paths through it.
+ * <p>
+ *
+ * Without sizes the splits are only as even as the estimates.  Splitting a
+ * SplayFC of 200000 random keys three times over gives eight parts whose
+ * largest is typically about three times the smallest, and sometimes five;
+ * trees of SizedCell split to within a quarter.  Use a SizedSplayFC where
+ * even parts matter.
+ *
+ * @version 1.1
+ */
+public class CellSpliterator implements Spliterator<String> {
+
+    /**
+     * the starting capacity of the stack
+     */
+    private static final int INITIAL_STACK_LENGTH = 32;
+    /**
+     * the number of random paths used to estimate the size of a subtree;
+     * the spread of the estimate falls with its square root, and 8 left
+     * parts of a split up to ten times apart
+     */
+    private static final int PROBES = 128;
+    /**
+     * how far down a subtree each random path goes, so that long spines
+     * cost no more to estimate than balanced trees
+     */
+    private static final int MAX_PROBE_DEPTH = 128;
+    /**
+     * how many subtrees one split may open up looking for the middle
+     */
+    private static final int MAX_EXPANSIONS = 64;
+    /**
+     * the cells on the stack
+     */
+    private Cell[] cells;
+    /**
+     * whether each item stands for just the key of its cell
+     */
+    private boolean[] keyOnly;
+    /**
+     * the number of keys each item stands for, or 0 if not yet worked out
+     */
+    private double[] weights;
+    /**
+     * the number of items on the stack
+     */
+    private int size;
+    /**
+     * the number of keys left, exact if sized and an estimate otherwise
+     */
+    private long est;
+    /**
+     * whether the cells are SizedCells, so that est is exact
+     */
+    private final boolean sized;
+
+    /**
+     * Constructs a CellSpliterator over a whole tree.
+     * @param root the root of the tree, possibly null
+     */
+    CellSpliterator(Cell root) {
+        cells = new Cell[INITIAL_STACK_LENGTH];
+        keyOnly = new boolean[INITIAL_STACK_LENGTH];
+        weights = new double[INITIAL_STACK_LENGTH];
+        sized = root instanceof SizedCell;
+        if (root == null) {
+            est = 0;
+        } else if (sized) {
+            est = SizedCell.size(root);
+        } else {
+            est = (long) estimate(root);
+        }
+        push(root, false);
+    }
+
+    /**
+     * Constructs a CellSpliterator over some items taken from another.
+     */
+    private CellSpliterator(Cell[] cells, boolean[] keyOnly, double[] weights, int size,
+            long est, boolean sized) {
+        this.cells = cells;
+        this.keyOnly = keyOnly;
+        this.weights = weights;
+        this.size = size;
+        this.est = est;
+        this.sized = sized;
+    }
+
+    private void push(Cell c, boolean key) {
+        if (c == null) {
+            return;
+        }
+        if (size == cells.length) {
+            grow();
+        }
+        cells[size] = c;
+        keyOnly[size] = key;
+        weights[size] = 0;
+        size++;
+    }
+
+    private void grow() {
+        cells = Arrays.copyOf(cells, cells.length * 2);
+        keyOnly = Arrays.copyOf(keyOnly, cells.length);
+        weights = Arrays.copyOf(weights, cells.length);
+    }
+
+    /**
+     * Replace the subtree at position i of the stack by its left subtree, its
+     * root's key and its right subtree, in place.
+     * @param i the position of a whole subtree on the stack
+     */
+    private void expandAt(int i) {
+        Cell c = cells[i];
+        int n = (c.lt == null ? 0 : 1) + 1 + (c.rt == null ? 0 : 1);
+        while (size + n - 1 > cells.length) {
+            grow();
+        }
+        System.arraycopy(cells, i + 1, cells, i + n, size - i - 1);
+        System.arraycopy(keyOnly, i + 1, keyOnly, i + n, size - i - 1);
+        System.arraycopy(weights, i + 1, weights, i + n, size - i - 1);
+        int j = i;
+        if (c.rt != null) {
+            cells[j] = c.rt;
+            keyOnly[j] = false;
+            weights[j++] = 0;
+        }
+        cells[j] = c;
+        keyOnly[j] = true;
+        weights[j++] = 0;
+        if (c.lt != null) {
+            cells[j] = c.lt;
+            keyOnly[j] = false;
+            weights[j] = 0;
+        }
+        size += n - 1;
+    }
+
+    /**
+     * @param i a position on the stack
+     * @return the number of keys the item stands for, exactly if sized and
+     *         otherwise estimated
+     */
+    private double weight(int i) {
+        if (weights[i] == 0) {
+            if (keyOnly[i]) {
+                weights[i] = 1;
+            } else if (sized) {
+                weights[i] = SizedCell.size(cells[i]);
+            } else {
+                weights[i] = estimate(cells[i]);
+            }
+        }
+        return weights[i];
+    }
+
+    /**
+     * Estimate the number of cells in a tree by Knuth's method: follow a
+     * random path from the root and, at each cell on it, count the cells at
+     * that level as if every cell there had the same number of children as
+     * the ones on the path.  This is exact on average, but a single path
+     * varies a lot, so PROBES of them are averaged.
+     *
+     * @param c The non-null root of the tree.
+     * @return The estimated number of cells.
+     */
+    static double estimate(Cell c) {
+        double total = 0;
+        int bits = c.key().hashCode() | 1;
+        for (int p = 0; p < PROBES; p++) {
+            double level = 1;
+            Cell x = c;
+            for (int d = 0; x != null && d < MAX_PROBE_DEPTH; d++) {
+                total += level;
+                if (x.lt != null && x.rt != null) {
+                    level *= 2;
+                    bits ^= bits << 13; // xorshift, to choose the side
+                    bits ^= bits >>> 17;
+                    bits ^= bits << 5;
+                    x = (bits & 1) == 0 ? x.lt : x.rt;
+                } else {
+                    x = x.lt != null ? x.lt : x.rt;
+                }
+            }
+        }
+        return total / PROBES;
+    }
+
+    public boolean tryAdvance(Consumer<? super String> action) {
+        if (action == null) {
+            throw new NullPointerException();
+        }
+        while (size > 0) {
+            if (keyOnly[size - 1]) {
+                Cell c = cells[--size];
+                cells[size] = null;
+                if (sized) {
+                    est--;
+                }
+                action.accept(c.key());
+                return true;
+            }
+            expandAt(size - 1);
+        }
+        return false;
+    }
+
+    public void forEachRemaining(Consumer<? super String> action) {
+        if (action == null) {
+            throw new NullPointerException();
+        }
+        while (size > 0) {
+            if (keyOnly[size - 1]) {
+                Cell c = cells[--size];
+                cells[size] = null;
+                action.accept(c.key());
+            } else {
+                expandAt(size - 1);
+            }
+        }
+        if (sized) {
+            est = 0;
+        }
+    }
+
+    /**
+     * Hand the first half or so of the remaining keys to a new spliterator.
+     * @return the new spliterator, or null if the keys cannot be split
+     */
+    public Spliterator<String> trySplit() {
+        if (size == 0) {
+            return null;
+        }
+        int cut; // the items at positions cut and above are handed off
+        double total;
+        int expansions = 0;
+        while (true) {
+            total = 0;
+            for (int i = 0; i < size; i++) {
+                total += weight(i);
+            }
+            // Find the item straddling the middle, counting from the front.
+            double before = 0;
+            int m = size - 1;
+            while (m > 0 && before + weight(m) < total / 2) {
+                before += weight(m);
+                m--;
+            }
+            if (!keyOnly[m] && weight(m) > total / 16 && expansions++ < MAX_EXPANSIONS) {
+                expandAt(m);
+                continue;
+            }
+            boolean take = before + weight(m) - total / 2 < total / 2 - before;
+            cut = take ? m : m + 1;
+            break;
+        }
+        if (cut <= 0 || cut >= size) {
+            return null;
+        }
+        double prefix = 0;
+        for (int i = cut; i < size; i++) {
+            prefix += weight(i);
+        }
+        int n = size - cut;
+        int end = cut + Math.max(INITIAL_STACK_LENGTH, n * 2); // room to grow
+        CellSpliterator front = new CellSpliterator(Arrays.copyOfRange(cells, cut, end),
+                Arrays.copyOfRange(keyOnly, cut, end), Arrays.copyOfRange(weights, cut, end),
+                n, 0, sized);
+        Arrays.fill(cells, cut, size, null);
+        size = cut;
+        front.est = sized ? (long) prefix : (long) (est * (prefix / total));
+        est -= front.est;
+        return front;
+    }
+
+    public long estimateSize() {
+        return est;
+    }
+
+    public int characteristics() {
+        int c = ORDERED | SORTED | DISTINCT | IMMUTABLE | NONNULL;
+        return sized ? c | SIZED | SUBSIZED : c;
+    }
+
+    /**
+     * @return null, since the keys are in their natural order
+     */
+    public Comparator<? super String> getComparator() {
+        return null;
+    }
+}
@@ -0,0 +1,523 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Cells of splay trees held as int slots rather than Cell objects, and the
+ * tree operations ArenaSplayFC performs on them.
+ * <p>
+ *
+ * A subclass decides where a slot's key and children live: CellArena keeps
+ * them in arrays on the heap and MappedCellStore in a memory-mapped file.
+ * Either way a slot, once written, is never changed, and slot 0 stands for
+ * null.  The operations here mirror the ones SplayFC performs on cells and
+ * produce trees of exactly the same shape.
+ *
+ * @version 1.1
+ */
+public abstract class CellStore {
+
+    /**
+     * the slot that stands for null
+     */
+    static final int NULL = 0;
+
+    /**
+     * the steps recorded by splay while walking down the tree
+     */
+    private static final byte LEFT_ZIG_ZIG = 0;
+    private static final byte LEFT_ZIG_ZAG = 1;
+    private static final byte RIGHT_ZIG_ZIG = 2;
+    private static final byte RIGHT_ZIG_ZAG = 3;
+
+    /**
+     * the nodes on the path walked down by splay and semiSplay, reused
+     * between calls
+     */
+    private int[] path = new int[32];
+    /**
+     * the step taken at each node on the path
+     */
+    private byte[] steps = new byte[32];
+
+    /* -- Begin slot access, provided by subclasses. -- */
+
+    /**
+     * @param c A non-null slot.
+     * @return The left child of c.
+     */
+    abstract int lt(int c);
+
+    /**
+     * @param c A non-null slot.
+     * @return The right child of c.
+     */
+    abstract int rt(int c);
+
+    /**
+     * @param c A non-null slot.
+     * @return The key of c, as a new String.
+     */
+    abstract String key(int c);
+
+    /**
+     * Compare a key with the key of a slot, exactly as String.compareTo would.
+     * @param k The key.
+     * @param c A non-null slot.
+     * @return A negative number, zero or a positive number as k is less than,
+     *         equal to or greater than the key of c.
+     */
+    abstract int compare(String k, int c);
+
+    /**
+     * @param like A non-null slot whose key to use.
+     * @param l The left child.
+     * @param r The right child.
+     * @return A new slot with the key of like and the given children.
+     */
+    abstract int copy(int like, int l, int r);
+
+    /**
+     * @param k The key.
+     * @param l The left child.
+     * @param r The right child.
+     * @return A new slot with a new key and the given children.
+     */
+    abstract int newCell(String k, int l, int r);
+
+    /**
+     * Record a tree as using this store.
+     * @param t The tree.
+     */
+    void register(ArenaSplayFC t) {
+    }
+
+    /**
+     * Reclaim unreachable slots if that is worth doing now.  Only called
+     * between operations, when the trees' roots are the only slots in use.
+     */
+    void maybeCompact() {
+    }
+
+    /**
+     * Reclaim every slot that no tree using the store can reach, if the store
+     * supports it.
+     *
+     * @throws UnsupportedOperationException if it does not
+     */
+    public void compact() throws UnsupportedOperationException {
+        throw new UnsupportedOperationException("compact");
+    }
+
+    /**
+     * @return The number of compactions so far.  Slot numbers taken before a
+     *         compaction are meaningless after it.
+     */
+    public int epoch() {
+        return 0;
+    }
+
+    /**
+     * @return The number of bytes the store holds its slots and keys in.
+     */
+    public abstract long bytesAllocated();
+
+    /* -- End slot access.  Begin tree operations, mirroring SplayFC. -- */
+
+    /**
+     * Splay the tree with root c on k, exactly as SplayFC.splayPath does.
+     *
+     * @param c The non-null root of the tree to splay.
+     * @param k The key for which a "nearest" key is moved to the root.
+     * @return The root of the new tree.
+     */
+    int splay(int c, String k) {
+        int depth = 0;
+        int s;
+
+        // Walk down two levels at a time until a zig step or the nearest key.
+        while (true) {
+            int compareToCKey = compare(k, c);
+            int next;
+            byte step;
+
+            if (compareToCKey < 0 && lt(c) != NULL) { // Search left
+                int p = lt(c);
+                int compareToLtKey = compare(k, p);
+
+                if (compareToLtKey < 0 && lt(p) != NULL) { // left zig-zig step
+                    step = LEFT_ZIG_ZIG;
+                    next = lt(p);
+                } else if (compareToLtKey > 0 && rt(p) != NULL) { // left zig-zag step
+                    step = LEFT_ZIG_ZAG;
+                    next = rt(p);
+                } else { // left zig step
+                    s = copy(p, lt(p), copy(c, rt(p), rt(c)));
+                    break;
+                }
+            } else if (compareToCKey > 0 && rt(c) != NULL) { // Search right
+                int p = rt(c);
+                int compareToRtKey = compare(k, p);
+
+                if (compareToRtKey > 0 && rt(p) != NULL) { // right zig-zig step
+                    step = RIGHT_ZIG_ZIG;
+                    next = rt(p);
+                } else if (compareToRtKey < 0 && lt(p) != NULL) { // right zig-zag step
+                    step = RIGHT_ZIG_ZAG;
+                    next = lt(p);
+                } else { // right zig step
+                    s = copy(p, copy(c, lt(c), lt(p)), rt(p));
+                    break;
+                }
+            } else {
+                s = c;
+                break;
+            }
+
+            if (depth == path.length) {
+                path = Arrays.copyOf(path, depth * 2);
+                steps = Arrays.copyOf(steps, depth * 2);
+            }
+            path[depth] = c;
+            steps[depth] = step;
+            depth++;
+            c = next;
+        }
+
+        // Replay the recorded steps, deepest first, around the splayed subtree s.
+        while (depth > 0) {
+            depth--;
+            c = path[depth];
+            int p;
+            switch (steps[depth]) {
+                case LEFT_ZIG_ZIG:
+                    p = lt(c);
+                    s = copy(s, lt(s), copy(p, rt(s), copy(c, rt(p), rt(c))));
+                    break;
+                case LEFT_ZIG_ZAG:
+                    p = lt(c);
+                    s = copy(s, copy(p, lt(p), lt(s)), copy(c, rt(s), rt(c)));
+                    break;
+                case RIGHT_ZIG_ZIG:
+                    p = rt(c);
+                    s = copy(s, copy(p, copy(c, lt(c), lt(p)), lt(s)), rt(s));
+                    break;
+                default: // RIGHT_ZIG_ZAG
+                    p = rt(c);
+                    s = copy(s, copy(c, lt(c), lt(s)), copy(p, rt(s), rt(p)));
+                    break;
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Semi-splay the tree with root c on k, exactly as SplayFC.semiSplayPath
+     * does.
+     *
+     * @param c The non-null root of the tree.
+     * @param k The key to semi-splay on.
+     * @return The root of the new tree.
+     */
+    int semiSplay(int c, String k) {
+        int depth = 0;
+        while (c != NULL) {
+            if (depth == path.length) {
+                path = Arrays.copyOf(path, depth * 2);
+                steps = Arrays.copyOf(steps, depth * 2);
+            }
+            path[depth++] = c;
+            int cmp = compare(k, c);
+            c = cmp < 0 ? lt(c) : cmp > 0 ? rt(c) : NULL;
+        }
+
+        // s is the new subtree at position i on the path, which it stays on,
+        // so k tells which side of each ancestor it is.
+        int i = depth - 1;
+        int s = path[i];
+        while (i >= 2) {
+            int p = path[i - 1];
+            int g = path[i - 2];
+            boolean sLeft = compare(k, p) < 0;
+            boolean pLeft = compare(k, g) < 0;
+            if (sLeft && pLeft) { // zig-zig: rotate p over g
+                s = copy(p, s, copy(g, rt(p), rt(g)));
+            } else if (!sLeft && !pLeft) {
+                s = copy(p, copy(g, lt(g), lt(p)), s);
+            } else if (pLeft) { // zig-zag: rotate s over p and g
+                s = copy(s, copy(p, lt(p), lt(s)), copy(g, rt(s), rt(g)));
+            } else {
+                s = copy(s, copy(g, lt(g), lt(s)), copy(p, rt(s), rt(p)));
+            }
+            i -= 2;
+        }
+        if (i == 1) { // zig: rotate s over the root
+            int p = path[0];
+            if (compare(k, p) < 0) {
+                s = copy(s, lt(s), copy(p, rt(s), rt(p)));
+            } else {
+                s = copy(s, copy(p, lt(p), lt(s)), rt(s));
+            }
+        }
+        return s;
+    }
+
+    /**
+     * @param k A key.
+     * @return A tree holding just k.
+     */
+    int leaf(String k) {
+        return newCell(k, NULL, NULL);
+    }
+
+    /**
+     * As SplayFC.insertAtRoot.
+     * @param s The root of a tree that has just been splayed on k.
+     * @param k The key to insert, which is not in the tree.
+     * @return The root of the new tree.
+     */
+    int insertAtRoot(int s, String k) {
+        if (compare(k, s) < 0) {
+            return newCell(k, lt(s), copy(s, NULL, rt(s)));
+        } else {
+            return newCell(k, copy(s, lt(s), NULL), rt(s));
+        }
+    }
+
+    /**
+     * As SplayFC.removeRoot.
+     * @param s The root of the tree, which holds the key being removed.
+     * @return The root of the new tree.
+     */
+    int removeRoot(int s) {
+        if (lt(s) == NULL) {
+            return rt(s);
+        } else if (rt(s) == NULL) {
+            return lt(s);
+        }
+        int l = splay(lt(s), SplayFC.STRING_MAX);
+        return copy(l, lt(l), rt(s));
+    }
+
+    /**
+     * As SplayFC.headOf.
+     * @return The tree of keys in s less than k.
+     */
+    int headOf(int s, String k) {
+        if (s == NULL) {
+            return NULL;
+        } else if (compare(k, s) > 0) {
+            return rt(s) == NULL ? s : copy(s, lt(s), NULL);
+        } else {
+            return lt(s);
+        }
+    }
+
+    /**
+     * As SplayFC.tailOf.
+     * @return The tree of keys in s greater than or equal to k.
+     */
+    int tailOf(int s, String k) {
+        if (s == NULL) {
+            return NULL;
+        } else if (compare(k, s) > 0) {
+            return rt(s);
+        } else {
+            return lt(s) == NULL ? s : copy(s, NULL, rt(s));
+        }
+    }
+
+    /**
+     * As SplayFC.findCell.
+     * @return The slot holding k, or NULL if there is none.
+     */
+    int find(int c, String k) {
+        while (c != NULL) {
+            int cmp = compare(k, c);
+            if (cmp == 0) {
+                return c;
+            }
+            c = cmp < 0 ? lt(c) : rt(c);
+        }
+        return NULL;
+    }
+
+    /**
+     * As SplayFC.floorCell.
+     * @return The slot holding the greatest key <= k, or NULL.
+     */
+    int floor(int c, String k) {
+        int best = NULL;
+        while (c != NULL) {
+            int cmp = compare(k, c);
+            if (cmp == 0) {
+                return c;
+            } else if (cmp > 0) {
+                best = c;
+                c = rt(c);
+            } else {
+                c = lt(c);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * As SplayFC.ceilingCell.
+     * @return The slot holding the least key >= k, or NULL.
+     */
+    int ceiling(int c, String k) {
+        int best = NULL;
+        while (c != NULL) {
+            int cmp = compare(k, c);
+            if (cmp == 0) {
+                return c;
+            } else if (cmp < 0) {
+                best = c;
+                c = lt(c);
+            } else {
+                c = rt(c);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * As SplayFC.higherCell.
+     * @return The slot holding the least key > k, or NULL.
+     */
+    int higher(int c, String k) {
+        int best = NULL;
+        while (c != NULL) {
+            if (compare(k, c) < 0) {
+                best = c;
+                c = lt(c);
+            } else {
+                c = rt(c);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return The slot holding the least key of the tree c, or NULL.
+     */
+    int first(int c) {
+        if (c == NULL) {
+            return NULL;
+        }
+        while (lt(c) != NULL) {
+            c = lt(c);
+        }
+        return c;
+    }
+
+    /**
+     * @return The slot holding the greatest key of the tree c, or NULL.
+     */
+    int last(int c) {
+        if (c == NULL) {
+            return NULL;
+        }
+        while (rt(c) != NULL) {
+            c = rt(c);
+        }
+        return c;
+    }
+
+    /* -- End tree operations.  Begin conversion to and from cells. -- */
+
+    /**
+     * Copy the tree c into cells, without recursion.  The slots are listed
+     * parent first, left subtree before right, and then made into cells in
+     * the reverse order, so each cell's subtrees are the last ones made.
+     *
+     * @param c The root of a tree.
+     * @return The root of an equal tree of Cells, or null if c is NULL.
+     */
+    Cell toCells(int c) {
+        int[] order = preOrder(c);
+        Cell[] made = new Cell[32];
+        int size = 0;
+        for (int i = order.length - 1; i >= 0; i--) {
+            int x = order[i];
+            Cell l = lt(x) == NULL ? null : made[--size];
+            Cell r = rt(x) == NULL ? null : made[--size];
+            if (size == made.length) {
+                made = Arrays.copyOf(made, size * 2);
+            }
+            made[size++] = new Cell(key(x), l, r);
+        }
+        return size == 0 ? null : made[0];
+    }
+
+    /**
+     * @param c The root of a tree.
+     * @return The slots of the tree, each before its left subtree and that
+     *         before its right subtree.
+     */
+    private int[] preOrder(int c) {
+        int[] order = new int[32];
+        int n = 0;
+        int[] stack = new int[32];
+        int size = 0;
+        if (c != NULL) {
+            stack[size++] = c;
+        }
+        while (size > 0) {
+            int x = stack[--size];
+            if (n == order.length) {
+                order = Arrays.copyOf(order, n * 2);
+            }
+            order[n++] = x;
+            if (size + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            if (rt(x) != NULL) {
+                stack[size++] = rt(x);
+            }
+            if (lt(x) != NULL) {
+                stack[size++] = lt(x);
+            }
+        }
+        return Arrays.copyOf(order, n);
+    }
+
+    /**
+     * Copy a tree of cells into the arena, without recursion, in the same
+     * way as toCells.
+     *
+     * @param t The root of a tree of cells, possibly null.
+     * @return The root slot of an equal tree.
+     */
+    int fromCells(Cell t) {
+        ArrayList<Cell> order = new ArrayList<Cell>();
+        ArrayList<Cell> stack = new ArrayList<Cell>();
+        if (t != null) {
+            stack.add(t);
+        }
+        while (!stack.isEmpty()) {
+            Cell x = stack.remove(stack.size() - 1);
+            order.add(x);
+            if (x.rt != null) {
+                stack.add(x.rt);
+            }
+            if (x.lt != null) {
+                stack.add(x.lt);
+            }
+        }
+        int[] made = new int[32];
+        int size = 0;
+        for (int i = order.size() - 1; i >= 0; i--) {
+            Cell x = order.get(i);
+            int l = x.lt == null ? NULL : made[--size];
+            int r = x.rt == null ? NULL : made[--size];
+            if (size == made.length) {
+                made = Arrays.copyOf(made, size * 2);
+            }
+            made[size++] = newCell(x.key(), l, r);
+        }
+        return size == 0 ? NULL : made[0];
+    }
+
+    /* -- End conversion. -- */
+}
@@ -0,0 +1,647 @@
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A thread-safe splay tree of strings with fast cloning, built on the same
+ * immutable cells as SplayFC but without any locks.
+ * <p>
+ *
+ * The root is published through an atomic reference.  Writers read the root,
+ * build their new tree from it (sharing every cell they do not touch) and
+ * compare-and-set it in, retrying if another writer got there first.  Since
+ * cells are never modified, a reader that reads the root once holds a
+ * consistent snapshot of the whole tree for as long as it likes.
+ * <p>
+ *
+ * A Rebalancer can be attached to rebuild the tree in balanced form in the
+ * background when lookups find it has grown too deep.
+ *
+ * @version 1.1
+ */
+public class ConcurrentSplayFC implements ISplayFC {
+
+    /**
+     * the current root cell and modification count
+     */
+    private final AtomicReference<Root> root;
+    /**
+     * rebuilds the tree when it is too deep, or null
+     */
+    private volatile Rebalancer rebalancer;
+    /**
+     * whether a rebuild of the tree is in progress
+     */
+    private final AtomicBoolean rebalancing;
+    /**
+     * rebuilds dropped since the last one was installed
+     */
+    private volatile int rebalanceFailures;
+
+    /**
+     * A root cell together with the number of changes to the tree that led
+     * to it.  The two are swapped in as one, so that an iterator never sees
+     * a new root with an old count or the other way round.
+     */
+    private static final class Root {
+
+        /**
+         * the root cell
+         */
+        private final Cell top;
+        /**
+         * to keep track of any changes to the tree; only ever increases
+         */
+        private final int modCount;
+
+        /**
+         * Constructs a Root.
+         */
+        private Root(Cell top, int modCount) {
+            this.top = top;
+            this.modCount = modCount;
+        }
+    }
+
+    /**
+     * Constructs a ConcurrentSplayFC with a null root.
+     */
+    public ConcurrentSplayFC() {
+        this(null);
+    }
+
+    /**
+     * Constructs a ConcurrentSplayFC with the specified cell as root.
+     * @param c the cell to be made root
+     */
+    public ConcurrentSplayFC(Cell c) {
+        root = new AtomicReference<Root>(new Root(c, 0));
+        rebalancing = new AtomicBoolean();
+    }
+
+    /**
+     * Get the top cell of the tree.  The returned cell is a consistent
+     * snapshot of the tree.
+     *
+     * @return The top cell
+     */
+    public Cell getTop() {
+        return root.get().top;
+    }
+
+    /**
+     * Set the top cell of the tree, replacing whatever was there.
+     *
+     * @param c The new top cell.
+     */
+    public void setTop(Cell c) {
+        while (true) {
+            Root r = root.get();
+            if (root.compareAndSet(r, new Root(c, r.modCount + 1))) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Generates a string representation of the tree, in the same format as
+     * SplayFC.
+     *
+     * @return The string representation of the tree.
+     */
+    public String toString() {
+        Cell t = root.get().top;
+        if (t == null) {
+            return "[]\n";
+        }
+        return t.toString("", "   ", "   ", " -");
+    }
+
+    /**
+     * Splay the tree with root c, exactly as SplayFC does.  This does not
+     * change this tree.
+     *
+     * @param c The cell at root of the tree to splay.
+     * @param k The key for which a "nearest" key from the tree is moved to the
+     *          root.
+     * @return The root cell of the new tree.
+     */
+    public Cell splay(Cell c, String k) {
+        if (c == null) {
+            throw new NullPointerException("splay requires a non-null Cell");
+        }
+        return SplayFC.splayPath(c, k);
+    }
+
+    /**
+     * Insert a specified string key into the tree, in the same way as SplayFC,
+     * retrying if another writer changes the tree first.
+     *
+     * @param k The string key to insert.
+     * @return true if k was not already in the tree.
+     */
+    public boolean add(String k) {
+        long cellsBefore = SplayStats.ENABLED ? SplayStats.cellsMade() : 0;
+        boolean added;
+        while (true) {
+            Root r = root.get();
+            Cell t = r.top;
+            Cell newTop;
+            if (t == null) {
+                newTop = new Cell(k, null, null);
+            } else {
+                Cell s = SplayFC.splayPath(t, k);
+                if (s.key().equals(k)) { // checks if its already in the tree
+                    added = false;
+                    break;
+                }
+                newTop = SplayFC.insertAtRoot(s, k);
+            }
+            if (root.compareAndSet(r, new Root(newTop, r.modCount + 1))) {
+                added = true;
+                break;
+            }
+        }
+        if (SplayStats.ENABLED) {
+            SplayStats.operation(SplayStats.Op.ADD, !added, cellsBefore);
+        }
+        return added;
+    }
+
+    /**
+     * Remove a specified string from the tree, in the same way as SplayFC,
+     * retrying if another writer changes the tree first.
+     *
+     * @param k The string to remove.
+     * @return true if k is was the tree.
+     */
+    public boolean remove(String k) {
+        long cellsBefore = SplayStats.ENABLED ? SplayStats.cellsMade() : 0;
+        boolean removed;
+        while (true) {
+            Root r = root.get();
+            Cell t = r.top;
+            if (t == null) {
+                removed = false;
+                break;
+            }
+            Cell s = SplayFC.splayPath(t, k);
+            if (!s.key().equals(k)) {
+                publishSplay(r, s);
+                removed = false;
+                break;
+            }
+            if (root.compareAndSet(r, new Root(SplayFC.removeRoot(s), r.modCount + 1))) {
+                removed = true;
+                break;
+            }
+        }
+        if (SplayStats.ENABLED) {
+            SplayStats.operation(SplayStats.Op.REMOVE, removed, cellsBefore);
+        }
+        return removed;
+    }
+
+    /**
+     * Check whether a string k appears as a key in the tree, splaying the tree
+     * on k.
+     *
+     * @param k  The key string to look for.
+     * @return true if k is included in the tree.
+     */
+    public boolean contains(String k) {
+        long cellsBefore = SplayStats.ENABLED ? SplayStats.cellsMade() : 0;
+        Root r = root.get();
+        Cell t = r.top;
+        boolean found = false;
+        if (t != null) {
+            Cell s = SplayFC.splayPath(t, k);
+            publishSplay(r, s);
+            found = s.key().equals(k);
+            checkDepth(t);
+        }
+        if (SplayStats.ENABLED) {
+            SplayStats.operation(SplayStats.Op.CONTAINS, found, cellsBefore);
+        }
+        return found;
+    }
+
+    /**
+     * Install the result of splaying the tree t, if t is still the root.
+     * Splaying does not change the keys, so when another writer has already
+     * replaced t the answer computed from t still stands and the splay is
+     * simply dropped rather than retried.  Splays are also dropped while the
+     * tree is being rebalanced, so that they do not stop the balanced tree
+     * from being installed.
+     *
+     * @param r The root that was splayed.
+     * @param s The splayed tree.
+     */
+    private void publishSplay(Root r, Cell s) {
+        if (s != r.top && !rebalancing.get()) {
+            root.compareAndSet(r, new Root(s, r.modCount));
+        }
+    }
+
+    /**
+     * Check whether a string k appears as a key in the tree, without splaying.
+     *
+     * @param k  The key string to look for.
+     * @return true if k is included in the tree.
+     */
+    public boolean containsNoSplay(String k) {
+        Cell t = root.get().top;
+        boolean found = SplayFC.findCell(t, k) != null;
+        if (t != null) {
+            checkDepth(t);
+        }
+        return found;
+    }
+
+    /**
+     * Get the Rebalancer that rebuilds this tree when lookups find it too
+     * deep.
+     *
+     * @return The rebalancer, or null if there is none.
+     */
+    public Rebalancer getRebalancer() {
+        return rebalancer;
+    }
+
+    /**
+     * Attach a Rebalancer, which then checks the depth of the tree on a
+     * sample of lookups and rebuilds it in the background if it is too deep.
+     *
+     * @param r The rebalancer, or null to stop rebalancing.
+     */
+    public void setRebalancer(Rebalancer r) {
+        rebalancer = r;
+        rebalanceFailures = 0;
+    }
+
+    /**
+     * Build a perfectly balanced copy of the tree and install it if the root
+     * has not changed in the meantime.  The keys are not changed, so this
+     * does not count as a modification.
+     *
+     * @return true if the balanced tree was installed.
+     */
+    public boolean rebalance() {
+        Root r = root.get();
+        Cell t = r.top;
+        if (t == null) {
+            return false;
+        }
+        Cell b = SplayFC.balancedCells(t);
+        return b == t || root.compareAndSet(r, new Root(b, r.modCount));
+    }
+
+    /**
+     * Check the depth of the tree on a sample of lookups, if there is a
+     * Rebalancer, and start a rebuild if it is too deep and none is running.
+     *
+     * @param t The non-null root the lookup used.
+     */
+    private void checkDepth(Cell t) {
+        final Rebalancer r = rebalancer;
+        if (r == null || !r.shouldCheck(rebalanceFailures) || !r.tooDeep(t)
+                || !rebalancing.compareAndSet(false, true)) {
+            return;
+        }
+        boolean submitted = r.submit(() -> {
+            try {
+                boolean installed = rebalance();
+                rebalanceFailures = installed ? 0 : rebalanceFailures + 1;
+                r.record(installed);
+            } finally {
+                rebalancing.set(false);
+            }
+        });
+        if (!submitted) {
+            rebalancing.set(false);
+        }
+    }
+
+    /**
+     * Find the greatest key in the tree that is less than or equal to k,
+     * without splaying.
+     *
+     * @param k  The key to search from.
+     * @return The greatest key <= k, or null if there is none.
+     */
+    public String floor(String k) {
+        Cell c = SplayFC.floorCell(root.get().top, k);
+        return c == null ? null : c.key();
+    }
+
+    /**
+     * Find the least key in the tree that is greater than or equal to k,
+     * without splaying.
+     *
+     * @param k  The key to search from.
+     * @return The least key >= k, or null if there is none.
+     */
+    public String ceiling(String k) {
+        Cell c = SplayFC.ceilingCell(root.get().top, k);
+        return c == null ? null : c.key();
+    }
+
+    /**
+     * Find the least key in the tree, without splaying.
+     *
+     * @return The least key, or null if the tree is empty.
+     */
+    public String first() {
+        Cell c = SplayFC.firstCell(root.get().top);
+        return c == null ? null : c.key();
+    }
+
+    /**
+     * Find the greatest key in the tree, without splaying.
+     *
+     * @return The greatest key, or null if the tree is empty.
+     */
+    public String last() {
+        Cell c = SplayFC.lastCell(root.get().top);
+        return c == null ? null : c.key();
+    }
+
+    /**
+     * Extract a splay tree that contains all keys in the current tree that are
+     * strictly less than k, splaying this tree on k.
+     *
+     * @param k  The string below which keys should be included.
+     * @return The extracted splay tree.
+     */
+    public SplayFC headSet(String k) {
+        long cellsBefore = SplayStats.ENABLED ? SplayStats.cellsMade() : 0;
+        Root r = root.get();
+        Cell t = r.top;
+        Cell head = null;
+        if (t != null) {
+            Cell s = SplayFC.splayPath(t, k);
+            publishSplay(r, s);
+            head = SplayFC.headOf(s, k);
+        }
+        return extracted(head, cellsBefore);
+    }
+
+    /**
+     * Extract a splay tree that contains all keys in the current tree that are
+     * greater than or equal to k, splaying this tree on k.
+     *
+     * @param k The minimum string key to include.
+     * @return The extracted splay tree.
+     */
+    public SplayFC tailSet(String k) {
+        long cellsBefore = SplayStats.ENABLED ? SplayStats.cellsMade() : 0;
+        Root r = root.get();
+        Cell t = r.top;
+        Cell tail = null;
+        if (t != null) {
+            Cell s = SplayFC.splayPath(t, k);
+            publishSplay(r, s);
+            tail = SplayFC.tailOf(s, k);
+        }
+        return extracted(tail, cellsBefore);
+    }
+
+    /**
+     * Extract a splay tree that contains all keys in the current tree that are
+     * greater than or equal to k1 and strictly less than k2, splaying this
+     * tree on k2.
+     *
+     * @param k1  The minimum string key to include.
+     * @param k2  The string below which keys should be included.
+     * @return The extracted splay tree.
+     */
+    public SplayFC subSet(String k1, String k2) {
+        long cellsBefore = SplayStats.ENABLED ? SplayStats.cellsMade() : 0;
+        Root r = root.get();
+        Cell t = r.top;
+        Cell sub = null;
+        if (t != null) {
+            Cell s = SplayFC.splayPath(t, k2);
+            publishSplay(r, s);
+            Cell head = SplayFC.headOf(s, k2);
+            if (head != null && k1.compareTo(k2) < 0) {
+                sub = SplayFC.tailOf(SplayFC.splayPath(head, k1), k1);
+            }
+        }
+        return extracted(sub, cellsBefore);
+    }
+
+    /**
+     * Wrap the result of a range extraction, reporting it to SplayStats.
+     *
+     * @param c The root of the extracted tree.
+     * @param cellsBefore The value of SplayStats.cellsMade() when the
+     *          extraction began.
+     * @return A SplayFC with c as root.
+     */
+    private static SplayFC extracted(Cell c, long cellsBefore) {
+        if (SplayStats.ENABLED) {
+            SplayStats.operation(SplayStats.Op.RANGE, c != null, cellsBefore);
+        }
+        return new SplayFC(c);
+    }
+
+    /**
+     * Create a SplayFC that contains the strings in this tree at the moment of
+     * the call.  All cells are shared, so this takes constant time.
+     *
+     * @return The created SplayFC object.
+     */
+    public SplayFC clone() {
+        return new SplayFC(root.get().top);
+    }
+
+    /**
+     * Create an iterator that visits the strings in the tree, as they were when
+     * the iterator was created, in order.
+     *
+     * @return The iterator object.
+     */
+    public Iterator<String> snapShotIterator() {
+        return clone().snapShotIterator();
+    }
+
+    /**
+     * Create a Spliterator over the strings in the tree, as they were when it
+     * was created, in order.
+     *
+     * @return The spliterator.
+     */
+    public Spliterator<String> spliterator() {
+        return new CellSpliterator(root.get().top);
+    }
+
+    /**
+     * Create a sequential stream of the strings in the tree, in order, as
+     * they were when the stream was created.
+     *
+     * @return The stream.
+     */
+    public Stream<String> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Create a parallel stream of the strings in the tree, in order, as they
+     * were when the stream was created.
+     *
+     * @return The stream.
+     */
+    public Stream<String> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * Create an iterator that visits the strings in the live tree in order.
+     * Each call to next visits the least element currently in the tree that is
+     * greater than the previously returned element.  next throws
+     * java.util.ConcurrentModificationException if the tree has been changed
+     * since the most recent call to hasNext.
+     *
+     * @return The iterator object.
+     */
+    public Iterator<String> updatingIterator() {
+        return new UpdatingIterator();
+    }
+
+    /**
+     * An iterator over the live tree.  It keeps a stack of the cells still to
+     * be visited, taken from one version of the tree, so each step takes
+     * constant amortised time.  Splays publish new roots without changing the
+     * keys, so the stack is only refilled, by a non-splaying search for the
+     * keys above the last one returned, when the modification count moves.
+     */
+    private class UpdatingIterator implements Iterator<String> {
+
+        /**
+         * the cells whose keys are still to be visited, the next one on top.
+         * Each cell's right subtree is visited straight after its key.
+         */
+        private Cell[] stack = new Cell[32];
+        /**
+         * the number of cells on the stack
+         */
+        private int size = 0;
+        /**
+         * the last element returned by next, or null before the first call
+         */
+        private String last = null;
+        /**
+         * the value of modCount when the stack was filled
+         */
+        private int expectedModCount;
+        /**
+         * keeps track of which string remove() should be deleting
+         */
+        private String toBeRemoved = null;
+
+        /**
+         * creates an instance of the UpdatingIterator
+         */
+        private UpdatingIterator() {
+            refill(root.get());
+        }
+
+        /**
+         * fills the stack with the cells of a version of the tree whose keys
+         * are greater than last, as they would be after visiting last
+         * @param r the version of the tree
+         */
+        private void refill(Root r) {
+            while (size > 0) {
+                stack[--size] = null;
+            }
+            expectedModCount = r.modCount;
+            Cell c = r.top;
+            while (c != null) {
+                if (last == null || last.compareTo(c.key()) < 0) {
+                    push(c);
+                    c = c.lt;
+                } else {
+                    c = c.rt;
+                }
+            }
+        }
+
+        /**
+         * pushes a cell onto the stack
+         * @param c the cell
+         */
+        private void push(Cell c) {
+            if (size == stack.length) {
+                stack = Arrays.copyOf(stack, size * 2);
+            }
+            stack[size++] = c;
+        }
+
+        /**
+         * returns true if next() returns an element rather than throw
+         * an exception
+         * @return true iff the iterator has more elements
+         */
+        public boolean hasNext() {
+            Root r = root.get();
+            if (r.modCount != expectedModCount) {
+                refill(r);
+            }
+            return size > 0;
+        }
+
+        /**
+         * returns the next element in the iteration
+         * @return the next element in the iteration
+         * @throws NoSuchElementException iteration has no more elements
+         * @throws ConcurrentModificationException the tree has been changed
+         *  since the most recent call to hasNext()
+         */
+        public String next() throws NoSuchElementException, ConcurrentModificationException {
+            if (root.get().modCount != expectedModCount) {
+                throw new ConcurrentModificationException("the tree has been "
+                        + "changed since the most recent call to hasNext()");
+            }
+            if (size == 0) {
+                throw new NoSuchElementException("Reached end of tree, no child to go to.");
+            }
+            Cell c = stack[--size];
+            stack[size] = null;
+            for (Cell d = c.rt; d != null; d = d.lt) {
+                push(d);
+            }
+            last = c.key();
+            toBeRemoved = last;
+            return last;
+        }
+
+        /**
+         * removes from the underlying tree the last element returned by the iterator.
+         * @throws IllegalStateException if the next method has not yet been called,
+         *  or the remove method has already been called after the last call to the next method
+         */
+        public void remove() throws IllegalStateException {
+            if (toBeRemoved != null) {
+                // The removed key is behind the stack, so the stack is still
+                // right unless another thread changed the tree as well.
+                if (ConcurrentSplayFC.this.remove(toBeRemoved)
+                        && root.get().modCount == expectedModCount + 1) {
+                    expectedModCount++;
+                }
+                toBeRemoved = null;
+            } else {
+                throw new IllegalStateException("next() has not yet been called,"
+                        + "or remove() has already been called after the last"
+                        + "call to next()");
+            }
+        }
+    }
+}
@@ -0,0 +1,291 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An unmodifiable set of strings for read-mostly use, made by SplayFC.freeze.
+ * <p>
+ *
+ * The keys are held in a single array in Eytzinger (breadth-first) order:
+ * the root of an implicit balanced search tree is at index 1 and the children
+ * of index i are at 2i and 2i + 1.  A search therefore runs through one
+ * contiguous array rather than chasing cell pointers, the top levels of the
+ * tree share a few cache lines, and each step picks the next index
+ * arithmetically instead of with a branch.
+ *
+ * @version 1.1
+ */
+public class FrozenStringSet implements Iterable<String> {
+
+    /**
+     * the keys in Eytzinger order, from index 1; index 0 is unused
+     */
+    private final String[] keys;
+    /**
+     * the number of keys
+     */
+    private final int n;
+
+    /**
+     * Constructs a FrozenStringSet.
+     * @param sorted the keys, in strictly increasing order
+     */
+    FrozenStringSet(String[] sorted) {
+        n = sorted.length;
+        keys = new String[n + 1];
+        fill(sorted, 0, 1);
+    }
+
+    /**
+     * Place sorted keys into the subtree rooted at index i, in order.
+     * @param sorted the keys, in increasing order
+     * @param pos the index in sorted of the next key to place
+     * @param i the index of the subtree to fill
+     * @return the index in sorted of the next key after this subtree
+     */
+    private int fill(String[] sorted, int pos, int i) {
+        if (i <= n) {
+            pos = fill(sorted, pos, 2 * i);
+            keys[i] = sorted[pos++];
+            pos = fill(sorted, pos, 2 * i + 1);
+        }
+        return pos;
+    }
+
+    /**
+     * Get the number of keys in the set.
+     *
+     * @return The number of keys.
+     */
+    public int size() {
+        return n;
+    }
+
+    /**
+     * Check whether a string k is in the set.
+     *
+     * @param k  The key string to look for.
+     * @return true if k is included in the set.
+     */
+    public boolean contains(String k) {
+        int i = ceilingIndex(k);
+        return i != 0 && keys[i].equals(k);
+    }
+
+    /**
+     * Find the greatest key in the set that is less than or equal to k.
+     *
+     * @param k  The key to search from.
+     * @return The greatest key <= k, or null if there is none.
+     */
+    public String floor(String k) {
+        int i = higherIndex(k);
+        return keys[i == 0 ? lastIndex() : prevIndex(i)];
+    }
+
+    /**
+     * Find the least key in the set that is greater than or equal to k.
+     *
+     * @param k  The key to search from.
+     * @return The least key >= k, or null if there is none.
+     */
+    public String ceiling(String k) {
+        return keys[ceilingIndex(k)];
+    }
+
+    /**
+     * Find the least key in the set.
+     *
+     * @return The least key, or null if the set is empty.
+     */
+    public String first() {
+        return keys[firstIndex()];
+    }
+
+    /**
+     * Find the greatest key in the set.
+     *
+     * @return The greatest key, or null if the set is empty.
+     */
+    public String last() {
+        return keys[lastIndex()];
+    }
+
+    /**
+     * Create an iterator that visits the strings in the set in order.  Since
+     * the set never changes, this is always a snapshot.
+     *
+     * @return The iterator object.
+     */
+    public Iterator<String> snapShotIterator() {
+        return new RangeIterator(firstIndex(), null);
+    }
+
+    /**
+     * Create an iterator that visits the strings in the set in order.
+     *
+     * @return The iterator object.
+     */
+    public Iterator<String> iterator() {
+        return snapShotIterator();
+    }
+
+    /**
+     * Create an iterator that visits, in order, the strings in the set that
+     * are greater than or equal to k1 and strictly less than k2.
+     *
+     * @param k1  The minimum string key to include.
+     * @param k2  The string below which keys should be included.
+     * @return The iterator object.
+     */
+    public Iterator<String> subSetIterator(String k1, String k2) {
+        return new RangeIterator(ceilingIndex(k1), k2);
+    }
+
+    /* -- Begin index arithmetic.  An index of 0 means "no such key". -- */
+
+    /**
+     * @param k The key to search from.
+     * @return The index of the least key >= k.
+     */
+    private int ceilingIndex(String k) {
+        int i = 1;
+        while (i <= n) {
+            i = 2 * i + (keys[i].compareTo(k) < 0 ? 1 : 0);
+        }
+        // Undo the right turns taken after the last left turn.
+        return i >>> (Integer.numberOfTrailingZeros(~i) + 1);
+    }
+
+    /**
+     * @param k The key to search from.
+     * @return The index of the least key > k.
+     */
+    private int higherIndex(String k) {
+        int i = 1;
+        while (i <= n) {
+            i = 2 * i + (keys[i].compareTo(k) <= 0 ? 1 : 0);
+        }
+        return i >>> (Integer.numberOfTrailingZeros(~i) + 1);
+    }
+
+    /**
+     * @return The index of the least key.
+     */
+    private int firstIndex() {
+        if (n == 0) {
+            return 0;
+        }
+        int i = 1;
+        while (2 * i <= n) {
+            i = 2 * i;
+        }
+        return i;
+    }
+
+    /**
+     * @return The index of the greatest key.
+     */
+    private int lastIndex() {
+        if (n == 0) {
+            return 0;
+        }
+        int i = 1;
+        while (2 * i + 1 <= n) {
+            i = 2 * i + 1;
+        }
+        return i;
+    }
+
+    /**
+     * @param i The index of a key.
+     * @return The index of the next key in order.
+     */
+    private int nextIndex(int i) {
+        if (2 * i + 1 <= n) {
+            i = 2 * i + 1;
+            while (2 * i <= n) {
+                i = 2 * i;
+            }
+            return i;
+        }
+        while ((i & 1) == 1) { // climb while coming from a right child
+            i >>>= 1;
+        }
+        return i >>> 1;
+    }
+
+    /**
+     * @param i The index of a key.
+     * @return The index of the previous key in order.
+     */
+    private int prevIndex(int i) {
+        if (2 * i <= n) {
+            i = 2 * i;
+            while (2 * i + 1 <= n) {
+                i = 2 * i + 1;
+            }
+            return i;
+        }
+        while (i != 0 && (i & 1) == 0) { // climb while coming from a left child
+            i >>>= 1;
+        }
+        return i >>> 1;
+    }
+
+    /* -- End index arithmetic. -- */
+
+    /**
+     * An iterator over the keys from a given index up to an optional bound.
+     */
+    private class RangeIterator implements Iterator<String> {
+
+        /**
+         * the index of the next key, or 0 at the end
+         */
+        private int i;
+        /**
+         * the key at which to stop, or null to run to the end
+         */
+        private final String bound;
+
+        /**
+         * creates an instance of the RangeIterator
+         * @param start the index of the first key
+         * @param bound the key at which to stop, or null to run to the end
+         */
+        RangeIterator(int start, String bound) {
+            i = start;
+            this.bound = bound;
+        }
+
+        /**
+         * returns true if next() returns an element rather than throw
+         * an exception
+         * @return true iff the iterator has more elements
+         */
+        public boolean hasNext() {
+            return i != 0 && (bound == null || keys[i].compareTo(bound) < 0);
+        }
+
+        /**
+         * returns the next element in the iteration
+         * @return the next element in the iteration
+         * @throws NoSuchElementException iteration has no more elements
+         */
+        public String next() throws NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException("Reached end of set.");
+            }
+            String k = keys[i];
+            i = nextIndex(i);
+            return k;
+        }
+
+        /**
+         * unsupported method
+         */
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * A SizedCell that also records a hash of the keys in the subtree it is the
+ * root of.  The hash is the sum of a 64-bit hash of each key, so it depends
+ * only on which keys are in the subtree and not on how they are arranged:
+ * splaying a tree leaves the hash of its root unchanged, and two trees
+ * holding the same keys have the same root hash whatever their shapes.
+ *
+ * @version 1.1
+ */
+public class HashedCell extends SizedCell {
+
+	/**
+	 * the sum of the hashes of the keys in the subtree rooted at this cell
+	 */
+	public final long hash;
+
+	public HashedCell(String k, Cell left, Cell right) {
+		this(k, keyHash(k), left, right);
+	}
+
+	/**
+	 * Constructs a HashedCell whose key's hash is already known.
+	 */
+	private HashedCell(String k, long keyHash, Cell left, Cell right) {
+		super(k, left, right);
+		hash = keyHash + hash(left) + hash(right);
+	}
+
+	/**
+	 * @param c The root of a tree of HashedCells, possibly null.
+	 * @return The hash of the keys in the tree; 0 for an empty tree.
+	 */
+	public static long hash(Cell c) {
+		return c == null ? 0 : ((HashedCell) c).hash;
+	}
+
+	/**
+	 * Hash a key: FNV-1a over its characters, then mixed so that every bit of
+	 * the result depends on every character, as a sum of hashes needs.
+	 * @param k The key.
+	 * @return Its 64-bit hash.
+	 */
+	public static long keyHash(String k) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < k.length(); i++) {
+			h = (h ^ k.charAt(i)) * 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * @param c A HashedCell, possibly null.
+	 * @param k A key.
+	 * @return true if k is c's own key, so that its hash can be recovered
+	 *         from c rather than worked out again.
+	 */
+	private static boolean holds(Cell c, String k) {
+		return c != null && c.key() == k;
+	}
+
+	/**
+	 * @param c A HashedCell.
+	 * @return The hash of c's own key.
+	 */
+	private static long ownHash(Cell c) {
+		return hash(c) - hash(c.lt) - hash(c.rt);
+	}
+
+	public Cell make(String k, Cell left, Cell right) {
+		// Rebuilding a tree mostly moves keys between cells, and the key of
+		// the cell or one of its children is almost always the one moved.
+		long h;
+		if (holds(this, k)) {
+			h = ownHash(this);
+		} else if (holds(lt, k)) {
+			h = ownHash(lt);
+		} else if (holds(rt, k)) {
+			h = ownHash(rt);
+		} else {
+			h = keyHash(k);
+		}
+		return new HashedCell(k, h, left, right);
+	}
+}
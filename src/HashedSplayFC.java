@@ -0,0 +1,167 @@
+import java.util.Iterator;
+
+/**
+ * A SizedSplayFC whose cells carry a hash of the keys beneath them, which
+ * makes comparing two trees cheap.  Two trees with different sizes or root
+ * hashes cannot hold the same keys, so equals rejects them in constant time;
+ * only trees that look the same are compared key by key, and trees sharing a
+ * root not even then.  The hashes are kept up to date by every operation,
+ * like the sizes, since they all make cells with Cell.make.
+ * <p>
+ *
+ * Unlike SplayFC, equals and hashCode depend on the keys in the tree, so a
+ * HashedSplayFC should not be changed while it is in a hashed collection.
+ *
+ * @version 1.1
+ */
+public class HashedSplayFC extends SizedSplayFC {
+
+    /**
+     * Constructs a HashedSplayFC with a null root.
+     */
+    public HashedSplayFC() {
+        super();
+    }
+
+    /**
+     * Constructs a HashedSplayFC with the specified cell as root.
+     * @param c the cell to be made root, which must be a HashedCell or null
+     */
+    public HashedSplayFC(HashedCell c) {
+        super(c);
+    }
+
+    /**
+     * Build a HashedSplayFC from keys given in strictly increasing order, in
+     * time linear in the number of keys.
+     *
+     * @param keys The keys, in strictly increasing order.
+     * @return The new HashedSplayFC.
+     * @throws IllegalArgumentException if the keys are not strictly increasing
+     */
+    public static HashedSplayFC fromSorted(Iterator<String> keys) throws IllegalArgumentException {
+        HashedSplayFC t = new HashedSplayFC();
+        t.addAllSorted(keys);
+        return t;
+    }
+
+    /**
+     * Create the cell that holds the first key added to an empty tree.
+     * @param k The key for the new cell.
+     * @return The newly constructed cell.
+     */
+    protected Cell leaf(String k) {
+        return new HashedCell(k, null, null);
+    }
+
+    /**
+     * Set the top cell of the tree.  Only the root needs checking, since a
+     * HashedCell can only be made over HashedCells.
+     *
+     * @param c The new top cell, which must be a HashedCell or null.
+     * @throws IllegalArgumentException if c is some other kind of cell
+     */
+    public void setTop(Cell c) throws IllegalArgumentException {
+        if (c != null && !(c instanceof HashedCell)) {
+            throw new IllegalArgumentException("a HashedSplayFC needs a HashedCell, not a "
+                    + c.getClass().getName());
+        }
+        super.setTop(c);
+    }
+
+    /**
+     * Get the hash of the keys in the tree, which does not depend on its
+     * shape.
+     *
+     * @return The sum of HashedCell.keyHash over the keys.
+     */
+    public long contentHash() {
+        return HashedCell.hash(top);
+    }
+
+    /**
+     * Check whether two trees of HashedCells hold the same keys.
+     *
+     * @param a The root of one tree, possibly null.
+     * @param b The root of the other, possibly null.
+     * @return true if they hold the same keys.
+     */
+    public static boolean sameKeys(Cell a, Cell b) {
+        if (a == b) {
+            return true;
+        }
+        if (SizedCell.size(a) != SizedCell.size(b) || HashedCell.hash(a) != HashedCell.hash(b)) {
+            return false;
+        }
+        // Almost certainly equal; make sure.
+        Iterator<String> i = new SplayFC(a).snapShotIterator();
+        Iterator<String> j = new SplayFC(b).snapShotIterator();
+        while (i.hasNext()) {
+            if (!i.next().equals(j.next())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check whether another object is a HashedSplayFC holding the same keys.
+     * Neither tree is splayed.
+     *
+     * @param o The object.
+     * @return true if o holds the same keys as this tree.
+     */
+    public boolean equals(Object o) {
+        return o instanceof HashedSplayFC && sameKeys(top, ((HashedSplayFC) o).top);
+    }
+
+    /**
+     * @return A hash code depending only on the keys in the tree.
+     */
+    public int hashCode() {
+        return Long.hashCode(contentHash());
+    }
+
+    /**
+     * Extract a hashed splay tree that contains all keys in the current tree
+     * that are strictly less than k.
+     *
+     * @param k  The string below which keys should be included.
+     * @return The extracted splay tree.
+     */
+    public HashedSplayFC headSet(String k) {
+        return (HashedSplayFC) super.headSet(k);
+    }
+
+    /**
+     * Extract a hashed splay tree that contains all keys in the current tree
+     * that are greater than or equal to k.
+     *
+     * @param k The minimum string key to include.
+     * @return The extracted splay tree.
+     */
+    public HashedSplayFC tailSet(String k) {
+        return (HashedSplayFC) super.tailSet(k);
+    }
+
+    /**
+     * Extract a hashed splay tree that contains all keys in the current tree
+     * that are greater than or equal to k1 and strictly less than k2.
+     *
+     * @param k1  The minimum string key to include.
+     * @param k2  The string below which keys should be included.
+     * @return The extracted splay tree.
+     */
+    public HashedSplayFC subSet(String k1, String k2) {
+        return (HashedSplayFC) super.subSet(k1, k2);
+    }
+
+    /**
+     * Create a new HashedSplayFC that shares all of this tree's cells.
+     *
+     * @return The created HashedSplayFC object.
+     */
+    public HashedSplayFC clone() {
+        return (HashedSplayFC) super.clone();
+    }
+}
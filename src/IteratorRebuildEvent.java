@@ -0,0 +1,39 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event for each time a SplayFC updating iterator
+ * finds that the tree has changed and resumes from the live tree with a
+ * successor search.  The duration of the event is the cost of resuming.
+ *
+ * @version 1.1
+ */
+@Name("splayfc.IteratorRebuild")
+@Label("SplayFC Iterator Rebuild")
+@Category("SplayFC")
+@Description("An updating iterator resumed from the live tree after it was changed")
+public class IteratorRebuildEvent extends Event {
+
+    @Label("Key")
+    @Description("The key the iterator resumed from")
+    String key;
+
+    /**
+     * Start timing a resume, if a recording wants these events.
+     *
+     * @param k The key the iterator resumes from.
+     * @return The event, or null if the event is not enabled.
+     */
+    static IteratorRebuildEvent start(String k) {
+        IteratorRebuildEvent event = new IteratorRebuildEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.key = k;
+        event.begin();
+        return event;
+    }
+}
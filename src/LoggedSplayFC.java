@@ -0,0 +1,777 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * A thread-safe splay tree of strings whose changes survive a crash, kept in
+ * a ConcurrentSplayFC with a write-ahead log on disk.
+ * <p>
+ *
+ * Every add or remove that changes the tree appends a record to the log, and
+ * does not return until the record has been forced to disk.  Forcing is slow,
+ * so it is shared: one caller at a time leads, forcing the log for everyone,
+ * while the others append their records and wait to be told they are
+ * durable.  The leader goes on forcing while records are pending, so the
+ * more callers are writing, the more records each force covers.  Lookups and
+ * iteration never touch the log.
+ * <p>
+ *
+ * The tree lives in a directory holding snapshots, written by SnapshotWriter,
+ * and logs, each numbered by generation.  checkpoint() starts a new
+ * generation of log and writes the tree as it stood at that moment to a
+ * snapshot of the same number, after which the older files are deleted.
+ * open() recovers the tree by loading the newest snapshot and replaying the
+ * logs from its generation on.  A record cut short or damaged by a crash
+ * ends its log, and is cut off.
+ * <p>
+ *
+ * Changes are visible to other threads as soon as they are made, before they
+ * are durable.  If writing the log fails, the tree refuses further changes.
+ *
+ * @version 1.1
+ */
+public class LoggedSplayFC implements ISplayFC, Closeable {
+
+    /**
+     * the tags of the log records
+     */
+    private static final int ADD = 1;
+    private static final int REMOVE = 2;
+    /**
+     * the names of the files, before the generation
+     */
+    private static final String SNAPSHOT = "snapshot.";
+    private static final String LOG = "log.";
+    /**
+     * the size pending may reach before it is written out even when writes
+     * are not synchronous
+     */
+    private static final int FLUSH_THRESHOLD = 1 << 20;
+    /**
+     * the most times one leader writes the log before handing over
+     */
+    private static final int LEADER_FLUSHES = 16;
+
+    /**
+     * the directory holding the snapshots and logs
+     */
+    private final Path dir;
+    /**
+     * the tree itself
+     */
+    private final ConcurrentSplayFC tree;
+    /**
+     * whether add and remove wait for their records to reach the disk
+     */
+    private final boolean syncWrites;
+    /**
+     * the number of records replayed when the tree was opened
+     */
+    private final long recovered;
+    /**
+     * held while changing the tree and appending to pending, so that records
+     * are logged in the order the changes were made
+     */
+    private final ReentrantLock appendLock = new ReentrantLock();
+    /**
+     * signalled, under appendLock, whenever durable advances or flushing is
+     * cleared
+     */
+    private final Condition durableAdvanced = appendLock.newCondition();
+    /**
+     * whether a thread is leading the writing of the log, guarded by
+     * appendLock
+     */
+    private boolean flushing = false;
+    /**
+     * held while writing and forcing the log
+     */
+    private final ReentrantLock flushLock = new ReentrantLock();
+    /**
+     * held while checkpointing
+     */
+    private final Object checkpointLock = new Object();
+    /**
+     * records not yet written to the log, guarded by appendLock
+     */
+    private byte[] pending = new byte[1 << 12];
+    private int pendingLength = 0;
+    /**
+     * the buffer pending is swapped with when written, guarded by flushLock
+     */
+    private byte[] spare = new byte[1 << 12];
+    /**
+     * the number of records appended, guarded by appendLock
+     */
+    private long appended = 0;
+    /**
+     * the number of records forced to disk
+     */
+    private volatile long durable = 0;
+    /**
+     * the number of times the log has been forced
+     */
+    private volatile long syncs = 0;
+    /**
+     * the log being appended to, guarded by flushLock
+     */
+    private FileChannel log;
+    /**
+     * the generation of that log, guarded by flushLock
+     */
+    private int generation;
+    /**
+     * why writing the log failed, or null
+     */
+    private volatile IOException failure = null;
+    /**
+     * whether the tree has been closed
+     */
+    private volatile boolean closed = false;
+    /**
+     * encodes keys, guarded by appendLock
+     */
+    private final CharsetEncoder utf8 = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+    /**
+     * checksums records, guarded by appendLock
+     */
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Constructs a LoggedSplayFC over a recovered tree, starting a new log.
+     */
+    private LoggedSplayFC(Path dir, Cell top, int generation, boolean syncWrites, long recovered)
+            throws IOException {
+        this.dir = dir;
+        this.tree = new ConcurrentSplayFC(top);
+        this.generation = generation;
+        this.syncWrites = syncWrites;
+        this.recovered = recovered;
+        log = FileChannel.open(dir.resolve(LOG + generation), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        syncDirectory();
+    }
+
+    /**
+     * Open a tree whose every change is durable before add or remove returns.
+     *
+     * @param dir The directory holding the tree, created if it does not exist.
+     * @return The tree as it was after its last durable change.
+     * @throws IOException if the files cannot be read or written
+     */
+    public static LoggedSplayFC open(Path dir) throws IOException {
+        return open(dir, true);
+    }
+
+    /**
+     * Open a tree, recovering it from the newest snapshot and the logs after
+     * it.
+     *
+     * @param dir The directory holding the tree, created if it does not exist.
+     * @param syncWrites Whether add and remove wait for their records to be
+     *        durable.  If not, changes are only sure to be durable after
+     *        sync(), though the log is also written and forced whenever a
+     *        megabyte of records is waiting.
+     * @return The tree as it was after its last durable change.
+     * @throws IOException if the files cannot be read or written
+     */
+    public static LoggedSplayFC open(Path dir, boolean syncWrites) throws IOException {
+        Files.createDirectories(dir);
+        int snapshot = -1;
+        TreeSet<Integer> logs = new TreeSet<Integer>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path f : files) {
+                String name = f.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.delete(f); // a snapshot that was never finished
+                } else if (name.startsWith(SNAPSHOT)) {
+                    snapshot = Math.max(snapshot, Integer.parseInt(name.substring(SNAPSHOT.length())));
+                } else if (name.startsWith(LOG)) {
+                    logs.add(Integer.parseInt(name.substring(LOG.length())));
+                }
+            }
+        }
+
+        SplayFC t = new SplayFC();
+        if (snapshot >= 0) {
+            try (InputStream in = Files.newInputStream(dir.resolve(SNAPSHOT + snapshot))) {
+                SnapshotReader r = new SnapshotReader(in);
+                t.setTop(r.tree(r.size() - 1).getTop());
+            }
+        }
+        int from = Math.max(snapshot, 0);
+        long recovered = 0;
+        for (int g : logs.tailSet(from)) {
+            recovered += replay(dir.resolve(LOG + g), t);
+        }
+        int generation = logs.isEmpty() ? from : Math.max(from, logs.last() + 1);
+        LoggedSplayFC logged = new LoggedSplayFC(dir, t.getTop(), generation, syncWrites, recovered);
+        logged.deleteBefore(from);
+        return logged;
+    }
+
+    /**
+     * Apply the records in a log to a tree, cutting the log off at the first
+     * record that is incomplete or damaged.
+     * @param file The log.
+     * @param t The tree.
+     * @return The number of records applied.
+     */
+    private static long replay(Path file, SplayFC t) throws IOException {
+        long records = 0;
+        long good = 0;
+        long size = Files.size(file);
+        CRC32 check = new CRC32();
+        byte[] buf = new byte[64];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            while (true) {
+                int op = in.read();
+                if (op < 0) {
+                    break;
+                }
+                // The length is a variable-length int, as in SnapshotWriter.
+                check.reset();
+                check.update(op);
+                int n = 0;
+                int lengthBytes = 0;
+                int b;
+                do {
+                    b = in.readUnsignedByte();
+                    check.update(b);
+                    n |= (b & 0x7F) << (7 * lengthBytes++);
+                } while ((b & 0x80) != 0 && lengthBytes < 5);
+                // A length running past the end of the file is garbage from a torn write.
+                if (n < 0 || (b & 0x80) != 0 || n > size - good - 1 - lengthBytes - 4) {
+                    break;
+                }
+                if (n > buf.length) {
+                    buf = new byte[Math.max(n, buf.length * 2)];
+                }
+                in.readFully(buf, 0, n);
+                check.update(buf, 0, n);
+                if ((int) check.getValue() != in.readInt() || (op != ADD && op != REMOVE)) {
+                    break;
+                }
+                String k = new String(buf, 0, n, StandardCharsets.UTF_8);
+                if (op == ADD) {
+                    t.add(k);
+                } else {
+                    t.remove(k);
+                }
+                records++;
+                good += 1 + lengthBytes + n + 4;
+            }
+        } catch (EOFException e) {
+            // The last record was cut short.
+        }
+        if (good < size) {
+            try (FileChannel c = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                c.truncate(good);
+                c.force(true);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Insert a specified string key into the tree, logging the change.
+     *
+     * @param k The string key to insert.
+     * @return true if k was not already in the tree.
+     * @throws IllegalArgumentException if k is not valid UTF-16
+     * @throws UncheckedIOException if the log cannot be written
+     * @throws IllegalStateException if the tree has been closed
+     */
+    public boolean add(String k) {
+        return change(ADD, k);
+    }
+
+    /**
+     * Remove a specified string from the tree, logging the change.
+     *
+     * @param k The string to remove.
+     * @return true if k is was the tree.
+     * @throws IllegalArgumentException if k is not valid UTF-16
+     * @throws UncheckedIOException if the log cannot be written
+     * @throws IllegalStateException if the tree has been closed
+     */
+    public boolean remove(String k) {
+        return change(REMOVE, k);
+    }
+
+    /**
+     * Change the tree and log the change if there was one.  Even when nothing
+     * changes, the caller waits for the records before it to be durable, as
+     * the answer may depend on them.
+     * @param op ADD or REMOVE.
+     * @param k The key.
+     * @return Whether the tree changed.
+     */
+    private boolean change(int op, String k) {
+        boolean changed;
+        long seq;
+        boolean flushNow;
+        appendLock.lock();
+        try {
+            checkWritable();
+            ByteBuffer bytes;
+            try {
+                bytes = utf8.encode(CharBuffer.wrap(k));
+            } catch (CharacterCodingException e) {
+                throw new IllegalArgumentException("key is not valid UTF-16", e);
+            }
+            changed = op == ADD ? tree.add(k) : tree.remove(k);
+            if (changed) {
+                appendRecord(op, bytes);
+                appended++;
+            }
+            seq = appended;
+            flushNow = syncWrites || pendingLength >= FLUSH_THRESHOLD;
+        } finally {
+            appendLock.unlock();
+        }
+        if (flushNow) {
+            awaitDurable(seq);
+        }
+        return changed;
+    }
+
+    /**
+     * Append a record to pending: the tag, the key's length and UTF-8 bytes,
+     * then a CRC32 of all of those.
+     */
+    private void appendRecord(int op, ByteBuffer key) {
+        int n = key.remaining();
+        if (pendingLength + n + 10 > pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingLength + n + 10));
+        }
+        int start = pendingLength;
+        int p = start;
+        pending[p++] = (byte) op;
+        int v = n;
+        while ((v & ~0x7F) != 0) {
+            pending[p++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        pending[p++] = (byte) v;
+        key.get(pending, p, n);
+        p += n;
+        crc.reset();
+        crc.update(pending, start, p - start);
+        int sum = (int) crc.getValue();
+        pending[p++] = (byte) (sum >>> 24);
+        pending[p++] = (byte) (sum >>> 16);
+        pending[p++] = (byte) (sum >>> 8);
+        pending[p++] = (byte) sum;
+        pendingLength = p;
+    }
+
+    /**
+     * @throws IllegalStateException if the tree has been closed
+     * @throws UncheckedIOException if writing the log has failed
+     */
+    private void checkWritable() {
+        if (closed) {
+            throw new IllegalStateException("the tree has been closed");
+        }
+        if (failure != null) {
+            throw new UncheckedIOException("the log could not be written", failure);
+        }
+    }
+
+    /**
+     * Wait until the first seq records are durable.  If no other thread is
+     * writing the log this one leads, writing and forcing the log for all the
+     * records pending; otherwise it waits for the leader to signal that
+     * durable has advanced, and leads itself if its record is still not
+     * durable when the leader stands down.
+     * @param seq A number of records.
+     */
+    private void awaitDurable(long seq) {
+        appendLock.lock();
+        try {
+            while (durable < seq) {
+                if (failure != null) {
+                    throw new UncheckedIOException("the log could not be written", failure);
+                }
+                if (flushing) {
+                    durableAdvanced.awaitUninterruptibly();
+                } else {
+                    lead();
+                }
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Write and force the log for every thread waiting on it, and again for
+     * the records appended while that was going on, for as long as records
+     * are pending but at most LEADER_FLUSHES times, so that the leader's own
+     * caller is not held up forever.  Called holding appendLock.
+     */
+    private void lead() {
+        flushing = true;
+        try {
+            int flushes = 0;
+            do {
+                flush();
+                durableAdvanced.signalAll();
+            } while (pendingLength > 0 && ++flushes < LEADER_FLUSHES);
+        } finally {
+            flushing = false;
+            durableAdvanced.signalAll();
+        }
+    }
+
+    /**
+     * Write the pending records to the log and force it.  Called holding
+     * appendLock, which is let go while the log is written so that writers
+     * can go on appending.
+     */
+    private void flush() {
+        if (failure != null) {
+            throw new UncheckedIOException("the log could not be written", failure);
+        }
+        appendLock.unlock();
+        try {
+            flushLock.lock();
+            try {
+                byte[] b;
+                int n;
+                long upTo;
+                appendLock.lock();
+                try {
+                    b = pending;
+                    n = pendingLength;
+                    upTo = appended;
+                    pending = spare;
+                    pendingLength = 0;
+                } finally {
+                    appendLock.unlock();
+                }
+                spare = b;
+                try {
+                    writeLog(b, n);
+                } catch (IOException e) {
+                    failure = e;
+                    throw new UncheckedIOException("the log could not be written", e);
+                }
+                durable = Math.max(durable, upTo);
+            } finally {
+                flushLock.unlock();
+            }
+        } finally {
+            appendLock.lock();
+        }
+    }
+
+    /**
+     * Write bytes to the log and force them to disk.  Called holding
+     * flushLock.
+     */
+    private void writeLog(byte[] b, int n) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(b, 0, n);
+        while (buf.hasRemaining()) {
+            log.write(buf);
+        }
+        log.force(false);
+        syncs++;
+    }
+
+    /**
+     * Make every change so far durable.  Only needed if the tree was opened
+     * without syncWrites.
+     *
+     * @throws UncheckedIOException if the log cannot be written
+     */
+    public void sync() {
+        long seq;
+        appendLock.lock();
+        try {
+            seq = appended;
+        } finally {
+            appendLock.unlock();
+        }
+        awaitDurable(seq);
+    }
+
+    /**
+     * Write everything pending to the current log, then start the next
+     * generation.  Called holding flushLock and appendLock.
+     * @return The tree as the new generation starts from it.
+     */
+    private Cell rotate() throws IOException {
+        checkWritable();
+        writeLog(pending, pendingLength);
+        pendingLength = 0;
+        durable = appended;
+        durableAdvanced.signalAll();
+        log.close();
+        generation++;
+        log = FileChannel.open(dir.resolve(LOG + generation), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        syncDirectory();
+        return tree.getTop();
+    }
+
+    /**
+     * Write the tree to a snapshot and delete the logs it makes unnecessary,
+     * so that recovery has less to replay.  Writers are held up only while a
+     * new log is started; the snapshot is written while they carry on.
+     *
+     * @throws IOException if the files cannot be written
+     */
+    public void checkpoint() throws IOException {
+        synchronized (checkpointLock) {
+            Cell top;
+            int g;
+            flushLock.lock();
+            try {
+                appendLock.lock();
+                try {
+                    top = rotate();
+                    g = generation;
+                } finally {
+                    appendLock.unlock();
+                }
+            } finally {
+                flushLock.unlock();
+            }
+            writeSnapshot(top, g);
+            deleteBefore(g);
+        }
+    }
+
+    /**
+     * Write a durable snapshot of a tree for a generation.
+     * @param top The root of the tree.
+     * @param g The generation.
+     */
+    private void writeSnapshot(Cell top, int g) throws IOException {
+        Path tmp = dir.resolve(SNAPSHOT + g + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp.toFile())) {
+            new SnapshotWriter(out).checkpoint(new SplayFC(top));
+            out.getFD().sync();
+        }
+        Files.move(tmp, dir.resolve(SNAPSHOT + g), StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+    }
+
+    /**
+     * Delete the snapshots and logs of generations before g.
+     */
+    private void deleteBefore(int g) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path f : files) {
+                String name = f.getFileName().toString();
+                String prefix = name.startsWith(SNAPSHOT) ? SNAPSHOT : name.startsWith(LOG) ? LOG : null;
+                if (prefix != null && !name.endsWith(".tmp")
+                        && Integer.parseInt(name.substring(prefix.length())) < g) {
+                    Files.delete(f);
+                }
+            }
+        }
+    }
+
+    /**
+     * Force the directory itself, so that files created or renamed in it
+     * survive a crash.  Not every platform allows this, so failing is not an
+     * error.
+     */
+    private void syncDirectory() {
+        try (FileChannel d = FileChannel.open(dir, StandardOpenOption.READ)) {
+            d.force(true);
+        } catch (IOException e) {
+            // Best effort only.
+        }
+    }
+
+    /**
+     * @return The number of log records replayed when the tree was opened.
+     */
+    public long recovered() {
+        return recovered;
+    }
+
+    /**
+     * @return The number of times the log has been forced to disk.
+     */
+    public long syncs() {
+        return syncs;
+    }
+
+    /**
+     * Make every change durable and close the log.  The tree may still be
+     * read, but not changed.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    public void close() throws IOException {
+        flushLock.lock();
+        try {
+            appendLock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                checkWritable();
+                writeLog(pending, pendingLength);
+                pendingLength = 0;
+                durable = appended;
+                durableAdvanced.signalAll();
+                closed = true;
+            } finally {
+                appendLock.unlock();
+            }
+            log.close();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public Cell getTop() {
+        return tree.getTop();
+    }
+
+    /**
+     * Replace the whole tree, which is written straight to a new snapshot
+     * since the log only records single changes.  Writers are held up until
+     * the snapshot is durable.
+     *
+     * @param c The new top cell.
+     * @throws UncheckedIOException if the snapshot cannot be written
+     */
+    public void setTop(Cell c) {
+        synchronized (checkpointLock) {
+            int g;
+            flushLock.lock();
+            try {
+                appendLock.lock();
+                try {
+                    try {
+                        rotate();
+                        tree.setTop(c);
+                        g = generation;
+                        writeSnapshot(c, g);
+                    } catch (IOException e) {
+                        failure = e;
+                        throw new UncheckedIOException("the snapshot could not be written", e);
+                    }
+                } finally {
+                    appendLock.unlock();
+                }
+            } finally {
+                flushLock.unlock();
+            }
+            try {
+                deleteBefore(g);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    public Cell splay(Cell c, String k) {
+        return tree.splay(c, k);
+    }
+
+    public boolean contains(String k) {
+        return tree.contains(k);
+    }
+
+    /**
+     * Check whether k is in the tree without splaying.
+     *
+     * @param k The key string to look for.
+     * @return true if k is included in the tree.
+     */
+    public boolean containsNoSplay(String k) {
+        return tree.containsNoSplay(k);
+    }
+
+    public SplayFC headSet(String k) {
+        return tree.headSet(k);
+    }
+
+    public SplayFC tailSet(String k) {
+        return tree.tailSet(k);
+    }
+
+    public SplayFC subSet(String k1, String k2) {
+        return tree.subSet(k1, k2);
+    }
+
+    public SplayFC clone() {
+        return tree.clone();
+    }
+
+    public Iterator<String> snapShotIterator() {
+        return tree.snapShotIterator();
+    }
+
+    /**
+     * Create an iterator over the live tree, as ConcurrentSplayFC's does,
+     * whose remove is logged.
+     *
+     * @return The iterator object.
+     */
+    public Iterator<String> updatingIterator() {
+        final Iterator<String> it = tree.updatingIterator();
+        return new Iterator<String>() {
+            /**
+             * the string remove() should be deleting, or null
+             */
+            private String toBeRemoved = null;
+
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            public String next() {
+                toBeRemoved = it.next();
+                return toBeRemoved;
+            }
+
+            public void remove() throws IllegalStateException {
+                if (toBeRemoved == null) {
+                    throw new IllegalStateException("next() has not yet been called,"
+                            + "or remove() has already been called after the last"
+                            + "call to next()");
+                }
+                LoggedSplayFC.this.remove(toBeRemoved);
+                toBeRemoved = null;
+            }
+        };
+    }
+
+    public String toString() {
+        return tree.toString();
+    }
+}
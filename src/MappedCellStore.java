@@ -0,0 +1,338 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A CellStore that keeps its cells in a memory-mapped file, so that trees
+ * outlive the process and reopen without being rebuilt.
+ * <p>
+ *
+ * Since cells never change, the file is only ever appended to: each new cell
+ * is written after the last, and a tree is just the position of its root.
+ * commit() makes a tree durable by recording its root, and any committed
+ * root can be reopened later as an ArenaSplayFC at once, with nothing copied
+ * or decoded: the tree reads its cells and keys straight from the mapping as
+ * it goes, so only the parts it visits are ever paged in.
+ * <p>
+ *
+ * The file is a sequence of 4-byte slots, mapped in segments of 2^24 slots
+ * (64MB), with no record crossing from one segment into the next.  The first
+ * 16 slots are a header holding the end of the committed data and the most
+ * recent commit.  A key takes one slot for its length and then two
+ * characters per slot, a cell three slots (left child, right child, key) and
+ * a commit four (root, previous commit, time).  Anything written after the
+ * last commit is ignored, and overwritten, when the file is next opened, so
+ * a crash loses at most the changes since then.
+ * <p>
+ *
+ * Splaying writes new cells, so lookups on a persistent tree grow the file
+ * unless its splay policy leaves them alone, as SplayPolicy.NEVER does, or
+ * only splays some of them, as SplayPolicy.probabilistic does.  Nothing is
+ * ever reclaimed.
+ * Like CellArena, a store must be used by one thread at a time.
+ *
+ * @version 1.1
+ */
+public class MappedCellStore extends CellStore implements Closeable {
+
+    /**
+     * identifies the file format
+     */
+    private static final long MAGIC = 0x53504c4159464301L; // "SPLAYFC" 1
+    /**
+     * the number of slots in the header
+     */
+    private static final int HEADER_SLOTS = 16;
+    /**
+     * log2 of the number of slots in a segment
+     */
+    private static final int SEGMENT_SHIFT = 24;
+    /**
+     * the number of slots in a segment
+     */
+    private static final int SEGMENT_SLOTS = 1 << SEGMENT_SHIFT;
+    /**
+     * where the header keeps the end of the committed data, in bytes
+     */
+    private static final int END_OFFSET = 8;
+    /**
+     * where the header keeps the latest commit, in bytes
+     */
+    private static final int COMMIT_OFFSET = 12;
+
+    /**
+     * the open file
+     */
+    private final FileChannel channel;
+    /**
+     * the mapped segments, each mapped when first used
+     */
+    private MappedByteBuffer[] segments = new MappedByteBuffer[4];
+    /**
+     * the next free slot
+     */
+    private int end;
+    /**
+     * the most recent commit, or NULL if there is none
+     */
+    private int lastCommit;
+    /**
+     * the first segment written to since the last commit, or -1
+     */
+    private int firstDirty = -1;
+
+    /**
+     * Constructs a MappedCellStore over an open file.
+     */
+    private MappedCellStore(FileChannel channel) throws IOException {
+        this.channel = channel;
+        MappedByteBuffer header = segment(0);
+        if (header.getLong(0) != MAGIC) {
+            if (header.getLong(0) != 0) {
+                throw new IOException("not a cell store");
+            }
+            header.putLong(0, MAGIC);
+            header.putInt(END_OFFSET, HEADER_SLOTS);
+            header.putInt(COMMIT_OFFSET, NULL);
+            header.force();
+        }
+        end = header.getInt(END_OFFSET);
+        lastCommit = header.getInt(COMMIT_OFFSET);
+    }
+
+    /**
+     * Open a store, creating the file if it does not exist.
+     *
+     * @param file The file.
+     * @return The store.
+     * @throws IOException if the file cannot be opened or is not a store
+     */
+    public static MappedCellStore open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE);
+        try {
+            return new MappedCellStore(channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param i The number of a segment.
+     * @return The segment, mapped if it was not already.
+     */
+    private MappedByteBuffer segment(int i) {
+        if (i >= segments.length) {
+            segments = Arrays.copyOf(segments, Math.max(i + 1, segments.length * 2));
+        }
+        MappedByteBuffer b = segments[i];
+        if (b == null) {
+            try {
+                b = channel.map(FileChannel.MapMode.READ_WRITE, 4L * SEGMENT_SLOTS * i, 4L * SEGMENT_SLOTS);
+            } catch (IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            }
+            segments[i] = b;
+        }
+        return b;
+    }
+
+    /**
+     * @param slot A slot.
+     * @return The int held in the slot.
+     */
+    private int get(int slot) {
+        return segment(slot >>> SEGMENT_SHIFT).getInt((slot & (SEGMENT_SLOTS - 1)) << 2);
+    }
+
+    /**
+     * Reserve space for a record, moving to the next segment if it would not
+     * fit in this one.
+     * @param n The number of slots the record needs.
+     * @return The first slot of the record.
+     */
+    private int reserve(int n) {
+        int start = end;
+        if ((start & (SEGMENT_SLOTS - 1)) + n > SEGMENT_SLOTS) {
+            start = (start | (SEGMENT_SLOTS - 1)) + 1;
+        }
+        if (start + n < 0) {
+            throw new IllegalStateException("cell store is full");
+        }
+        end = start + n;
+        int seg = start >>> SEGMENT_SHIFT;
+        if (firstDirty < 0 || seg < firstDirty) {
+            firstDirty = seg;
+        }
+        return start;
+    }
+
+    int lt(int c) {
+        return get(c);
+    }
+
+    int rt(int c) {
+        return get(c + 1);
+    }
+
+    String key(int c) {
+        int k = get(c + 2);
+        MappedByteBuffer b = segment(k >>> SEGMENT_SHIFT);
+        int offset = (k & (SEGMENT_SLOTS - 1)) << 2;
+        char[] chars = new char[b.getInt(offset)];
+        for (int j = 0; j < chars.length; j++) {
+            chars[j] = b.getChar(offset + 4 + 2 * j);
+        }
+        return new String(chars);
+    }
+
+    int compare(String k, int c) {
+        int key = get(c + 2);
+        MappedByteBuffer b = segment(key >>> SEGMENT_SHIFT);
+        int offset = (key & (SEGMENT_SLOTS - 1)) << 2;
+        int n = b.getInt(offset);
+        int m = k.length();
+        int lim = Math.min(m, n);
+        for (int j = 0; j < lim; j++) {
+            char a = k.charAt(j);
+            char ch = b.getChar(offset + 4 + 2 * j);
+            if (a != ch) {
+                return a - ch;
+            }
+        }
+        return m - n;
+    }
+
+    /**
+     * Append a cell.
+     * @param key The slot of the cell's key.
+     * @return The slot of the new cell.
+     */
+    private int cell(int key, int l, int r) {
+        int c = reserve(3);
+        MappedByteBuffer b = segment(c >>> SEGMENT_SHIFT);
+        int offset = (c & (SEGMENT_SLOTS - 1)) << 2;
+        b.putInt(offset, l);
+        b.putInt(offset + 4, r);
+        b.putInt(offset + 8, key);
+        return c;
+    }
+
+    int copy(int like, int l, int r) {
+        return cell(get(like + 2), l, r);
+    }
+
+    int newCell(String k, int l, int r) {
+        if (k.length() > 2 * (SEGMENT_SLOTS - 1)) {
+            throw new IllegalArgumentException("key too long for a cell store");
+        }
+        int key = reserve(1 + (k.length() + 1) / 2);
+        MappedByteBuffer b = segment(key >>> SEGMENT_SHIFT);
+        int offset = (key & (SEGMENT_SLOTS - 1)) << 2;
+        b.putInt(offset, k.length());
+        for (int j = 0; j < k.length(); j++) {
+            b.putChar(offset + 4 + 2 * j, k.charAt(j));
+        }
+        return cell(key, l, r);
+    }
+
+    public long bytesAllocated() {
+        return 4L * end;
+    }
+
+    /**
+     * Open the most recently committed tree.
+     *
+     * @return The tree, or an empty tree in this store if nothing has been
+     *         committed.
+     */
+    public ArenaSplayFC tree() {
+        return lastCommit == NULL ? new ArenaSplayFC(this, NULL) : tree(lastCommit);
+    }
+
+    /**
+     * Open a committed tree.  Nothing is read until the tree is used.
+     *
+     * @param commit A commit number returned by commit() or commits().
+     * @return The tree.
+     */
+    public ArenaSplayFC tree(int commit) {
+        return new ArenaSplayFC(this, get(commit));
+    }
+
+    /**
+     * List the commits made to the store, most recent first.
+     *
+     * @return The commit numbers.
+     */
+    public int[] commits() {
+        int[] all = new int[16];
+        int n = 0;
+        for (int c = lastCommit; c != NULL; c = get(c + 1)) {
+            if (n == all.length) {
+                all = Arrays.copyOf(all, n * 2);
+            }
+            all[n++] = c;
+        }
+        return Arrays.copyOf(all, n);
+    }
+
+    /**
+     * Get the time at which a commit was made.
+     *
+     * @param commit A commit number.
+     * @return The time in milliseconds since the epoch.
+     */
+    public long commitTime(int commit) {
+        return ((long) get(commit + 2) << 32) | (get(commit + 3) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Make a tree durable: write everything appended since the last commit to
+     * the file, then record the tree's root as the latest commit.
+     *
+     * @param t A tree whose cells are in this store.
+     * @return The commit number, with which tree(int) reopens the tree.
+     * @throws IllegalArgumentException if t is not in this store
+     */
+    public int commit(ArenaSplayFC t) throws IllegalArgumentException {
+        if (t.arena() != this) {
+            throw new IllegalArgumentException("the tree is not in this store");
+        }
+        long now = System.currentTimeMillis();
+        int c = reserve(4);
+        MappedByteBuffer b = segment(c >>> SEGMENT_SHIFT);
+        int offset = (c & (SEGMENT_SLOTS - 1)) << 2;
+        b.putInt(offset, t.root());
+        b.putInt(offset + 4, lastCommit);
+        b.putLong(offset + 8, now);
+        for (int i = firstDirty; i <= (end - 1) >>> SEGMENT_SHIFT; i++) {
+            segment(i).force();
+        }
+        firstDirty = -1;
+
+        // Only once the data is on disk does the header point at it.
+        MappedByteBuffer header = segment(0);
+        header.putInt(END_OFFSET, end);
+        header.putInt(COMMIT_OFFSET, c);
+        header.force();
+        lastCommit = c;
+        return c;
+    }
+
+    /**
+     * Close the file.  Anything not committed is lost.  Trees in the store
+     * must not be used afterwards.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    public void close() throws IOException {
+        Arrays.fill(segments, null);
+        channel.close();
+    }
+}
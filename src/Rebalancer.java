@@ -0,0 +1,181 @@
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rebuilds ConcurrentSplayFC trees in perfectly balanced form, off the
+ * threads using them, when they have become too deep.
+ * <p>
+ *
+ * Runs of sequential inserts leave a splay tree as a long spine, and the
+ * first lookups after such a run, or every lookup if the tree is read
+ * without splaying, walk down it in time linear in its size.  A tree with a
+ * Rebalancer attached checks its depth on a random sample of lookups by
+ * following one random path down from the root, and if that path is deeper
+ * than c * log2(size) it hands the tree to the executor.  There the current
+ * root is read, which needs no locking since cells never change, a balanced
+ * copy is built from it, and the copy is installed only if the root is still
+ * the one it was built from.  Otherwise the work is dropped, and the tree is
+ * checked less often until a rebuild succeeds, so that a stream of writes to
+ * a big tree does not keep the executor rebuilding it for nothing.
+ * <p>
+ *
+ * One Rebalancer may be shared by any number of trees; each tree has at most
+ * one rebuild in progress at a time.
+ *
+ * @version 1.1
+ */
+public class Rebalancer {
+
+    /**
+     * the most times the sampling interval is doubled after failed rebuilds
+     */
+    private static final int MAX_BACKOFF = 10;
+
+    /**
+     * the multiple of log2(size) beyond which a tree is rebuilt
+     */
+    private final double c;
+    /**
+     * on average, one lookup in this many checks the depth
+     */
+    private final int checkEvery;
+    /**
+     * runs the rebuilds
+     */
+    private final Executor executor;
+    /**
+     * the number of balanced trees installed
+     */
+    private final AtomicLong installed = new AtomicLong();
+    /**
+     * the number of balanced trees dropped because the root had changed
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Constructs a Rebalancer that checks one lookup in 256 and rebuilds
+     * trees deeper than 3 * log2(size), on a shared daemon thread.
+     */
+    public Rebalancer() {
+        this(3, 256, Background.EXECUTOR);
+    }
+
+    /**
+     * Constructs a Rebalancer.
+     * @param c the multiple of log2(size) beyond which to rebuild; at least 1
+     * @param checkEvery on average, one lookup in this many checks the depth;
+     *          at least 1
+     * @param executor runs the rebuilds
+     * @throws IllegalArgumentException if c or checkEvery is less than 1
+     */
+    public Rebalancer(double c, int checkEvery, Executor executor) throws IllegalArgumentException {
+        if (!(c >= 1)) {
+            throw new IllegalArgumentException("c must be at least 1");
+        }
+        if (checkEvery < 1) {
+            throw new IllegalArgumentException("checkEvery must be at least 1");
+        }
+        if (executor == null) {
+            throw new NullPointerException("executor");
+        }
+        this.c = c;
+        this.checkEvery = checkEvery;
+        this.executor = executor;
+    }
+
+    /**
+     * Holds the default executor, so that its thread is only started if it
+     * is used.
+     */
+    private static final class Background {
+        static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "SplayFC rebalancer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Decide whether a lookup should check the depth of the tree.
+     * @param failures how many rebuilds of the tree have been dropped since
+     *          the last one was installed
+     * @return true for a random one in checkEvery lookups, fewer after
+     *         failures
+     */
+    boolean shouldCheck(int failures) {
+        long every = (long) checkEvery << Math.min(failures, MAX_BACKOFF);
+        return ThreadLocalRandom.current().nextLong(every) == 0;
+    }
+
+    /**
+     * Follow one random path down a tree and see whether it goes deeper than
+     * c * log2(size).  The size is exact for trees of SizedCell and otherwise
+     * estimated as CellSpliterator does.
+     *
+     * @param root The non-null root of the tree.
+     * @return true if the path was too deep.
+     */
+    boolean tooDeep(Cell root) {
+        double size = root instanceof SizedCell ? SizedCell.size(root) : CellSpliterator.estimate(root);
+        double limit = c * Math.log(size + 1) / Math.log(2);
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        Cell x = root;
+        for (int depth = 0; x != null; depth++) {
+            if (depth > limit) {
+                return true;
+            }
+            if (x.lt != null && x.rt != null) {
+                x = rnd.nextBoolean() ? x.lt : x.rt;
+            } else {
+                x = x.lt != null ? x.lt : x.rt;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Run a rebuild on the executor.
+     * @param task The rebuild.
+     * @return false if the executor refused it.
+     */
+    boolean submit(Runnable task) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Count the outcome of a rebuild.
+     * @param installed whether the balanced tree was installed
+     */
+    void record(boolean installed) {
+        (installed ? this.installed : dropped).incrementAndGet();
+    }
+
+    /**
+     * @return The number of balanced trees installed so far.
+     */
+    public long installed() {
+        return installed.get();
+    }
+
+    /**
+     * @return The number of balanced trees dropped so far because the tree
+     *         changed while they were being built.
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    public String toString() {
+        return "Rebalancer[c=" + c + ", checkEvery=" + checkEvery + ", installed=" + installed()
+                + ", dropped=" + dropped() + "]";
+    }
+}
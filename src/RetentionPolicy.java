@@ -0,0 +1,106 @@
+import java.util.List;
+
+/**
+ * Decides which past versions a VersionedSplayFC keeps.
+ * <p>
+ *
+ * The policy is consulted after every commit, with the whole history, and
+ * the versions it does not keep are dropped.  Once no version reaches a
+ * cell any more, the cell can be garbage collected, so the memory a history
+ * costs depends on how much changed between the versions kept, not on how
+ * many there are.  The newest version is always kept, whatever the policy
+ * says.
+ *
+ * @version 1.1
+ */
+public abstract class RetentionPolicy {
+
+    /**
+     * Keep every version.
+     */
+    public static final RetentionPolicy KEEP_ALL = new RetentionPolicy() {
+        public boolean keep(List<VersionedSplayFC.Version> history, int i) {
+            return true;
+        }
+
+        public String toString() {
+            return "keep all";
+        }
+    };
+
+    /**
+     * Decide whether to keep a version.
+     *
+     * @param history Every version still kept, oldest first, ending with the
+     *        one just committed.
+     * @param i The index in history of the version to decide on.
+     * @return true to keep it.
+     */
+    public abstract boolean keep(List<VersionedSplayFC.Version> history, int i);
+
+    /**
+     * Keep the newest n versions.
+     *
+     * @param n The number of versions to keep.
+     * @return The policy.
+     * @throws IllegalArgumentException if n is less than 1
+     */
+    public static RetentionPolicy keepLast(final int n) throws IllegalArgumentException {
+        if (n < 1) {
+            throw new IllegalArgumentException("must keep at least one version, not " + n);
+        }
+        return new RetentionPolicy() {
+            public boolean keep(List<VersionedSplayFC.Version> history, int i) {
+                return i >= history.size() - n;
+            }
+
+            public String toString() {
+                return "keep last " + n;
+            }
+        };
+    }
+
+    /**
+     * Keep the newest version committed in each interval of time, such as
+     * one per hour.  Intervals are counted from the epoch.
+     *
+     * @param millis The length of an interval, in milliseconds.
+     * @return The policy.
+     * @throws IllegalArgumentException if millis is less than 1
+     */
+    public static RetentionPolicy keepPerInterval(final long millis) throws IllegalArgumentException {
+        if (millis < 1) {
+            throw new IllegalArgumentException("interval must be positive, not " + millis);
+        }
+        return new RetentionPolicy() {
+            public boolean keep(List<VersionedSplayFC.Version> history, int i) {
+                return i == history.size() - 1
+                        || Math.floorDiv(history.get(i).time(), millis) != Math.floorDiv(history.get(i + 1).time(),
+                                millis);
+            }
+
+            public String toString() {
+                return "keep one per " + millis + " ms";
+            }
+        };
+    }
+
+    /**
+     * Combine this policy with another, keeping a version if either would.
+     *
+     * @param other The other policy.
+     * @return The combined policy.
+     */
+    public RetentionPolicy or(final RetentionPolicy other) {
+        final RetentionPolicy self = this;
+        return new RetentionPolicy() {
+            public boolean keep(List<VersionedSplayFC.Version> history, int i) {
+                return self.keep(history, i) || other.keep(history, i);
+            }
+
+            public String toString() {
+                return self + " or " + other;
+            }
+        };
+    }
+}
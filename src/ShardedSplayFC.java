@@ -0,0 +1,839 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A thread-safe splay tree of strings that splits the key space into ranges,
+ * each held by its own SizedSplayFC shard with its own lock, so that writers
+ * to different ranges never wait for each other.
+ * <p>
+ *
+ * Adding, removing or looking up a key locks just the one shard whose range
+ * holds it.  The range operations, clone and the snapshot iterator lock the
+ * shards they cover, in key order, and join the shards' trees into one; since
+ * the ranges are disjoint and in order this is a plain concatenation, costing
+ * a splay per shard.  The updating iterator looks up each successor in turn,
+ * moving on to the next shard when one runs out.
+ * <p>
+ *
+ * The boundaries between shards can be chosen from a sample of keys.  Either
+ * way they move online: a shard that grows to more than twice its fair share
+ * of the keys is split at its median, and a shard that shrinks to an eighth
+ * of that is merged with its smaller neighbour.  With SizedSplayFC both are
+ * a single split or join of persistent cells, so they take logarithmic time
+ * and hold the lock of the shards involved only briefly.
+ *
+ * @version 1.1
+ */
+public class ShardedSplayFC implements ISplayFC {
+
+    /**
+     * the fewest keys a shard must hold before it is split
+     */
+    private static final int MIN_SPLIT_SIZE = 1024;
+
+    /**
+     * One range of the key space and the tree that holds it.
+     */
+    private static final class Shard {
+
+        /**
+         * held while the tree is read or changed
+         */
+        final ReentrantLock lock = new ReentrantLock();
+        /**
+         * the keys in this shard's range
+         */
+        final SizedSplayFC tree;
+        /**
+         * the number of keys in tree, readable without the lock
+         */
+        volatile int size;
+        /**
+         * set, with the lock held, once the shard has been replaced by a split
+         * or merge; whoever then gets the lock must look the key up again
+         */
+        boolean retired;
+
+        Shard(SizedSplayFC tree) {
+            this.tree = tree;
+            size = tree.size();
+        }
+    }
+
+    /**
+     * An immutable assignment of key ranges to shards.
+     */
+    private static final class Layout {
+
+        /**
+         * the least key of each shard's range; lows[0] is null, since the
+         * first shard has no lower bound
+         */
+        final String[] lows;
+        /**
+         * the shards, in key order
+         */
+        final Shard[] shards;
+        /**
+         * the size above which a shard is split
+         */
+        final int splitSize;
+        /**
+         * the size below which a shard is merged with a neighbour
+         */
+        final int mergeSize;
+
+        Layout(String[] lows, Shard[] shards, int target) {
+            this.lows = lows;
+            this.shards = shards;
+            long total = 0;
+            for (Shard s : shards) {
+                total += s.size;
+            }
+            splitSize = (int) Math.min(Integer.MAX_VALUE, Math.max(MIN_SPLIT_SIZE, 2 * total / target));
+            mergeSize = splitSize / 8;
+        }
+
+        /**
+         * @param k A key.
+         * @return The index of the shard whose range holds k.
+         */
+        int indexOf(String k) {
+            int lo = 0;
+            int hi = lows.length - 1;
+            while (lo < hi) { // find the last low that is <= k
+                int mid = (lo + hi + 1) >>> 1;
+                if (lows[mid].compareTo(k) <= 0) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return lo;
+        }
+    }
+
+    /**
+     * the number of shards the key space is divided into, in steady state
+     */
+    private final int target;
+    /**
+     * the current shards
+     */
+    private volatile Layout layout;
+    /**
+     * held while shards are split or merged, so that only one thread changes
+     * the layout at a time
+     */
+    private final Object resizeLock = new Object();
+    /**
+     * to keep track of any changes to the tree; only ever increases
+     */
+    private final LongAdder modCount = new LongAdder();
+
+    /**
+     * Constructs an empty ShardedSplayFC aiming at four shards per processor.
+     */
+    public ShardedSplayFC() {
+        this(4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs an empty ShardedSplayFC that starts with one shard and splits
+     * it as keys are added.
+     * @param shards the number of shards to aim at; at least 1
+     * @throws IllegalArgumentException if shards is less than 1
+     */
+    public ShardedSplayFC(int shards) throws IllegalArgumentException {
+        this(shards, new ArrayList<String>());
+    }
+
+    /**
+     * Constructs an empty ShardedSplayFC with shard boundaries at evenly
+     * spaced keys of a sample, which should be drawn from the keys expected.
+     * @param shards the number of shards to aim at; at least 1
+     * @param sample keys to choose the boundaries from
+     * @throws IllegalArgumentException if shards is less than 1
+     */
+    public ShardedSplayFC(int shards, Collection<String> sample) throws IllegalArgumentException {
+        if (shards < 1) {
+            throw new IllegalArgumentException("shards must be at least 1");
+        }
+        target = shards;
+        String[] sorted = sample.toArray(new String[sample.size()]);
+        Arrays.sort(sorted);
+        ArrayList<String> lows = new ArrayList<String>();
+        lows.add(null);
+        for (int i = 1; i < shards && sorted.length > 0; i++) {
+            String k = sorted[(int) ((long) i * sorted.length / shards)];
+            if (lows.size() == 1 || lows.get(lows.size() - 1).compareTo(k) < 0) {
+                lows.add(k);
+            }
+        }
+        Shard[] parts = new Shard[lows.size()];
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = new Shard(new SizedSplayFC());
+        }
+        layout = new Layout(lows.toArray(new String[lows.size()]), parts, target);
+    }
+
+    /**
+     * Get the number of shards the keys are currently divided into.
+     *
+     * @return The number of shards.
+     */
+    public int shardCount() {
+        return layout.shards.length;
+    }
+
+    /**
+     * Get the number of keys in the tree.  While other threads are changing
+     * the tree this is only approximate.
+     *
+     * @return The number of keys.
+     */
+    public int size() {
+        long total = 0;
+        for (Shard s : layout.shards) {
+            total += s.size;
+        }
+        return (int) total;
+    }
+
+    /**
+     * Get the top cell of a tree holding all the keys, joined from the shards
+     * as they were at one moment.
+     *
+     * @return The top cell
+     */
+    public Cell getTop() {
+        return snapshot();
+    }
+
+    /**
+     * Replace the keys of the tree with those of the tree with root c, which
+     * are divided evenly between the shards.
+     *
+     * @param c The new top cell.
+     */
+    public void setTop(Cell c) {
+        SizedSplayFC all;
+        if (c == null || c instanceof SizedCell) {
+            all = new SizedSplayFC((SizedCell) c);
+        } else {
+            all = SizedSplayFC.fromSorted(new SplayFC(c).snapShotIterator());
+        }
+        synchronized (resizeLock) {
+            Layout l = layout;
+            lock(l.shards, 0, l.shards.length - 1);
+            try {
+                layout = partition(all);
+                for (Shard s : l.shards) {
+                    s.retired = true;
+                }
+            } finally {
+                unlock(l.shards, 0, l.shards.length - 1);
+            }
+        }
+        modCount.increment();
+    }
+
+    /**
+     * Divide the keys of a tree evenly into target shards, or fewer if there
+     * are fewer keys.
+     * @param all The keys; the tree is splayed but its keys are not changed.
+     * @return The new layout.
+     */
+    private Layout partition(SizedSplayFC all) {
+        int n = Math.max(1, Math.min(target, all.size()));
+        String[] lows = new String[n];
+        Shard[] parts = new Shard[n];
+        SplayFC rest = all;
+        for (int i = n - 1; i > 0; i--) {
+            lows[i] = all.select((int) ((long) i * all.size() / n));
+            SplayFC[] halves = rest.split(lows[i]);
+            parts[i] = new Shard((SizedSplayFC) halves[1]);
+            rest = halves[0];
+        }
+        parts[0] = new Shard((SizedSplayFC) rest);
+        return new Layout(lows, parts, target);
+    }
+
+    /**
+     * Generates a string representation of the tree, in the same format as
+     * SplayFC.
+     *
+     * @return The string representation of the tree.
+     */
+    public String toString() {
+        Cell t = snapshot();
+        if (t == null) {
+            return "[]\n";
+        }
+        return t.toString("", "   ", "   ", " -");
+    }
+
+    /**
+     * Splay the tree with root c, exactly as SplayFC does.  This does not
+     * change this tree.
+     *
+     * @param c The cell at root of the tree to splay.
+     * @param k The key for which a "nearest" key from the tree is moved to the
+     *          root.
+     * @return The root cell of the new tree.
+     */
+    public Cell splay(Cell c, String k) {
+        if (c == null) {
+            throw new NullPointerException("splay requires a non-null Cell");
+        }
+        return SplayFC.splayPath(c, k);
+    }
+
+    /**
+     * Lock the shards from index from to index to, in order.
+     */
+    private static void lock(Shard[] shards, int from, int to) {
+        for (int i = from; i <= to; i++) {
+            shards[i].lock.lock();
+        }
+    }
+
+    /**
+     * Unlock the shards from index from to index to.
+     */
+    private static void unlock(Shard[] shards, int from, int to) {
+        for (int i = to; i >= from; i--) {
+            shards[i].lock.unlock();
+        }
+    }
+
+    /**
+     * Lock the shards from index from to index to, in order, unless one of
+     * them has been retired, in which case none are left locked.
+     * @return true if the shards were locked.
+     */
+    private static boolean lockCurrent(Shard[] shards, int from, int to) {
+        lock(shards, from, to);
+        for (int i = from; i <= to; i++) {
+            if (shards[i].retired) {
+                unlock(shards, from, to);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Insert a specified string key into the tree, in the same way as SplayFC,
+     * locking only the shard that holds it.
+     *
+     * @param k The string key to insert.
+     * @return true if k was not already in the tree.
+     */
+    public boolean add(String k) {
+        while (true) {
+            Layout l = layout;
+            Shard s = l.shards[l.indexOf(k)];
+            boolean added;
+            s.lock.lock();
+            try {
+                if (s.retired) {
+                    continue;
+                }
+                added = s.tree.add(k);
+                if (added) {
+                    s.size++;
+                }
+            } finally {
+                s.lock.unlock();
+            }
+            if (added) {
+                modCount.increment();
+                if (s.size > l.splitSize) {
+                    reshape(s);
+                }
+            }
+            return added;
+        }
+    }
+
+    /**
+     * Remove a specified string from the tree, in the same way as SplayFC,
+     * locking only the shard that holds it.
+     *
+     * @param k The string to remove.
+     * @return true if k is was the tree.
+     */
+    public boolean remove(String k) {
+        while (true) {
+            Layout l = layout;
+            Shard s = l.shards[l.indexOf(k)];
+            boolean removed;
+            s.lock.lock();
+            try {
+                if (s.retired) {
+                    continue;
+                }
+                removed = s.tree.remove(k);
+                if (removed) {
+                    s.size--;
+                }
+            } finally {
+                s.lock.unlock();
+            }
+            if (removed) {
+                modCount.increment();
+                if (s.size < l.mergeSize && l.shards.length > 1) {
+                    reshape(s);
+                }
+            }
+            return removed;
+        }
+    }
+
+    /**
+     * Check whether a string k appears as a key in the tree, splaying the
+     * shard that holds it on k.
+     *
+     * @param k  The key string to look for.
+     * @return true if k is included in the tree.
+     */
+    public boolean contains(String k) {
+        while (true) {
+            Layout l = layout;
+            Shard s = l.shards[l.indexOf(k)];
+            s.lock.lock();
+            try {
+                if (!s.retired) {
+                    return s.tree.contains(k);
+                }
+            } finally {
+                s.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Split a shard that has grown too big, or merge one that has shrunk too
+     * small with its smaller neighbour, if that is still needed.  After a
+     * split leaves more shards than the target, the adjacent pair with the
+     * fewest keys between them is merged if they would not need splitting
+     * again.
+     *
+     * @param s The shard that has changed size.
+     */
+    private void reshape(Shard s) {
+        synchronized (resizeLock) {
+            Layout l = layout;
+            int i = Arrays.asList(l.shards).indexOf(s);
+            if (i < 0) {
+                return;
+            }
+            if (s.size > l.splitSize) {
+                l = splitShard(l, i);
+                if (l.shards.length > target) {
+                    int best = -1;
+                    for (int j = 0; j + 1 < l.shards.length; j++) {
+                        if (best < 0 || l.shards[j].size + l.shards[j + 1].size
+                                < l.shards[best].size + l.shards[best + 1].size) {
+                            best = j;
+                        }
+                    }
+                    if (l.shards[best].size + l.shards[best + 1].size <= l.splitSize / 2) {
+                        l = mergeShards(l, best);
+                    }
+                }
+            } else if (s.size < l.mergeSize && l.shards.length > 1) {
+                if (i == l.shards.length - 1 || (i > 0 && l.shards[i - 1].size < l.shards[i + 1].size)) {
+                    i--;
+                }
+                l = mergeShards(l, i);
+            }
+            layout = l;
+        }
+    }
+
+    /**
+     * Split shard i of a layout at its median key.
+     * @return The new layout, which has also been published.
+     */
+    private Layout splitShard(Layout l, int i) {
+        Shard s = l.shards[i];
+        s.lock.lock();
+        try {
+            if (s.tree.size() < 2) {
+                return l;
+            }
+            String median = s.tree.select(s.tree.size() / 2);
+            SplayFC[] halves = s.tree.split(median);
+            Shard[] shards = new Shard[l.shards.length + 1];
+            String[] lows = new String[shards.length];
+            System.arraycopy(l.shards, 0, shards, 0, i);
+            System.arraycopy(l.lows, 0, lows, 0, i + 1);
+            shards[i] = new Shard((SizedSplayFC) halves[0]);
+            shards[i + 1] = new Shard((SizedSplayFC) halves[1]);
+            lows[i + 1] = median;
+            System.arraycopy(l.shards, i + 1, shards, i + 2, l.shards.length - i - 1);
+            System.arraycopy(l.lows, i + 1, lows, i + 2, l.lows.length - i - 1);
+            Layout split = new Layout(lows, shards, target);
+            layout = split;
+            s.retired = true;
+            return split;
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    /**
+     * Merge shards i and i + 1 of a layout.
+     * @return The new layout, which has also been published.
+     */
+    private Layout mergeShards(Layout l, int i) {
+        Shard a = l.shards[i];
+        Shard b = l.shards[i + 1];
+        lock(l.shards, i, i + 1);
+        try {
+            Shard[] shards = new Shard[l.shards.length - 1];
+            String[] lows = new String[shards.length];
+            System.arraycopy(l.shards, 0, shards, 0, i);
+            System.arraycopy(l.lows, 0, lows, 0, i + 1);
+            shards[i] = new Shard((SizedSplayFC) SplayFC.join(a.tree, b.tree));
+            System.arraycopy(l.shards, i + 2, shards, i + 1, l.shards.length - i - 2);
+            System.arraycopy(l.lows, i + 2, lows, i + 1, l.lows.length - i - 2);
+            Layout merged = new Layout(lows, shards, target);
+            layout = merged;
+            a.retired = true;
+            b.retired = true;
+            return merged;
+        } finally {
+            unlock(l.shards, i, i + 1);
+        }
+    }
+
+    /**
+     * Join the trees of shards from to to of a layout, which must be locked,
+     * into one, replacing the first and last by given trees.
+     * @param first The tree to use for shard from, possibly null.
+     * @param last The tree to use for shard to, if to is not from.
+     * @return The root of the joined tree.
+     */
+    private static Cell joinShards(Shard[] shards, int from, int to, Cell first, Cell last) {
+        if (from == to) {
+            return first;
+        }
+        Cell joined = last;
+        for (int i = to - 1; i > from; i--) {
+            joined = SplayFC.joinCells(shards[i].tree.getTop(), joined);
+        }
+        return SplayFC.joinCells(first, joined);
+    }
+
+    /**
+     * @return The root of a tree holding every key, taken with all shards
+     *         locked so that it is a consistent snapshot.
+     */
+    private Cell snapshot() {
+        while (true) {
+            Shard[] shards = layout.shards;
+            int n = shards.length - 1;
+            if (lockCurrent(shards, 0, n)) {
+                try {
+                    return joinShards(shards, 0, n, shards[0].tree.getTop(), shards[n].tree.getTop());
+                } finally {
+                    unlock(shards, 0, n);
+                }
+            }
+        }
+    }
+
+    /**
+     * Extract a splay tree that contains all keys in the current tree that are
+     * strictly less than k, splaying the shard that holds k on k.
+     *
+     * @param k  The string below which keys should be included.
+     * @return The extracted splay tree.
+     */
+    public SizedSplayFC headSet(String k) {
+        while (true) {
+            Layout l = layout;
+            int j = l.indexOf(k);
+            if (lockCurrent(l.shards, 0, j)) {
+                try {
+                    Cell head = l.shards[j].tree.headSet(k).getTop();
+                    Cell first = j == 0 ? head : l.shards[0].tree.getTop();
+                    return new SizedSplayFC((SizedCell) joinShards(l.shards, 0, j, first, head));
+                } finally {
+                    unlock(l.shards, 0, j);
+                }
+            }
+        }
+    }
+
+    /**
+     * Extract a splay tree that contains all keys in the current tree that are
+     * greater than or equal to k, splaying the shard that holds k on k.
+     *
+     * @param k The minimum string key to include.
+     * @return The extracted splay tree.
+     */
+    public SizedSplayFC tailSet(String k) {
+        while (true) {
+            Layout l = layout;
+            int i = l.indexOf(k);
+            int n = l.shards.length - 1;
+            if (lockCurrent(l.shards, i, n)) {
+                try {
+                    Cell tail = l.shards[i].tree.tailSet(k).getTop();
+                    return new SizedSplayFC((SizedCell) joinShards(l.shards, i, n, tail,
+                            l.shards[n].tree.getTop()));
+                } finally {
+                    unlock(l.shards, i, n);
+                }
+            }
+        }
+    }
+
+    /**
+     * Extract a splay tree that contains all keys in the current tree that are
+     * greater than or equal to k1 and strictly less than k2.  The shards that
+     * hold k1 and k2 are splayed as SplayFC.subSet would splay a single tree.
+     *
+     * @param k1  The minimum string key to include.
+     * @param k2  The string below which keys should be included.
+     * @return The extracted splay tree.
+     */
+    public SizedSplayFC subSet(String k1, String k2) {
+        if (k1.compareTo(k2) >= 0) {
+            return new SizedSplayFC();
+        }
+        while (true) {
+            Layout l = layout;
+            int i = l.indexOf(k1);
+            int j = l.indexOf(k2);
+            if (lockCurrent(l.shards, i, j)) {
+                try {
+                    if (i == j) {
+                        return l.shards[i].tree.subSet(k1, k2);
+                    }
+                    Cell tail = l.shards[i].tree.tailSet(k1).getTop();
+                    Cell head = l.shards[j].tree.headSet(k2).getTop();
+                    return new SizedSplayFC((SizedCell) joinShards(l.shards, i, j, tail, head));
+                } finally {
+                    unlock(l.shards, i, j);
+                }
+            }
+        }
+    }
+
+    /**
+     * Create a SizedSplayFC that contains the strings in this tree at the
+     * moment of the call.  All cells are shared with the shards.
+     *
+     * @return The created SplayFC object.
+     */
+    public SizedSplayFC clone() {
+        return new SizedSplayFC((SizedCell) snapshot());
+    }
+
+    /**
+     * Create an iterator that visits the strings in the tree, as they were when
+     * the iterator was created, in order.
+     *
+     * @return The iterator object.
+     */
+    public Iterator<String> snapShotIterator() {
+        return clone().snapShotIterator();
+    }
+
+    /**
+     * Create an iterator that visits the strings in the live tree in order.
+     * Each call to next visits the least element currently in the tree that is
+     * greater than the previously returned element.  next throws
+     * java.util.ConcurrentModificationException if the tree has been changed
+     * since the most recent call to hasNext.
+     *
+     * @return The iterator object.
+     */
+    public Iterator<String> updatingIterator() {
+        return new UpdatingIterator();
+    }
+
+    /**
+     * An iterator over the live tree that walks one shard at a time, keeping
+     * a stack of the cells still to be visited in the current shard.  When
+     * the tree has been changed it finds its place again with a
+     * non-splaying search for the keys above the last one it returned.
+     */
+    private class UpdatingIterator implements Iterator<String> {
+
+        /**
+         * the last element returned by next, or null before the first call
+         */
+        private String last = null;
+        /**
+         * the cells of the current shard whose keys are still to be visited,
+         * the next one on top; each cell's right subtree is visited straight
+         * after its key
+         */
+        private Cell[] stack = new Cell[32];
+        /**
+         * the number of cells on the stack
+         */
+        private int size = 0;
+        /**
+         * the shards of the layout the iterator is walking
+         */
+        private Shard[] shards;
+        /**
+         * the index in shards of the shard the stack was filled from
+         */
+        private int shard;
+        /**
+         * the value of modCount when the stack was filled
+         */
+        private long expectedModCount;
+        /**
+         * keeps track of which string remove() should be deleting
+         */
+        private String toBeRemoved = null;
+
+        /**
+         * creates an instance of the UpdatingIterator
+         */
+        private UpdatingIterator() {
+            expectedModCount = modCount.sum();
+            seek();
+        }
+
+        /**
+         * Fill the stack from the first shard of the current layout holding a
+         * key greater than last.
+         */
+        private void seek() {
+            retry:
+            while (true) {
+                Layout l = layout;
+                shards = l.shards;
+                for (int i = last == null ? 0 : l.indexOf(last); i < shards.length; i++) {
+                    if (!load(i)) {
+                        continue retry;
+                    }
+                    if (size > 0) {
+                        return;
+                    }
+                }
+                return;
+            }
+        }
+
+        /**
+         * Fill the stack with the cells of a shard whose keys are greater
+         * than last, as they would be after visiting last.
+         * @param i The index of the shard in shards.
+         * @return false if the shard has been retired, so the layout must be
+         *         looked up again.
+         */
+        private boolean load(int i) {
+            Shard s = shards[i];
+            Cell c;
+            s.lock.lock();
+            try {
+                if (s.retired) {
+                    return false;
+                }
+                c = s.tree.getTop();
+            } finally {
+                s.lock.unlock();
+            }
+            while (size > 0) {
+                stack[--size] = null;
+            }
+            while (c != null) {
+                if (last == null || last.compareTo(c.key()) < 0) {
+                    push(c);
+                    c = c.lt;
+                } else {
+                    c = c.rt;
+                }
+            }
+            shard = i;
+            return true;
+        }
+
+        private void push(Cell c) {
+            if (size == stack.length) {
+                stack = Arrays.copyOf(stack, size * 2);
+            }
+            stack[size++] = c;
+        }
+
+        /**
+         * returns true if next() returns an element rather than throw
+         * an exception
+         * @return true iff the iterator has more elements
+         */
+        public boolean hasNext() {
+            long mods = modCount.sum();
+            if (mods != expectedModCount) {
+                expectedModCount = mods;
+                seek();
+            }
+            for (int i = shard + 1; size == 0 && i < shards.length; i++) {
+                if (!load(i)) {
+                    seek();
+                    i = shard;
+                }
+            }
+            return size > 0;
+        }
+
+        /**
+         * returns the next element in the iteration
+         * @return the next element in the iteration
+         * @throws NoSuchElementException iteration has no more elements
+         * @throws ConcurrentModificationException the tree has been changed
+         *  since the most recent call to hasNext()
+         */
+        public String next() throws NoSuchElementException, ConcurrentModificationException {
+            if (modCount.sum() != expectedModCount) {
+                throw new ConcurrentModificationException("the tree has been "
+                        + "changed since the most recent call to hasNext()");
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException("Reached end of tree, no child to go to.");
+            }
+            Cell c = stack[--size];
+            stack[size] = null;
+            for (Cell d = c.rt; d != null; d = d.lt) {
+                push(d);
+            }
+            last = c.key();
+            toBeRemoved = last;
+            return last;
+        }
+
+        /**
+         * removes from the underlying tree the last element returned by the iterator.
+         * @throws IllegalStateException if the next method has not yet been called,
+         *  or the remove method has already been called after the last call to the next method
+         */
+        public void remove() throws IllegalStateException {
+            if (toBeRemoved != null) {
+                if (ShardedSplayFC.this.remove(toBeRemoved)) {
+                    expectedModCount++;
+                }
+                toBeRemoved = null;
+            } else {
+                throw new IllegalStateException("next() has not yet been called,"
+                        + "or remove() has already been called after the last"
+                        + "call to next()");
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ * A binary tree cell that also records the number of keys in the subtree it
+ * is the root of.  Like Cell, no modifications are allowed after creation, so
+ * the count is worked out once from the children when the cell is made.
+ * 
+ * @version 1.1
+ */
+public class SizedCell extends Cell {
+
+	/**
+	 * the number of cells in the subtree rooted at this cell
+	 */
+	public final int size;
+
+	public SizedCell(String k, Cell left, Cell right) {
+		super(k, left, right);
+		size = 1 + size(left) + size(right);
+	}
+
+	/**
+	 * @param c The root of a tree of SizedCells, possibly null.
+	 * @return The number of keys in the tree.
+	 */
+	public static int size(Cell c) {
+		return c == null ? 0 : ((SizedCell) c).size;
+	}
+
+	public Cell make(String k, Cell left, Cell right) {
+		return new SizedCell(k, left, right);
+	}
+}
@@ -0,0 +1,176 @@
+import java.util.Iterator;
+
+/**
+ * A SplayFC whose cells record the size of their subtrees, which gives the
+ * size of the tree in constant time and lets keys be found by position.
+ * The counts are kept up to date by every operation that builds new cells,
+ * since they all make them with Cell.make.
+ * @version 1.1
+ */
+public class SizedSplayFC extends SplayFC {
+
+    /**
+     * Constructs a SizedSplayFC with a null root.
+     */
+    public SizedSplayFC() {
+        super();
+    }
+
+    /**
+     * Constructs a SizedSplayFC with the specified cell as root.
+     * @param c the cell to be made root, which must be a SizedCell or null
+     */
+    public SizedSplayFC(SizedCell c) {
+        super(c);
+    }
+
+    /**
+     * Build a SizedSplayFC from keys given in strictly increasing order, in
+     * time linear in the number of keys.
+     *
+     * @param keys The keys, in strictly increasing order.
+     * @return The new SizedSplayFC.
+     * @throws IllegalArgumentException if the keys are not strictly increasing
+     */
+    public static SizedSplayFC fromSorted(Iterator<String> keys) throws IllegalArgumentException {
+        SizedSplayFC t = new SizedSplayFC();
+        t.addAllSorted(keys);
+        return t;
+    }
+
+    /**
+     * Create the cell that holds the first key added to an empty tree.
+     * @param k The key for the new cell.
+     * @return The newly constructed cell.
+     */
+    protected Cell leaf(String k) {
+        return new SizedCell(k, null, null);
+    }
+
+    /**
+     * Set the top cell of the tree.  Only the root needs checking, since a
+     * SizedCell can only be made over SizedCells.
+     *
+     * @param c The new top cell, which must be a SizedCell or null.
+     * @throws IllegalArgumentException if c is some other kind of cell
+     */
+    public void setTop(Cell c) throws IllegalArgumentException {
+        if (c != null && !(c instanceof SizedCell)) {
+            throw new IllegalArgumentException("a SizedSplayFC needs a SizedCell, not a "
+                    + c.getClass().getName());
+        }
+        super.setTop(c);
+    }
+
+    /**
+     * Get the number of keys in the tree.
+     *
+     * @return The number of keys.
+     */
+    public int size() {
+        return SizedCell.size(top);
+    }
+
+    /**
+     * Count the keys in the tree that are strictly less than k.  This is done
+     * by splaying on k, after which they are exactly the keys to the left of
+     * the root (plus the root itself if it is less than k).
+     *
+     * @param k The key to count below.
+     * @return The number of keys less than k.
+     */
+    public int rank(String k) {
+        if (top == null) {
+            return 0;
+        }
+        setTop(splay(top, k));
+        int r = SizedCell.size(top.lt);
+        return top.key().compareTo(k) < 0 ? r + 1 : r;
+    }
+
+    /**
+     * Find the key at a given position in the sorted order of the tree.  The
+     * key found is then splayed to the root, as contains would.
+     *
+     * @param i The position, counting from 0.
+     * @return The key with exactly i keys less than it.
+     * @throws IndexOutOfBoundsException if i is not between 0 and size() - 1
+     */
+    public String select(int i) throws IndexOutOfBoundsException {
+        if (i < 0 || i >= size()) {
+            throw new IndexOutOfBoundsException("select(" + i + ") on a tree of size " + size());
+        }
+        Cell c = top;
+        while (true) {
+            int l = SizedCell.size(c.lt);
+            if (i < l) {
+                c = c.lt;
+            } else if (i == l) {
+                break;
+            } else {
+                i -= l + 1;
+                c = c.rt;
+            }
+        }
+        setTop(splay(top, c.key()));
+        return c.key();
+    }
+
+    /**
+     * Count the keys that subSet(k1, k2) would contain, without extracting
+     * them.
+     *
+     * @param k1  The minimum string key to include.
+     * @param k2  The string below which keys should be included.
+     * @return The number of keys greater than or equal to k1 and less than k2.
+     */
+    public int subSetSize(String k1, String k2) {
+        if (k1.compareTo(k2) >= 0) {
+            return 0;
+        }
+        return rank(k2) - rank(k1);
+    }
+
+    /**
+     * Extract a sized splay tree that contains all keys in the current tree
+     * that are strictly less than k.
+     *
+     * @param k  The string below which keys should be included.
+     * @return The extracted splay tree.
+     */
+    public SizedSplayFC headSet(String k) {
+        return (SizedSplayFC) super.headSet(k);
+    }
+
+    /**
+     * Extract a sized splay tree that contains all keys in the current tree
+     * that are greater than or equal to k.
+     *
+     * @param k The minimum string key to include.
+     * @return The extracted splay tree.
+     */
+    public SizedSplayFC tailSet(String k) {
+        return (SizedSplayFC) super.tailSet(k);
+    }
+
+    /**
+     * Extract a sized splay tree that contains all keys in the current tree
+     * that are greater than or equal to k1 and strictly less than k2.
+     *
+     * @param k1  The minimum string key to include.
+     * @param k2  The string below which keys should be included.
+     * @return The extracted splay tree.
+     */
+    public SizedSplayFC subSet(String k1, String k2) {
+        return (SizedSplayFC) super.subSet(k1, k2);
+    }
+
+    /**
+     * Create a new SizedSplayFC that shares all of this tree's cells.
+     *
+     * @return The created SizedSplayFC object.
+     */
+    public SizedSplayFC clone() {
+        return (SizedSplayFC) super.clone();
+    }
+}
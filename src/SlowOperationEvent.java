@@ -0,0 +1,88 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event for a SplayFC add, remove, contains or range
+ * extraction that went deeper, or took longer, than a threshold.
+ * <p>
+ *
+ * The thresholds are read when the class is loaded, from the system
+ * properties splayfc.jfr.depth (default 64) and splayfc.jfr.latencyNanos
+ * (default 1000000, one millisecond).  An operation is recorded if it
+ * reaches either one.  When no recording has the event enabled, the
+ * operation does no extra work.
+ *
+ * @version 1.1
+ */
+@Name("splayfc.SlowOperation")
+@Label("Slow SplayFC Operation")
+@Category("SplayFC")
+@Description("An add, remove, contains or range extraction that exceeded the depth or latency threshold")
+public class SlowOperationEvent extends Event {
+
+    /**
+     * the search depth at or beyond which an operation is recorded
+     */
+    public static final int DEPTH_THRESHOLD = Integer.getInteger("splayfc.jfr.depth", 64);
+    /**
+     * the latency, in nanoseconds, at or beyond which an operation is recorded
+     */
+    public static final long LATENCY_THRESHOLD_NANOS = Long.getLong("splayfc.jfr.latencyNanos", 1000000L);
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Key")
+    @Description("The key the operation splayed on")
+    String key;
+
+    @Label("Depth")
+    @Description("The depth of the cell nearest the key before the operation")
+    int depth;
+
+    @Label("Found")
+    @Description("Whether the key was in the tree")
+    boolean found;
+
+    /**
+     * when the operation started, by System.nanoTime
+     */
+    private transient long startNanos;
+
+    /**
+     * Start timing an operation, if a recording wants these events.  The
+     * operation passes the event to the search it does anyway, which sets
+     * depth; it stays -1 if the tree is empty.
+     *
+     * @return The event, or null if the event is not enabled.
+     */
+    static SlowOperationEvent start() {
+        SlowOperationEvent event = new SlowOperationEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.depth = -1;
+        event.begin();
+        event.startNanos = System.nanoTime();
+        return event;
+    }
+
+    /**
+     * Finish an operation, committing the event if it reached a threshold.
+     *
+     * @param operation The name of the operation.
+     * @param k The key the operation splayed on.
+     * @param found Whether the key was in the tree.
+     */
+    void finish(String operation, String k, boolean found) {
+        if (depth >= DEPTH_THRESHOLD || System.nanoTime() - startNanos >= LATENCY_THRESHOLD_NANOS) {
+            this.operation = operation;
+            this.key = k;
+            this.found = found;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Loads the versions of a tree written by a SnapshotWriter.
+ * <p>
+ *
+ * Each cell in the stream is made once and shared by every version that
+ * reaches it, just as it was when written, so loading takes time and memory
+ * linear in the size of the stream.  Versions come back as new trees over
+ * the loaded cells, which are immutable, so they may be used freely.
+ *
+ * @version 1.1
+ */
+public class SnapshotReader {
+
+    /**
+     * every cell, by number
+     */
+    private final ArrayList<Cell> cells = new ArrayList<Cell>();
+    /**
+     * every key, by number
+     */
+    private final ArrayList<String> keys = new ArrayList<String>();
+    /**
+     * the top cell of each version
+     */
+    private final ArrayList<Cell> roots = new ArrayList<Cell>();
+    /**
+     * the tag of each version's root record, which says what class it was
+     */
+    private final ArrayList<Integer> kinds = new ArrayList<Integer>();
+    /**
+     * where the records come from
+     */
+    private final InputStream in;
+
+    /**
+     * Constructs a SnapshotReader by loading a whole snapshot.
+     * @param in the stream to read, which is read to its end but not closed
+     * @throws IOException if the stream cannot be read, is not a snapshot,
+     *         ends part way through a record or holds a record that makes no
+     *         sense
+     */
+    public SnapshotReader(InputStream in) throws IOException {
+        this.in = new BufferedInputStream(in, 1 << 16);
+        byte[] magic = new byte[SnapshotWriter.MAGIC.length];
+        for (int i = 0; i < magic.length; i++) {
+            magic[i] = (byte) readByte();
+        }
+        if (!Arrays.equals(magic, SnapshotWriter.MAGIC)) {
+            throw new IOException("not a snapshot");
+        }
+        byte[] buf = new byte[64];
+        int tag;
+        while ((tag = this.in.read()) >= 0) {
+            switch (tag) {
+                case SnapshotWriter.CELL:
+                case SnapshotWriter.SIZED_CELL:
+                case SnapshotWriter.HASHED_CELL:
+                    int k = readInt();
+                    String key;
+                    if (k == 0) {
+                        int n = readInt();
+                        buf = readFully(buf, n);
+                        key = new String(buf, 0, n, StandardCharsets.UTF_8);
+                        keys.add(key);
+                    } else {
+                        key = keys.get(checkRef(k - 1, keys.size()));
+                    }
+                    Cell l = readRef();
+                    Cell r = readRef();
+                    if (tag != SnapshotWriter.CELL) {
+                        Class<?> kind = tag == SnapshotWriter.SIZED_CELL ? SizedCell.class : HashedCell.class;
+                        checkKind(l, kind);
+                        checkKind(r, kind);
+                    }
+                    cells.add(tag == SnapshotWriter.CELL ? new Cell(key, l, r)
+                            : tag == SnapshotWriter.SIZED_CELL ? new SizedCell(key, l, r) : new HashedCell(key, l, r));
+                    break;
+                case SnapshotWriter.ROOT:
+                case SnapshotWriter.SIZED_ROOT:
+                case SnapshotWriter.HASHED_ROOT:
+                    Cell top = readRef();
+                    if (tag != SnapshotWriter.ROOT) {
+                        checkKind(top, tag == SnapshotWriter.SIZED_ROOT ? SizedCell.class : HashedCell.class);
+                    }
+                    roots.add(top);
+                    kinds.add(tag);
+                    break;
+                default:
+                    throw new IOException("unknown record " + tag);
+            }
+        }
+    }
+
+    /**
+     * @return The number of versions in the snapshot.
+     */
+    public int size() {
+        return roots.size();
+    }
+
+    /**
+     * Get a version.  Each call returns a new tree over the same cells.
+     *
+     * @param i The number of the version, counting from 0.
+     * @return The tree, a SizedSplayFC or HashedSplayFC if one was written.
+     * @throws IndexOutOfBoundsException if there is no such version
+     */
+    public SplayFC tree(int i) throws IndexOutOfBoundsException {
+        Cell top = roots.get(i);
+        switch (kinds.get(i)) {
+            case SnapshotWriter.HASHED_ROOT:
+                return new HashedSplayFC((HashedCell) top);
+            case SnapshotWriter.SIZED_ROOT:
+                return new SizedSplayFC((SizedCell) top);
+            default:
+                return new SplayFC(top);
+        }
+    }
+
+    /**
+     * @return Every cell loaded, in the order written.
+     */
+    List<Cell> cells() {
+        return Collections.unmodifiableList(cells);
+    }
+
+    /**
+     * @return Every key loaded, in the order written.
+     */
+    List<String> keys() {
+        return Collections.unmodifiableList(keys);
+    }
+
+    /**
+     * @return The cell referred to by the next int, or null.
+     */
+    private Cell readRef() throws IOException {
+        int c = readInt();
+        return c == 0 ? null : cells.get(checkRef(c - 1, cells.size()));
+    }
+
+    /**
+     * @param i A number read from the stream.
+     * @param n The count of things it may refer to.
+     * @return i, if it refers to something already read.
+     */
+    private static int checkRef(int i, int n) throws IOException {
+        if (i < 0) {
+            throw new IOException("reference to record " + i);
+        }
+        if (i >= n) {
+            throw new IOException("reference to record " + i + " before it was written");
+        }
+        return i;
+    }
+
+    /**
+     * @param c A cell read from the stream, possibly null.
+     * @param kind The class of cell it must be, if not null.
+     */
+    private static void checkKind(Cell c, Class<?> kind) throws IOException {
+        if (c != null && !kind.isInstance(c)) {
+            throw new IOException("a " + c.getClass().getName() + " where a "
+                    + kind.getName() + " was expected");
+        }
+    }
+
+    /**
+     * Read an int written by SnapshotWriter.writeInt, which never writes a
+     * negative one.
+     * @return The int.
+     */
+    private int readInt() throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+            if (shift == 28 && (b & 0x78) != 0) {
+                throw new IOException("malformed int: more than 31 bits");
+            }
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+        throw new IOException("malformed int");
+    }
+
+    /**
+     * @return The next byte, which must be there.
+     */
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException("snapshot ends part way through a record");
+        }
+        return b;
+    }
+
+    /**
+     * Read exactly n bytes into buf, or into a larger copy of it.  The
+     * buffer only grows as bytes arrive, so a corrupt length cannot make it
+     * take more than twice the memory the stream actually holds.
+     * @return The buffer holding the bytes.
+     */
+    private byte[] readFully(byte[] buf, int n) throws IOException {
+        int done = 0;
+        while (done < n) {
+            if (done == buf.length) {
+                buf = Arrays.copyOf(buf, (int) Math.min(n, 2L * buf.length));
+            }
+            int m = in.read(buf, done, Math.min(n, buf.length) - done);
+            if (m < 0) {
+                throw new EOFException("snapshot ends part way through a record");
+            }
+            done += m;
+        }
+        return buf;
+    }
+}
@@ -0,0 +1,226 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Writes versions of a tree to a binary snapshot stream, which a
+ * SnapshotReader loads back.
+ * <p>
+ *
+ * Versions of a tree share most of their cells, so the writer remembers
+ * every cell and key it has written and writes each only once: checkpointing
+ * a clone writes just the cells made since the last checkpoint, and the
+ * stream grows with the churn between versions rather than with their
+ * number.  Finding the new cells stops at the first cell already written, so
+ * a checkpoint also takes time proportional to the churn.  Only trees made
+ * of Cells share this way; a tree whose getTop() builds fresh cells, such as
+ * ArenaSplayFC, is written whole each time.
+ * <p>
+ *
+ * The stream is an 8-byte header followed by records, each a tag byte and
+ * then unsigned variable-length integers.  A cell record holds its key, its
+ * left child and its right child, each child as 0 for null or one more than
+ * the number of an earlier cell; the key is a key number plus one, or 0
+ * followed by the length of the new key in UTF-8 bytes and the bytes
+ * themselves.  Cells and keys are numbered in the order they are written,
+ * and every cell is written after its children.  A root record names the
+ * top cell of a version.
+ * <p>
+ *
+ * The writer holds on to every cell it has written, so its memory also grows
+ * with the churn.
+ *
+ * @version 1.1
+ */
+public class SnapshotWriter implements Closeable {
+
+    /**
+     * the first bytes of every snapshot: "SPLAYSN" and the format version
+     */
+    static final byte[] MAGIC = { 'S', 'P', 'L', 'A', 'Y', 'S', 'N', 1 };
+    /**
+     * the tags of the records
+     */
+    static final int CELL = 1;
+    static final int SIZED_CELL = 2;
+    static final int ROOT = 3;
+    static final int SIZED_ROOT = 4;
+    static final int HASHED_CELL = 5;
+    static final int HASHED_ROOT = 6;
+
+    /**
+     * where the records go
+     */
+    private final OutputStream out;
+    /**
+     * the number of each cell written so far
+     */
+    private final IdentityHashMap<Cell, Integer> cells = new IdentityHashMap<Cell, Integer>();
+    /**
+     * the number of each key written so far
+     */
+    private final IdentityHashMap<String, Integer> keys = new IdentityHashMap<String, Integer>();
+    /**
+     * the number of versions written, including any from a previous snapshot
+     */
+    private int versions;
+    /**
+     * encodes keys, refusing strings that are not valid UTF-16
+     */
+    private final CharsetEncoder utf8 = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+    /**
+     * Constructs a SnapshotWriter starting a new snapshot.
+     * @param out the stream to write to
+     * @throws IOException if the header cannot be written
+     */
+    public SnapshotWriter(OutputStream out) throws IOException {
+        this.out = new BufferedOutputStream(out, 1 << 16);
+        this.out.write(MAGIC);
+    }
+
+    /**
+     * Constructs a SnapshotWriter carrying on a snapshot that has been loaded,
+     * so that new versions share cells with the trees the reader built.
+     * @param out a stream appending to the loaded snapshot
+     * @param previous the reader that loaded it
+     */
+    public SnapshotWriter(OutputStream out, SnapshotReader previous) {
+        this.out = new BufferedOutputStream(out, 1 << 16);
+        List<Cell> loaded = previous.cells();
+        for (int i = 0; i < loaded.size(); i++) {
+            cells.put(loaded.get(i), i);
+        }
+        List<String> loadedKeys = previous.keys();
+        for (int i = 0; i < loadedKeys.size(); i++) {
+            keys.put(loadedKeys.get(i), i);
+        }
+        versions = previous.size();
+    }
+
+    /**
+     * Write a version of a tree, then flush the stream.
+     *
+     * @param t The tree.  A SizedSplayFC or HashedSplayFC is loaded back as
+     *        one.
+     * @return The number of the version, with which SnapshotReader.tree
+     *         loads it.
+     * @throws IOException if the stream cannot be written
+     * @throws IllegalArgumentException if the tree holds a kind of cell the
+     *         format does not know, or a key that is not valid UTF-16
+     */
+    public int checkpoint(ISplayFC t) throws IOException, IllegalArgumentException {
+        Cell top = t.getTop();
+        if (top != null && !cells.containsKey(top)) {
+            writeNew(top);
+        }
+        out.write(t instanceof HashedSplayFC ? HASHED_ROOT : t instanceof SizedSplayFC ? SIZED_ROOT : ROOT);
+        writeRef(top);
+        out.flush();
+        return versions++;
+    }
+
+    /**
+     * Write every cell under c that has not been written yet, children
+     * before parents.
+     * @param c A cell that has not been written.
+     */
+    private void writeNew(Cell c) throws IOException {
+        List<Cell> stack = new ArrayList<Cell>();
+        stack.add(c);
+        while (!stack.isEmpty()) {
+            Cell x = stack.get(stack.size() - 1);
+            if (x.lt != null && !cells.containsKey(x.lt)) {
+                stack.add(x.lt);
+            } else if (x.rt != null && !cells.containsKey(x.rt)) {
+                stack.add(x.rt);
+            } else {
+                stack.remove(stack.size() - 1);
+                writeCell(x);
+            }
+        }
+    }
+
+    /**
+     * Write a cell whose children have been written, and number it.
+     * @param c The cell.
+     */
+    private void writeCell(Cell c) throws IOException {
+        if (c.getClass() == Cell.class) {
+            out.write(CELL);
+        } else if (c.getClass() == SizedCell.class) {
+            out.write(SIZED_CELL);
+        } else if (c.getClass() == HashedCell.class) {
+            out.write(HASHED_CELL);
+        } else {
+            throw new IllegalArgumentException("cannot snapshot a " + c.getClass().getName());
+        }
+        Integer k = keys.get(c.key());
+        if (k != null) {
+            writeInt(k + 1);
+        } else {
+            ByteBuffer bytes;
+            try {
+                bytes = utf8.encode(CharBuffer.wrap(c.key()));
+            } catch (CharacterCodingException e) {
+                throw new IllegalArgumentException("key is not valid UTF-16", e);
+            }
+            writeInt(0);
+            writeInt(bytes.remaining());
+            out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            keys.put(c.key(), keys.size());
+        }
+        writeRef(c.lt);
+        writeRef(c.rt);
+        cells.put(c, cells.size());
+    }
+
+    /**
+     * Write a reference to a cell that has been written.
+     * @param c The cell, or null.
+     */
+    private void writeRef(Cell c) throws IOException {
+        writeInt(c == null ? 0 : cells.get(c) + 1);
+    }
+
+    /**
+     * Write a non-negative int in seven-bit groups, low group first, with the
+     * top bit of each byte set if another follows.
+     * @param v The int.
+     */
+    private void writeInt(int v) throws IOException {
+        while ((v & ~0x7F) != 0) {
+            out.write((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    /**
+     * @return The number of distinct cells written.
+     */
+    public int cellsWritten() {
+        return cells.size();
+    }
+
+    /**
+     * Flush and close the stream.
+     *
+     * @throws IOException if the stream cannot be closed
+     */
+    public void close() throws IOException {
+        out.close();
+    }
+}
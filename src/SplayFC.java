@@ -1,7 +1,12 @@
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * An implementation of a splay tree of strings with fast cloning and subset extraction.
@@ -9,7 +14,7 @@ import java.util.NoSuchElementException;
  * @author Jonathan Eng (20263557)
  * @version 1.1
  */
-public class SplayFC implements ISplayFC {
+public class SplayFC implements ISplayFC, Cloneable {
 
     /**
      * the current root cell
@@ -24,9 +29,25 @@ public class SplayFC implements ISplayFC {
 
     /* -- Begin private helper variables. -- */
     /**
-     * to keep track of any changes to the tree
+     * to keep track of any changes to the tree; only ever increases, so an
+     * add followed by a remove is still seen as a change
      */
     private int modCount;
+    /**
+     * decides how contains reshapes the tree
+     */
+    private SplayPolicy policy;
+    /**
+     * the steps recorded by splayPath while walking down the tree
+     */
+    private static final byte LEFT_ZIG_ZIG = 0;
+    private static final byte LEFT_ZIG_ZAG = 1;
+    private static final byte RIGHT_ZIG_ZIG = 2;
+    private static final byte RIGHT_ZIG_ZAG = 3;
+    /**
+     * the starting capacity of the path buffer used by splayPath
+     */
+    private static final int INITIAL_PATH_LENGTH = 32;
     /* -- End private helper variables. -- */
 
     /**
@@ -35,6 +56,7 @@ public class SplayFC implements ISplayFC {
     public SplayFC() {
         top = null;
         modCount = 0;
+        policy = SplayPolicy.ALWAYS;
     }
 
     /**
@@ -44,6 +66,7 @@ public class SplayFC implements ISplayFC {
     public SplayFC(Cell c) {
         top = c;
         modCount = 0;
+        policy = SplayPolicy.ALWAYS;
     }
 
     /**
@@ -89,10 +112,21 @@ public class SplayFC implements ISplayFC {
      * @param r the right child of the new cell.
      * @return The newly constructed cell.
      */
-    private static Cell cell(String k, Cell l, Cell r) {
+    static Cell cell(String k, Cell l, Cell r) {
         return new Cell(k, l, r);
     }
 
+    /**
+     * Create the cell that holds the first key added to an empty tree.  Every
+     * other cell in the tree is made from an existing one with Cell.make, so
+     * subclasses that use their own kind of cell only need to override this.
+     * @param k The key for the new cell.
+     * @return The newly constructed cell.
+     */
+    protected Cell leaf(String k) {
+        return cell(k, null, null);
+    }
+
     /**
      * Splay the tree with root c to build a new tree that has the same keys but
      * has a node that is "nearest" to k at the root. Here "nearest" means the new
@@ -117,54 +151,217 @@ public class SplayFC implements ISplayFC {
         if (c == null) {
             throw new NullPointerException("splay requires a non-null Cell");
         }
+        return splayPath(c, k);
+    }
+
+    /**
+     * The splaying engine behind splay(Cell, String).  It produces exactly the
+     * same trees as the zig/zig-zig/zig-zag scheme in the specification, but
+     * rather than recursing once per zig-zig or zig-zag step it walks down the
+     * tree recording each step in an explicit path buffer, then rebuilds the
+     * new tree by replaying those steps from the bottom up.  This keeps the
+     * thread stack flat however deep the tree is.
+     *
+     * @param c The non-null cell at root of the tree to splay.
+     * @param k The key for which a "nearest" key from the tree is moved to the
+     *          root.
+     * @return The root cell of the new tree.
+     */
+    static Cell splayPath(Cell c, String k) {
+        return splayPath(c, k, null);
+    }
+
+    /**
+     * As splayPath(Cell, String), also telling a slow operation event how
+     * deep the search went, so that recording one costs no extra search.
+     *
+     * @param c The non-null cell at root of the tree to splay.
+     * @param k The key for which a "nearest" key from the tree is moved to the
+     *          root.
+     * @param event The event timing the operation, or null.
+     * @return The root cell of the new tree.
+     */
+    static Cell splayPath(Cell c, String k, SlowOperationEvent event) {
+        Cell[] path = null;
+        byte[] steps = null;
+        int depth = 0;
+        Cell s;
 
-        int compareToCKey = k.compareTo(c.key());
+        // Walk down two levels at a time until a zig step or the nearest key.
+        while (true) {
+            int compareToCKey = k.compareTo(c.key());
+            Cell next;
+            byte step;
 
-        //The following section compares the current cell c.
-        if (compareToCKey < 0 && c.lt != null) { // Search left
-            int compareToLtKey = k.compareTo(c.lt.key());
+            if (compareToCKey < 0 && c.lt != null) { // Search left
+                int compareToLtKey = k.compareTo(c.lt.key());
 
-            if (compareToLtKey < 0 && c.lt.lt != null) { // left zig-zig step
-                Cell ll = splay(c.lt.lt, k); // Search recursively
-                Cell newRR = cell(c.key(), c.lt.rt, c.rt); // Rearrange
-                return cell(ll.key(), ll.lt, cell(c.lt.key(), ll.rt, newRR));
+                if (compareToLtKey < 0 && c.lt.lt != null) { // left zig-zig step
+                    step = LEFT_ZIG_ZIG;
+                    next = c.lt.lt;
+                } else if (compareToLtKey > 0 && c.lt.rt != null) { // left zig-zag step
+                    step = LEFT_ZIG_ZAG;
+                    next = c.lt.rt;
+                } else { // left zig step
+                    s = c.make(c.lt.key(), c.lt.lt, c.make(c.key(), c.lt.rt, c.rt));
+                    break;
+                }
+            } else if (compareToCKey > 0 && c.rt != null) { // Search right
+                int compareToRtKey = k.compareTo(c.rt.key());
 
-            } else if (compareToLtKey > 0 && c.lt.rt != null) { // left zig-zag step
+                if (compareToRtKey > 0 && c.rt.rt != null) { // right zig-zig step
+                    step = RIGHT_ZIG_ZIG;
+                    next = c.rt.rt;
+                } else if (compareToRtKey < 0 && c.rt.lt != null) { // right zig-zag step
+                    step = RIGHT_ZIG_ZAG;
+                    next = c.rt.lt;
+                } else { // right zig step
+                    s = c.make(c.rt.key(), c.make(c.key(), c.lt, c.rt.lt), c.rt.rt);
+                    break;
+                }
+            } else {
+                s = c;  // Special cases 1 and 2 in the specification
+                break;
+            }
 
-                Cell lr = splay(c.lt.rt, k);
-                // rearranged parent
-                Cell newRRP = cell(c.lt.key(), c.lt.lt, lr.lt);
-                // rearranged grandparent
-                Cell newRRG = cell(c.key(), lr.rt, c.rt);
-                return cell(lr.key(), newRRP, newRRG);
-            } else // left zig step
-            {
-                return cell(c.lt.key(), c.lt.lt, cell(c.key(), c.lt.rt, c.rt));
+            if (path == null) {
+                path = new Cell[INITIAL_PATH_LENGTH];
+                steps = new byte[INITIAL_PATH_LENGTH];
+            } else if (depth == path.length) {
+                path = Arrays.copyOf(path, depth * 2);
+                steps = Arrays.copyOf(steps, depth * 2);
             }
-        } else if (compareToCKey > 0 && c.rt != null) { // Search right
-            int compareToRtKey = k.compareTo(c.rt.key());
+            path[depth] = c;
+            steps[depth] = step;
+            depth++;
+            c = next;
+        }
+
+        if (SplayStats.ENABLED) {
+            recordSplay(steps, depth, s != c);
+        }
+        if (event != null) {
+            event.depth = 2 * depth + (s != c ? 1 : 0);
+        }
 
-            if (compareToRtKey > 0 && c.rt.rt != null) { // right zig-zig step
-                Cell rr = splay(c.rt.rt, k); // Search recursively
-                Cell newRR = cell(c.key(), c.lt, c.rt.lt); // Rearrange
-                return cell(rr.key(), cell(c.rt.key(), newRR, rr.lt), rr.rt);
+        // Replay the recorded steps, deepest first, around the splayed subtree s.
+        while (depth > 0) {
+            depth--;
+            c = path[depth];
+            switch (steps[depth]) {
+                case LEFT_ZIG_ZIG: {
+                    Cell newRR = c.make(c.key(), c.lt.rt, c.rt); // Rearrange
+                    s = c.make(s.key(), s.lt, c.make(c.lt.key(), s.rt, newRR));
+                    break;
+                }
+                case LEFT_ZIG_ZAG: {
+                    // rearranged parent
+                    Cell newRRP = c.make(c.lt.key(), c.lt.lt, s.lt);
+                    // rearranged grandparent
+                    Cell newRRG = c.make(c.key(), s.rt, c.rt);
+                    s = c.make(s.key(), newRRP, newRRG);
+                    break;
+                }
+                case RIGHT_ZIG_ZIG: {
+                    Cell newRR = c.make(c.key(), c.lt, c.rt.lt); // Rearrange
+                    s = c.make(s.key(), c.make(c.rt.key(), newRR, s.lt), s.rt);
+                    break;
+                }
+                default: { // RIGHT_ZIG_ZAG
+                    // rearranged parent
+                    Cell newRRP = c.make(c.rt.key(), s.rt, c.rt.rt);
+                    // rearranged grandparent
+                    Cell newRRG = c.make(c.key(), c.lt, s.lt);
+                    s = c.make(s.key(), newRRG, newRRP);
+                    break;
+                }
+            }
+        }
+        return s;
+    }
 
-            } else if (compareToRtKey < 0 && c.rt.lt != null) { // right zig-zag step
+    /**
+     * Splay the tree with root c on k as splay(c, k) does, giving the depth
+     * the search reached to event if there is one.
+     *
+     * @param c The non-null cell at root of the tree to splay.
+     * @param k The key to splay on.
+     * @param event The event timing the operation, or null.
+     * @return The root cell of the new tree.
+     */
+    private Cell splay(Cell c, String k, SlowOperationEvent event) {
+        return event == null ? splay(c, k) : splayPath(c, k, event);
+    }
 
-                Cell rl = splay(c.rt.lt, k);
-                // rearranged parent
-                Cell newRRP = cell(c.rt.key(), rl.rt, c.rt.rt);
-                // rearranged grandparent
-                Cell newRRG = cell(c.key(), c.lt, rl.lt);
-                return cell(rl.key(), newRRG, newRRP);
+    /**
+     * Semi-splay the tree with root c on k.  Walking back up the search path
+     * for k two cells at a time, a zig-zig pair is rotated once, so that the
+     * middle cell replaces the top one and the walk carries on from there,
+     * and a zig-zag pair is rotated as in a splay; a last single cell below
+     * the root is rotated up.  This roughly halves the depth of every cell on
+     * the path while changing less of the tree than a splay.
+     *
+     * @param c The non-null cell at root of the tree.
+     * @param k The key to semi-splay on.
+     * @return The root cell of the new tree.
+     */
+    static Cell semiSplayPath(Cell c, String k) {
+        Cell[] path = new Cell[INITIAL_PATH_LENGTH];
+        int depth = 0;
+        while (c != null) {
+            if (depth == path.length) {
+                path = Arrays.copyOf(path, depth * 2);
+            }
+            path[depth++] = c;
+            int cmp = k.compareTo(c.key());
+            c = cmp < 0 ? c.lt : cmp > 0 ? c.rt : null;
+        }
 
-            } else // right zig step
-            {
-                return cell(c.rt.key(), cell(c.key(), c.lt, c.rt.lt), c.rt.rt);
+        // s is the new subtree at position i on the path.
+        int i = depth - 1;
+        Cell s = path[i];
+        while (i >= 2) {
+            Cell p = path[i - 1];
+            Cell g = path[i - 2];
+            boolean sLeft = s.key().compareTo(p.key()) < 0;
+            boolean pLeft = p.key().compareTo(g.key()) < 0;
+            if (sLeft && pLeft) { // zig-zig: rotate p over g
+                s = p.make(p.key(), s, g.make(g.key(), p.rt, g.rt));
+            } else if (!sLeft && !pLeft) {
+                s = p.make(p.key(), g.make(g.key(), g.lt, p.lt), s);
+            } else if (pLeft) { // zig-zag: rotate s over p and g
+                s = s.make(s.key(), p.make(p.key(), p.lt, s.lt), g.make(g.key(), s.rt, g.rt));
+            } else {
+                s = s.make(s.key(), g.make(g.key(), g.lt, s.lt), p.make(p.key(), s.rt, p.rt));
+            }
+            i -= 2;
+        }
+        if (i == 1) { // zig: rotate s over the root
+            Cell p = path[0];
+            if (s.key().compareTo(p.key()) < 0) {
+                s = s.make(s.key(), s.lt, p.make(p.key(), s.rt, p.rt));
+            } else {
+                s = s.make(s.key(), p.make(p.key(), p.lt, s.lt), s.rt);
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Report a splay to SplayStats.
+     *
+     * @param steps The zig-zig and zig-zag steps taken, or null if none.
+     * @param depth The number of entries in steps.
+     * @param zig Whether a final zig step was taken.
+     */
+    private static void recordSplay(byte[] steps, int depth, boolean zig) {
+        int zigZigs = 0;
+        for (int i = 0; i < depth; i++) {
+            if (steps[i] == LEFT_ZIG_ZIG || steps[i] == RIGHT_ZIG_ZIG) {
+                zigZigs++;
             }
-        } else {
-            return c;  // Special cases 1 and 2 in the specification
         }
+        SplayStats.splayed(2 * depth + (zig ? 1 : 0), zigZigs, depth - zigZigs, zig ? 1 : 0);
     }
 
     /**
@@ -194,54 +391,46 @@ public class SplayFC implements ISplayFC {
      * @return true if k was not already in the splay tree.
      */
     public boolean add(String k) {
+        long cellsBefore = SplayStats.ENABLED ? SplayStats.cellsMade() : 0;
+        SlowOperationEvent event = SlowOperationEvent.start();
+        boolean added = true;
         if (top == null) {
-            top = cell(k, null, null);
-            modCount++;
-            return true;
-        }
-        Cell s = splay(top, k);
-        if (s.key().equals(k)) { // checks if its already in the tree
-            return false;
+            top = leaf(k);
         } else {
-            if (s.lt == null && k.compareTo(s.key()) < 0) {
-                Cell l = cell(k, null, null);
-                Cell newS = cell(s.key(), l, s.rt);
-                setTop(newS);
-                setTop(splay(top, k));
-                modCount++;
-                return true;
-            }
-            if (s.rt == null && k.compareTo(s.key()) > 0) {
-                Cell r = cell(k, null, null);
-                Cell newS = cell(s.key(), s.lt, r);
-                setTop(newS);
-                setTop(splay(top, k));
-                modCount++;
-                return true;
-            }
-
-            if (s.lt != null && k.compareTo(s.lt.key()) > 0 && k.compareTo(s.key()) < 0) {
-                // for when k is between left tree of s and s
-                Cell newS = cell(s.key(), null, s.rt);
-                Cell newTop = cell(k, s.lt, newS);
-                setTop(newTop);
-                setTop(splay(top, k));
-                modCount++;
-                return true;
-            }
-            if (s.rt != null && k.compareTo(s.rt.key()) < 0 && k.compareTo(s.key()) > 0) {
-                // for when k is between right tree of s and s
-                Cell newS = cell(s.key(), s.lt, null);
-                Cell newTop = cell(k, newS, s.rt);
-                setTop(newTop);
-                setTop(splay(top, k));
-                modCount++;
-                return true;
+            Cell s = splay(top, k, event);
+            added = !s.key().equals(k); // checks if its already in the tree
+            if (added) {
+                setTop(insertAtRoot(s, k));
             }
+        }
+        if (added) {
+            modCount++;
+        }
+        if (SplayStats.ENABLED) {
+            SplayStats.operation(SplayStats.Op.ADD, !added, cellsBefore);
+        }
+        if (event != null) {
+            event.finish("add", k, !added);
+        }
+        return added;
+    }
 
+    /**
+     * Replace the root cell s of a tree that has just been splayed on k, where
+     * k is not in the tree, by two new cells such that k is the new root and
+     * s's key is appropriately in either the left or right child.  Since no
+     * key lies between k and s's key, the rest of the tree is shared as is.
+     *
+     * @param s The root of a tree that has just been splayed on k.
+     * @param k The string key to insert.
+     * @return The root cell of the new tree.
+     */
+    static Cell insertAtRoot(Cell s, String k) {
+        if (k.compareTo(s.key()) < 0) {
+            return s.make(k, s.lt, s.make(s.key(), null, s.rt));
+        } else {
+            return s.make(k, s.make(s.key(), s.lt, null), s.rt);
         }
-        // whatever else happens that's not expected
-        return false;
     }
 
     /**
@@ -257,52 +446,320 @@ public class SplayFC implements ISplayFC {
      * @return true if k is was the splay tree.
      */
     public boolean remove(String k) {
+        long cellsBefore = SplayStats.ENABLED ? SplayStats.cellsMade() : 0;
+        SlowOperationEvent event = SlowOperationEvent.start();
+        boolean removed = false;
         // base case of when tree is empty
-        if (getTop() == null) {
-            return false;
-        } else { // When tree is not empty
-            if (contains(k)) {
-                setTop(splay(top, k));
-                if ((top.lt == null) && (top.rt == null)) {
-                    setTop(null);
-                    modCount--;
-                    return true;
-                } else if (top.lt == null) {
-                    Cell newTop = cell(top.rt.key(), top.rt.lt, top.rt.rt);
-                    setTop(newTop);
-                    modCount--;
-                    return true;
-                } else if (top.rt == null) {
-                    Cell newTop = cell(top.lt.key(), top.lt.lt, top.lt.rt);
-                    setTop(newTop);
-                    modCount--;
-                    return true;
-                } else {
-                    Cell l = splay(top.lt, STRING_MAX);
-                    Cell newTop = cell(l.key(), l.lt, top.rt);
-                    setTop(newTop);
-                    modCount--;
-                    return true;
-                }
-            } else {
-                return false;
+        if (getTop() != null) { // When tree is not empty
+            setTop(splay(top, k, event));
+            if (top.key().equals(k)) {
+                setTop(removeRoot(top));
+                modCount++;
+                removed = true;
             }
         }
+        if (SplayStats.ENABLED) {
+            SplayStats.operation(SplayStats.Op.REMOVE, removed, cellsBefore);
+        }
+        if (event != null) {
+            event.finish("remove", k, removed);
+        }
+        return removed;
+    }
+
+    /**
+     * Remove the root cell s of a tree, by splaying its left subtree to bring
+     * the maximum element to the root and hanging the right subtree off that.
+     *
+     * @param s The root of the tree, which holds the key being removed.
+     * @return The root cell of the new tree, or null if s was the only cell.
+     */
+    static Cell removeRoot(Cell s) {
+        if (s.lt == null) {
+            return s.rt;
+        } else if (s.rt == null) {
+            return s.lt;
+        } else {
+            Cell l = splayPath(s.lt, STRING_MAX);
+            return l.make(l.key(), l.lt, s.rt);
+        }
+    }
+
+    /**
+     * Get the policy that decides how contains reshapes the tree.
+     *
+     * @return The policy; SplayPolicy.ALWAYS unless changed.
+     */
+    public SplayPolicy getSplayPolicy() {
+        return policy;
+    }
+
+    /**
+     * Set the policy that decides how contains reshapes the tree.  Clones
+     * made afterwards use it too.  The tree keeps policy.copy(), so a policy
+     * that remembers things about the tree it serves is not shared.
+     *
+     * @param policy The new policy.
+     */
+    public void setSplayPolicy(SplayPolicy policy) {
+        if (policy == null) {
+            throw new NullPointerException("setSplayPolicy requires a non-null SplayPolicy");
+        }
+        this.policy = policy.copy();
     }
 
     /**
      * Check whether a string k appears as a key in the splay tree.  This should
      * be done via splaying, with the tree being updated to the result of splaying
      * regardless of whether the key is found.
+     * <p>
+     *
+     * That is what the default policy, SplayPolicy.ALWAYS, does; other
+     * policies may semi-splay or leave the tree as it is.  See
+     * setSplayPolicy.
      *
      * @param k  The key string to look for.
      * @return true if k is included in the splay tree.
      */
     public boolean contains(String k) {
-        setTop(splay(top, k));
-        return getTop().key().equals(k);
+        long cellsBefore = SplayStats.ENABLED ? SplayStats.cellsMade() : 0;
+        SlowOperationEvent event = SlowOperationEvent.start();
+        boolean found = false;
+        if (top != null) {
+            SplayPolicy.Action action = policy.needsDepth() ? null : policy.onAccess(-1, top);
+            if (action == SplayPolicy.Action.SPLAY) {
+                setTop(splay(top, k, event));
+                found = top.key().equals(k);
+            } else {
+                int depth = searchDepth(top, k);
+                found = depth >= 0;
+                if (event != null) {
+                    event.depth = found ? depth : -depth - 1;
+                }
+                if (action == null) {
+                    action = policy.onAccess(found ? depth : -depth - 1, top);
+                }
+                if (action == SplayPolicy.Action.SPLAY) {
+                    setTop(splayPath(top, k));
+                } else if (action == SplayPolicy.Action.SEMI_SPLAY) {
+                    setTop(semiSplayPath(top, k));
+                }
+            }
+        }
+        if (SplayStats.ENABLED) {
+            SplayStats.operation(SplayStats.Op.CONTAINS, found, cellsBefore);
+        }
+        if (event != null) {
+            event.finish("contains", k, found);
+        }
+        return found;
+    }
+
+    /* -- Begin non-splaying lookups.  These only read the cells reachable
+       from top, so they never allocate and never change the tree. -- */
+
+    /**
+     * Check whether a string k appears as a key in the tree, without splaying.
+     *
+     * @param k  The key string to look for.
+     * @return true if k is included in the tree.
+     */
+    public boolean containsNoSplay(String k) {
+        return findCell(top, k) != null;
+    }
+
+    /**
+     * Find the greatest key in the tree that is less than or equal to k,
+     * without splaying.
+     *
+     * @param k  The key to search from.
+     * @return The greatest key <= k, or null if there is none.
+     */
+    public String floor(String k) {
+        return keyOf(floorCell(top, k));
+    }
+
+    /**
+     * Find the least key in the tree that is greater than or equal to k,
+     * without splaying.
+     *
+     * @param k  The key to search from.
+     * @return The least key >= k, or null if there is none.
+     */
+    public String ceiling(String k) {
+        return keyOf(ceilingCell(top, k));
+    }
+
+    /**
+     * Find the least key in the tree, without splaying.
+     *
+     * @return The least key, or null if the tree is empty.
+     */
+    public String first() {
+        return keyOf(firstCell(top));
+    }
+
+    /**
+     * Find the greatest key in the tree, without splaying.
+     *
+     * @return The greatest key, or null if the tree is empty.
+     */
+    public String last() {
+        return keyOf(lastCell(top));
+    }
+
+    /**
+     * @param c A cell, possibly null.
+     * @return The key of c, or null if c is null.
+     */
+    private static String keyOf(Cell c) {
+        return c == null ? null : c.key();
+    }
+
+    /**
+     * @param c The root of the tree to search.
+     * @param k The key to look for.
+     * @return The cell with key k, or null if there is none.
+     */
+    static Cell findCell(Cell c, String k) {
+        while (c != null) {
+            int cmp = k.compareTo(c.key());
+            if (cmp == 0) {
+                return c;
+            }
+            c = cmp < 0 ? c.lt : c.rt;
+        }
+        return null;
+    }
+
+    /**
+     * @param c The non-null root of the tree to search.
+     * @param k The key to look for.
+     * @return The depth d of the cell with key k, or -(d + 1) where d is the
+     *         depth of the last cell on the search path if there is none.
+     */
+    static int searchDepth(Cell c, String k) {
+        int depth = 0;
+        while (true) {
+            int cmp = k.compareTo(c.key());
+            if (cmp == 0) {
+                return depth;
+            }
+            c = cmp < 0 ? c.lt : c.rt;
+            if (c == null) {
+                return -depth - 1;
+            }
+            depth++;
+        }
+    }
+
+    /**
+     * @param c The root of the tree to search.
+     * @param k The key to look for.
+     * @return The depth of the cell with key k, or of the last cell on the
+     *         search path if there is none; -1 for an empty tree.
+     */
+    static int depthOf(Cell c, String k) {
+        int depth = -1;
+        while (c != null) {
+            depth++;
+            int cmp = k.compareTo(c.key());
+            if (cmp == 0) {
+                break;
+            }
+            c = cmp < 0 ? c.lt : c.rt;
+        }
+        return depth;
+    }
+
+    /**
+     * @param c The root of the tree to search.
+     * @param k The key to search from.
+     * @return The cell with the greatest key <= k, or null if there is none.
+     */
+    static Cell floorCell(Cell c, String k) {
+        Cell best = null;
+        while (c != null) {
+            int cmp = k.compareTo(c.key());
+            if (cmp == 0) {
+                return c;
+            } else if (cmp < 0) {
+                c = c.lt;
+            } else {
+                best = c;
+                c = c.rt;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param c The root of the tree to search.
+     * @param k The key to search from.
+     * @return The cell with the least key >= k, or null if there is none.
+     */
+    static Cell ceilingCell(Cell c, String k) {
+        Cell best = null;
+        while (c != null) {
+            int cmp = k.compareTo(c.key());
+            if (cmp == 0) {
+                return c;
+            } else if (cmp > 0) {
+                c = c.rt;
+            } else {
+                best = c;
+                c = c.lt;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param c The root of the tree to search.
+     * @param k The key to search from.
+     * @return The cell with the least key > k, or null if there is none.
+     */
+    static Cell higherCell(Cell c, String k) {
+        Cell best = null;
+        while (c != null) {
+            if (k.compareTo(c.key()) >= 0) {
+                c = c.rt;
+            } else {
+                best = c;
+                c = c.lt;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param c The root of the tree to search.
+     * @return The cell with the least key, or null if c is null.
+     */
+    static Cell firstCell(Cell c) {
+        if (c != null) {
+            while (c.lt != null) {
+                c = c.lt;
+            }
+        }
+        return c;
+    }
+
+    /**
+     * @param c The root of the tree to search.
+     * @return The cell with the greatest key, or null if c is null.
+     */
+    static Cell lastCell(Cell c) {
+        if (c != null) {
+            while (c.rt != null) {
+                c = c.rt;
+            }
+        }
+        return c;
     }
 
+    /* -- End non-splaying lookups. -- */
+
     /**
      * Extract a splay tree that contains all keys in the current tree that are
      * strictly less than k.  This should be done via splaying on k, updating
@@ -313,24 +770,20 @@ public class SplayFC implements ISplayFC {
      * @return The extracted splay tree.
      */
     public SplayFC headSet(String k) {
-        if (getTop() == null) {
-            // if the tree is empty, return as it is
-            SplayFC treeClone = clone();
-            return treeClone;
-        } else {
-            setTop(splay(getTop(), k));
-            SplayFC treeClone = clone();
-            if (contains(k)) {
-                treeClone.setTop(treeClone.getTop().lt);
-            } else {
-                treeClone.setTop(cell(treeClone.getTop().key(), treeClone.getTop().lt, null));
-            }
-            // if k is still less than the smallest
-            if (k.compareTo(treeClone.getTop().key()) < 0) {
-                treeClone.setTop(null);
-            }
-            return treeClone;
+        long cellsBefore = SplayStats.ENABLED ? SplayStats.cellsMade() : 0;
+        SlowOperationEvent event = SlowOperationEvent.start();
+        SplayFC treeClone = clone();
+        if (getTop() != null) {
+            setTop(splay(getTop(), k, event));
+            treeClone.setTop(headOf(getTop(), k));
         }
+        if (SplayStats.ENABLED) {
+            SplayStats.operation(SplayStats.Op.RANGE, treeClone.getTop() != null, cellsBefore);
+        }
+        if (event != null) {
+            event.finish("headSet", k, treeClone.getTop() != null);
+        }
+        return treeClone;
     }
 
     /**
@@ -343,35 +796,593 @@ public class SplayFC implements ISplayFC {
      * @return The extracted splay tree.
      */
     public SplayFC tailSet(String k) {
-        if (getTop() == null) {
-            // if the tree is empty, return as it is
-            SplayFC treeClone = clone();
-            return treeClone;
-        } else {
-            setTop(splay(getTop(), k));
-            SplayFC treeClone = clone();
-            // if k is still more than the greatest
-            if (k.compareTo(treeClone.getTop().key()) > 0) {
-                treeClone.setTop(null);
-            } else {
-                treeClone.setTop(cell(treeClone.getTop().key(), null, treeClone.getTop().rt));
-            }
-            return treeClone;
+        long cellsBefore = SplayStats.ENABLED ? SplayStats.cellsMade() : 0;
+        SlowOperationEvent event = SlowOperationEvent.start();
+        SplayFC treeClone = clone();
+        if (getTop() != null) {
+            setTop(splay(getTop(), k, event));
+            treeClone.setTop(tailOf(getTop(), k));
+        }
+        if (SplayStats.ENABLED) {
+            SplayStats.operation(SplayStats.Op.RANGE, treeClone.getTop() != null, cellsBefore);
+        }
+        if (event != null) {
+            event.finish("tailSet", k, treeClone.getTop() != null);
         }
+        return treeClone;
     }
 
     /**
      * Extract a splay tree that contains all keys in the current tree that are
-     * greater than or equal to k1 and strictly less than k2.
+     * greater than or equal to k1 and strictly less than k2.  This tree is
+     * splayed on k2, and only the extracted part is then splayed on k1.
      *
      * @param k1  The minimum string key to include.
      * @param k2  The string below which keys should be included.
      * @return The extracted splay tree.
      */
     public SplayFC subSet(String k1, String k2) {
-        SplayFC subTree = headSet(k2);
-        subTree = subTree.tailSet(k1);
-        return subTree;
+        long cellsBefore = SplayStats.ENABLED ? SplayStats.cellsMade() : 0;
+        SlowOperationEvent event = SlowOperationEvent.start();
+        SplayFC treeClone = clone();
+        treeClone.setTop(null);
+        if (getTop() != null) {
+            setTop(splay(getTop(), k2, event));
+            Cell head = headOf(getTop(), k2);
+            if (head != null && k1.compareTo(k2) < 0) {
+                treeClone.setTop(tailOf(splayPath(head, k1), k1));
+            }
+        }
+        if (SplayStats.ENABLED) {
+            SplayStats.operation(SplayStats.Op.RANGE, treeClone.getTop() != null, cellsBefore);
+        }
+        if (event != null) {
+            event.finish("subSet", k2, treeClone.getTop() != null);
+        }
+        return treeClone;
+    }
+
+    /**
+     * Split this tree into the keys strictly less than k and the keys greater
+     * than or equal to k, with a single splay on k which also updates this
+     * tree.  Both halves share all their cells with this tree except at most
+     * one.
+     *
+     * @param k The key to split at.
+     * @return An array holding the lower half then the upper half.
+     */
+    public SplayFC[] split(String k) {
+        SplayFC lower = clone();
+        SplayFC upper = clone();
+        if (getTop() != null) {
+            setTop(splay(getTop(), k));
+            lower.setTop(headOf(getTop(), k));
+            upper.setTop(tailOf(getTop(), k));
+        }
+        return new SplayFC[] {lower, upper};
+    }
+
+    /**
+     * Join two trees where every key in left is less than every key in right.
+     * The left tree is splayed to bring its greatest key to the root, and the
+     * right tree is hung off that; neither input is changed.
+     * <p>
+     *
+     * If right is made of a different kind of cell from left, such as a
+     * plain SplayFC joined to a SizedSplayFC, its keys are first copied into
+     * cells of left's kind, which takes time linear in its size.
+     *
+     * @param left The tree with the smaller keys.
+     * @param right The tree with the larger keys.
+     * @return A new tree holding the keys of both, of the same class as left.
+     * @throws IllegalArgumentException if the keys of the trees overlap
+     */
+    public static SplayFC join(SplayFC left, SplayFC right) throws IllegalArgumentException {
+        SplayFC joined = left.clone();
+        if (left.getTop() != null && right.getTop() != null
+                && lastCell(left.getTop()).key().compareTo(firstCell(right.getTop()).key()) >= 0) {
+            throw new IllegalArgumentException("join requires every key of left to be "
+                    + "less than every key of right");
+        }
+        Cell r = right.getTop();
+        Cell kind = joined.leaf(STRING_MIN);
+        if (r != null && r.getClass() != kind.getClass()) {
+            r = rebuiltCells(r, kind);
+        }
+        joined.setTop(joinCells(left.getTop(), r));
+        return joined;
+    }
+
+    /**
+     * Create a tree holding every key that is in this tree or in other.  Both
+     * trees are left unchanged, and the result reuses whole subtrees of either
+     * wherever the other tree has no keys in their range.
+     * <p>
+     *
+     * If other is made of a different kind of cell, such as a plain SplayFC
+     * given to a SizedSplayFC, its keys are first copied into cells of this
+     * tree's kind, which takes time linear in its size.
+     *
+     * @param other The tree to combine with this one.
+     * @return A new tree of the same class as this one.
+     */
+    public SplayFC union(SplayFC other) {
+        SplayFC result = clone();
+        Cell b = other.getTop();
+        Cell kind = leaf(STRING_MIN);
+        if (b != null && b.getClass() != kind.getClass()) {
+            b = rebuiltCells(b, kind);
+        }
+        result.setTop(unionCells(getTop(), b));
+        return result;
+    }
+
+    /**
+     * Create a tree holding every key that is in both this tree and other.
+     * Both trees are left unchanged.
+     *
+     * @param other The tree to combine with this one.
+     * @return A new tree of the same class as this one.
+     */
+    public SplayFC intersection(SplayFC other) {
+        SplayFC result = clone();
+        result.setTop(intersectionCells(getTop(), other.getTop()));
+        return result;
+    }
+
+    /**
+     * Create a tree holding every key that is in this tree but not in other.
+     * Both trees are left unchanged.
+     *
+     * @param other The tree whose keys are taken away.
+     * @return A new tree of the same class as this one.
+     */
+    public SplayFC difference(SplayFC other) {
+        SplayFC result = clone();
+        result.setTop(differenceCells(getTop(), other.getTop()));
+        return result;
+    }
+
+    /**
+     * Receives the keys that differ between two trees, from diff.
+     */
+    public interface DiffListener {
+
+        /**
+         * @param k A key that is in the other tree but not in this one.
+         */
+        void added(String k);
+
+        /**
+         * @param k A key that is in this tree but not in the other one.
+         */
+        void removed(String k);
+    }
+
+    /**
+     * Report the keys that differ between this tree and other, treating other
+     * as the newer version, in increasing order.  Both trees are walked in
+     * order together, and any subtree that is the very same cell in both is
+     * skipped whole, so for trees derived from each other by clone the cost
+     * depends on how much has changed rather than on their size.  Neither
+     * tree is changed.
+     *
+     * @param other The newer version of the tree.
+     * @param listener Told about every key added or removed in other.
+     */
+    public void diff(SplayFC other, DiffListener listener) {
+        DiffCursor a = new DiffCursor(getTop());
+        DiffCursor b = new DiffCursor(other.getTop());
+        while (!a.isEmpty() && !b.isEmpty()) {
+            Cell ca = a.peek();
+            Cell cb = b.peek();
+            if (!a.peekIsKey() && !b.peekIsKey()) {
+                if (ca == cb) { // shared subtree
+                    a.pop();
+                    b.pop();
+                } else {
+                    // If both subtrees start at the same place, the one with
+                    // the greater root may contain the other; open that one.
+                    int cmp = ca.key().compareTo(cb.key());
+                    if (cmp >= 0) {
+                        a.expand();
+                    }
+                    if (cmp <= 0) {
+                        b.expand();
+                    }
+                }
+            } else if (!a.peekIsKey()) {
+                a.expand();
+            } else if (!b.peekIsKey()) {
+                b.expand();
+            } else {
+                int cmp = ca.key().compareTo(cb.key());
+                if (cmp <= 0) {
+                    a.pop();
+                }
+                if (cmp >= 0) {
+                    b.pop();
+                }
+                if (cmp < 0) {
+                    listener.removed(ca.key());
+                } else if (cmp > 0) {
+                    listener.added(cb.key());
+                }
+            }
+        }
+        while (!a.isEmpty()) {
+            if (a.peekIsKey()) {
+                listener.removed(a.pop().key());
+            } else {
+                a.expand();
+            }
+        }
+        while (!b.isEmpty()) {
+            if (b.peekIsKey()) {
+                listener.added(b.pop().key());
+            } else {
+                b.expand();
+            }
+        }
+    }
+
+    /**
+     * An in-order walk over a tree used by diff.  The stack holds what is
+     * left to visit, the next item on top, where each item is either a whole
+     * subtree or just the key of a cell.
+     */
+    private static class DiffCursor {
+
+        /**
+         * the cells on the stack
+         */
+        private Cell[] cells = new Cell[INITIAL_PATH_LENGTH];
+        /**
+         * whether each item stands for just the key of its cell
+         */
+        private boolean[] keyOnly = new boolean[INITIAL_PATH_LENGTH];
+        /**
+         * the number of items on the stack
+         */
+        private int size = 0;
+
+        /**
+         * @param c The root of the tree to walk, possibly null.
+         */
+        DiffCursor(Cell c) {
+            push(c, false);
+        }
+
+        private void push(Cell c, boolean key) {
+            if (c == null) {
+                return;
+            }
+            if (size == cells.length) {
+                cells = Arrays.copyOf(cells, size * 2);
+                keyOnly = Arrays.copyOf(keyOnly, size * 2);
+            }
+            cells[size] = c;
+            keyOnly[size] = key;
+            size++;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        Cell peek() {
+            return cells[size - 1];
+        }
+
+        boolean peekIsKey() {
+            return keyOnly[size - 1];
+        }
+
+        Cell pop() {
+            Cell c = cells[--size];
+            cells[size] = null;
+            return c;
+        }
+
+        /**
+         * Replace the subtree on top of the stack by its left subtree, its
+         * root's key and its right subtree.
+         */
+        void expand() {
+            Cell c = pop();
+            push(c.rt, false);
+            push(c, true);
+            push(c.lt, false);
+        }
+    }
+
+    /*
+     * The set operations below split one tree around the root key of the
+     * other and recurse on the halves.  They stop as soon as either side is
+     * empty or both sides are the very same cell, which is what lets them
+     * skip shared or untouched subtrees; on reasonably balanced trees they
+     * take O(m log(n/m + 1)) time for trees of m <= n keys.  They recurse
+     * once per level of the tree they follow, so a subtree still left at
+     * SET_DEPTH levels down is rebuilt balanced with balancedCells first;
+     * a long spine, such as sorted inserts leave, then costs one linear
+     * rebuild rather than overflowing the thread stack.
+     */
+
+    /**
+     * the recursion depth at which the set operations rebalance what is left
+     */
+    private static final int SET_DEPTH = 128;
+
+    /**
+     * @param a The root of a tree, possibly null.
+     * @param b The root of a tree, possibly null.
+     * @return The root of a tree holding the keys in a or b.
+     */
+    static Cell unionCells(Cell a, Cell b) {
+        return unionCells(a, b, 0);
+    }
+
+    private static Cell unionCells(Cell a, Cell b, int depth) {
+        if (a == b || b == null) {
+            return a;
+        } else if (a == null) {
+            return b;
+        }
+        if (depth == SET_DEPTH) {
+            a = balancedCells(a);
+        }
+        Cell parts = splitCells(b, a.key());
+        Cell l = unionCells(a.lt, parts.lt, depth + 1);
+        Cell r = unionCells(a.rt, parts.rt, depth + 1);
+        if (l == a.lt && r == a.rt) {
+            return a;
+        }
+        return a.make(a.key(), l, r);
+    }
+
+    /**
+     * @param a The root of a tree, possibly null.
+     * @param b The root of a tree, possibly null.
+     * @return The root of a tree holding the keys in both a and b.
+     */
+    static Cell intersectionCells(Cell a, Cell b) {
+        return intersectionCells(a, b, 0);
+    }
+
+    private static Cell intersectionCells(Cell a, Cell b, int depth) {
+        if (a == b) {
+            return a;
+        } else if (a == null || b == null) {
+            return null;
+        }
+        if (depth == SET_DEPTH) {
+            a = balancedCells(a);
+        }
+        Cell parts = splitCells(b, a.key());
+        Cell l = intersectionCells(a.lt, parts.lt, depth + 1);
+        Cell r = intersectionCells(a.rt, parts.rt, depth + 1);
+        if (parts.key() == null) {
+            return joinCells(l, r);
+        } else if (l == a.lt && r == a.rt) {
+            return a;
+        }
+        return a.make(a.key(), l, r);
+    }
+
+    /**
+     * @param a The root of a tree, possibly null.
+     * @param b The root of a tree, possibly null.
+     * @return The root of a tree holding the keys in a that are not in b.
+     */
+    static Cell differenceCells(Cell a, Cell b) {
+        return differenceCells(a, b, 0);
+    }
+
+    private static Cell differenceCells(Cell a, Cell b, int depth) {
+        if (a == b || a == null) {
+            return null;
+        } else if (b == null) {
+            return a;
+        }
+        if (depth == SET_DEPTH) {
+            b = balancedCells(b);
+        }
+        Cell parts = splitCells(a, b.key());
+        Cell l = differenceCells(parts.lt, b.lt, depth + 1);
+        Cell r = differenceCells(parts.rt, b.rt, depth + 1);
+        return joinCells(l, r);
+    }
+
+    /**
+     * Split a tree around k without splaying, copying only the cells on the
+     * search path for k.
+     *
+     * @param t The root of the tree to split, possibly null.
+     * @param k The key to split at.
+     * @return A carrier cell whose left child is the tree of keys less than k,
+     *         whose right child is the tree of keys greater than k, and whose
+     *         key is k if k was in t, or null otherwise.
+     */
+    static Cell splitCells(Cell t, String k) {
+        Cell[] path = null;
+        boolean[] wentLeft = null;
+        int depth = 0;
+        String found = null;
+        Cell l = null;
+        Cell r = null;
+
+        while (t != null) {
+            int cmp = k.compareTo(t.key());
+            if (cmp == 0) {
+                found = t.key();
+                l = t.lt;
+                r = t.rt;
+                break;
+            }
+            if (path == null) {
+                path = new Cell[INITIAL_PATH_LENGTH];
+                wentLeft = new boolean[INITIAL_PATH_LENGTH];
+            } else if (depth == path.length) {
+                path = Arrays.copyOf(path, depth * 2);
+                wentLeft = Arrays.copyOf(wentLeft, depth * 2);
+            }
+            path[depth] = t;
+            wentLeft[depth] = cmp < 0;
+            depth++;
+            t = cmp < 0 ? t.lt : t.rt;
+        }
+
+        // Rebuild the search path, sorting each cell into one half or the other.
+        while (depth > 0) {
+            depth--;
+            Cell c = path[depth];
+            if (wentLeft[depth]) {
+                r = c.make(c.key(), r, c.rt);
+            } else {
+                l = c.make(c.key(), c.lt, l);
+            }
+        }
+        return cell(found, l, r);
+    }
+
+    /**
+     * @param s The root of a tree that has just been splayed on k.
+     * @param k The key to split at.
+     * @return The tree of keys in s that are less than k, which shares all the
+     *         cells of s except possibly a new root.
+     */
+    static Cell headOf(Cell s, String k) {
+        if (s == null) {
+            return null;
+        } else if (s.key().compareTo(k) < 0) {
+            return s.rt == null ? s : s.make(s.key(), s.lt, null);
+        } else {
+            return s.lt;
+        }
+    }
+
+    /**
+     * @param s The root of a tree that has just been splayed on k.
+     * @param k The key to split at.
+     * @return The tree of keys in s that are greater than or equal to k, which
+     *         shares all the cells of s except possibly a new root.
+     */
+    static Cell tailOf(Cell s, String k) {
+        if (s == null) {
+            return null;
+        } else if (s.key().compareTo(k) < 0) {
+            return s.rt;
+        } else {
+            return s.lt == null ? s : s.make(s.key(), null, s.rt);
+        }
+    }
+
+    /**
+     * @param l The root of a tree, possibly null.
+     * @param r The root of a tree whose keys are all greater than those in l,
+     *          possibly null.
+     * @return The root of a tree holding the keys of both.
+     */
+    static Cell joinCells(Cell l, Cell r) {
+        if (l == null) {
+            return r;
+        } else if (r == null) {
+            return l;
+        }
+        Cell s = splayPath(l, STRING_MAX);
+        return s.make(s.key(), s.lt, r);
+    }
+
+    /**
+     * Build a perfectly balanced tree holding the keys of a tree, in time
+     * linear in its size and without recursing down its spines, however deep.
+     * Each key's cell is reused where it already has the right children, so
+     * leaves and subtrees that are already balanced are shared.
+     *
+     * @param t The root of a tree, possibly null.
+     * @return The root of the balanced tree.
+     */
+    static Cell balancedCells(Cell t) {
+        Cell[] cells = cellsInOrder(t);
+        return balancedCells(cells, 0, cells.length);
+    }
+
+    /**
+     * Copy a tree into a perfectly balanced tree made by kind.make, so that
+     * its cells are all of kind's class.
+     *
+     * @param t The root of a tree, possibly null.
+     * @param kind A cell of the class wanted.
+     * @return The root of the new tree.
+     */
+    static Cell rebuiltCells(Cell t, Cell kind) {
+        Cell[] cells = cellsInOrder(t);
+        return rebuiltCells(cells, 0, cells.length, kind);
+    }
+
+    /**
+     * @param t The root of a tree, possibly null.
+     * @return The cells of the tree in key order, found without recursing.
+     */
+    private static Cell[] cellsInOrder(Cell t) {
+        Cell[] cells = new Cell[INITIAL_PATH_LENGTH];
+        int n = 0;
+        Cell[] stack = new Cell[INITIAL_PATH_LENGTH];
+        int size = 0;
+        Cell c = t;
+        while (c != null || size > 0) {
+            if (c != null) {
+                if (size == stack.length) {
+                    stack = Arrays.copyOf(stack, size * 2);
+                }
+                stack[size++] = c;
+                c = c.lt;
+            } else {
+                c = stack[--size];
+                if (n == cells.length) {
+                    cells = Arrays.copyOf(cells, n * 2);
+                }
+                cells[n++] = c;
+                c = c.rt;
+            }
+        }
+        return Arrays.copyOf(cells, n);
+    }
+
+    /**
+     * @param cells The cells of a tree, in key order.
+     * @param lo The index of the first cell to include.
+     * @param hi One past the index of the last cell to include.
+     * @param kind A cell of the class wanted.
+     * @return The root of a balanced tree of new cells holding the keys of
+     *         cells[lo] to cells[hi - 1], or null if there are none.
+     */
+    private static Cell rebuiltCells(Cell[] cells, int lo, int hi, Cell kind) {
+        if (lo >= hi) {
+            return null;
+        }
+        int mid = (lo + hi) >>> 1;
+        Cell l = rebuiltCells(cells, lo, mid, kind);
+        Cell r = rebuiltCells(cells, mid + 1, hi, kind);
+        return kind.make(cells[mid].key(), l, r);
+    }
+
+    /**
+     * @param cells The cells of a tree, in key order.
+     * @param lo The index of the first cell to include.
+     * @param hi One past the index of the last cell to include.
+     * @return The root of a balanced tree of the keys of cells[lo] to
+     *         cells[hi - 1], or null if there are none.
+     */
+    private static Cell balancedCells(Cell[] cells, int lo, int hi) {
+        if (lo >= hi) {
+            return null;
+        }
+        int mid = (lo + hi) >>> 1;
+        Cell l = balancedCells(cells, lo, mid);
+        Cell r = balancedCells(cells, mid + 1, hi);
+        Cell c = cells[mid];
+        return c.lt == l && c.rt == r ? c : c.make(c.key(), l, r);
     }
 
     /**
@@ -383,9 +1394,167 @@ public class SplayFC implements ISplayFC {
      * @return The created SplayFC object.
      */
     public SplayFC clone() {
-        SplayFC newSplayFC = new SplayFC(getTop());
-        newSplayFC.modCount = this.modCount;
-        return newSplayFC;
+        try {
+            // Copies top and modCount, and keeps the class of subclasses.
+            SplayFC t = (SplayFC) super.clone();
+            t.policy = policy.copy();
+            return t;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Create a Spliterator over the strings in the tree, as they were when it
+     * was created, in order.  It splits by handing off whole subtrees, so
+     * the keys are neither copied nor splayed.
+     *
+     * @return The spliterator.
+     */
+    public Spliterator<String> spliterator() {
+        return new CellSpliterator(top);
+    }
+
+    /**
+     * Create a sequential stream of the strings in the tree, in order, as
+     * they were when the stream was created.
+     *
+     * @return The stream.
+     */
+    public Stream<String> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Create a parallel stream of the strings in the tree, in order, as they
+     * were when the stream was created.  Workers scan separate subtrees.
+     *
+     * @return The stream.
+     */
+    public Stream<String> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * Make an unmodifiable copy of the keys currently in the tree, laid out
+     * for fast lookups.  The tree itself is not changed.
+     *
+     * @return The frozen set of keys.
+     */
+    public FrozenStringSet freeze() {
+        ArrayList<String> all = new ArrayList<String>();
+        Iterator<String> it = snapShotIterator();
+        while (it.hasNext()) {
+            all.add(it.next());
+        }
+        return new FrozenStringSet(all.toArray(new String[all.size()]));
+    }
+
+    /**
+     * Start a batch of changes to a copy of this tree, made in place on
+     * private nodes rather than by copying cells.  This tree is not changed;
+     * call persistent() on the result to get the changed tree.
+     *
+     * @return The transient tree.
+     */
+    public TransientSplayFC asTransient() {
+        return new TransientSplayFC(this);
+    }
+
+    /**
+     * Build a SplayFC from keys given in strictly increasing order.  The tree
+     * is built directly in balanced form, with one cell per key and no
+     * splaying, in time linear in the number of keys.
+     *
+     * @param keys The keys, in strictly increasing order.
+     * @return The new SplayFC.
+     * @throws IllegalArgumentException if the keys are not strictly increasing
+     */
+    public static SplayFC fromSorted(Iterator<String> keys) throws IllegalArgumentException {
+        SplayFC t = new SplayFC();
+        t.addAllSorted(keys);
+        return t;
+    }
+
+    /**
+     * Add keys given in strictly increasing order.  The keys are merged with
+     * the keys already in the tree and the whole tree is rebuilt in balanced
+     * form, in time linear in the size of the result.
+     *
+     * @param keys The keys, in strictly increasing order.
+     * @return true if any of the keys were not already in the tree.
+     * @throws IllegalArgumentException if the keys are not strictly increasing
+     */
+    public boolean addAllSorted(Iterator<String> keys) throws IllegalArgumentException {
+        ArrayList<String> added = new ArrayList<String>();
+        String prev = null;
+        while (keys.hasNext()) {
+            String k = keys.next();
+            if (prev != null && prev.compareTo(k) >= 0) {
+                throw new IllegalArgumentException("keys are not in strictly increasing order: \""
+                        + prev + "\" then \"" + k + "\"");
+            }
+            added.add(k);
+            prev = k;
+        }
+        if (added.isEmpty()) {
+            return false;
+        }
+
+        String[] merged;
+        if (top == null) {
+            merged = added.toArray(new String[added.size()]);
+        } else {
+            // Merge with the existing keys, dropping duplicates.
+            ArrayList<String> all = new ArrayList<String>();
+            Iterator<String> old = snapShotIterator();
+            String o = old.next();
+            int existing = 0;
+            int i = 0;
+            while (o != null || i < added.size()) {
+                int cmp = o == null ? 1 : i == added.size() ? -1 : o.compareTo(added.get(i));
+                if (cmp <= 0) {
+                    all.add(o);
+                    existing++;
+                    o = old.hasNext() ? old.next() : null;
+                    if (cmp == 0) {
+                        i++;
+                    }
+                } else {
+                    all.add(added.get(i++));
+                }
+            }
+            if (all.size() == existing) {
+                return false;
+            }
+            merged = all.toArray(new String[all.size()]);
+        }
+        setTop(build(merged, 0, merged.length));
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Build a balanced tree holding keys[lo] to keys[hi - 1], which must be in
+     * increasing order.  Leaves are made with leaf and the other cells from
+     * one of their children, so subclasses get their own kind of cell.
+     *
+     * @param keys The keys.
+     * @param lo The index of the first key to include.
+     * @param hi One past the index of the last key to include.
+     * @return The root cell of the tree, or null if there are no keys.
+     */
+    private Cell build(String[] keys, int lo, int hi) {
+        if (lo >= hi) {
+            return null;
+        }
+        int mid = (lo + hi) >>> 1;
+        Cell l = build(keys, lo, mid);
+        Cell r = build(keys, mid + 1, hi);
+        if (l == null && r == null) {
+            return leaf(keys[mid]);
+        }
+        return (l != null ? l : r).make(keys[mid], l, r);
     }
 
     /**
@@ -435,33 +1604,54 @@ public class SplayFC implements ISplayFC {
     public class SnapShotIterator implements Iterator<String> {
 
         /**
-         * a cloned SplayFC to iterate over
+         * the cells whose keys are still to be visited, the next one on top.
+         * Each cell's right subtree is visited straight after its key.
          */
-        private SplayFC ssi;
+        private Cell[] stack;
         /**
-         * a cell whose right child node points to the root of ssi
+         * the number of cells on the stack
          */
-        private Cell c;
+        private int size;
 
         /**
-         * creates an instance of the SnapShotIterator
-         * @param sfc the current SplayFC object to be cloned
+         * creates an instance of the SnapShotIterator.  Cells are never modified,
+         * so holding on to the current root is enough to keep the snapshot.
+         * @param sfc the current SplayFC object to take a snapshot of
          */
         public SnapShotIterator(SplayFC sfc) {
-            ssi = sfc.clone();
-            ssi.setTop(ssi.splay(ssi.getTop(), STRING_MIN));
-            c = cell(null, null, ssi.getTop());
+            stack = new Cell[INITIAL_PATH_LENGTH];
+            size = 0;
+            pushLeftSpine(sfc.getTop());
+        }
+
+        /**
+         * pushes c and its chain of left children onto the stack
+         * @param c the root of the subtree to be visited next
+         */
+        private void pushLeftSpine(Cell c) {
+            while (c != null) {
+                if (size == stack.length) {
+                    stack = Arrays.copyOf(stack, size * 2);
+                }
+                stack[size++] = c;
+                c = c.lt;
+            }
         }
 
         /**
-         * prints out the state of SplayFC
-         * @return an ASCII diagram of the state of SplayFC
+         * prints out the keys that are still to be visited
+         * @return an ASCII diagram of the remaining part of the snapshot
          */
         public String toString() {
-            if (ssi.getTop() == null) {
+            if (size == 0) {
                 return "[]\n";
             }
-            return ssi.getTop().toString("", "   ", "   ", " -");
+            // Rebuild the remaining keys as a tree; only done when printing.
+            Cell remaining = null;
+            for (int i = size - 1; i >= 0; i--) {
+                remaining = cell(stack[i].key(), remaining, stack[i].rt);
+            }
+            return remaining.toString("", "   ", "   ", " -");
         }
 
         /**
@@ -470,7 +1660,7 @@ public class SplayFC implements ISplayFC {
          * @return true iff the iterator has more elements
          */
         public boolean hasNext() {
-            return (c.rt != null);
+            return size > 0;
         }
 
         /**
@@ -480,14 +1670,10 @@ public class SplayFC implements ISplayFC {
          */
         public String next() throws NoSuchElementException {
             if (hasNext()) {
-                c = c.rt;
-                String temp = c.key();
-                ssi.remove(c.key());
-                if (ssi.getTop() != null) {
-                    ssi.setTop(ssi.splay(ssi.getTop(), STRING_MIN));
-                }
-                c = cell(null, null, ssi.getTop());
-                return temp;
+                Cell c = stack[--size];
+                stack[size] = null;
+                pushLeftSpine(c.rt);
+                return c.key();
             } else {
                 throw new NoSuchElementException("Reached end of tree, no child to go to.");
             }
@@ -502,22 +1688,35 @@ public class SplayFC implements ISplayFC {
     }
 
     /**
-     * An iterator of SplayFC that updates itself whenever SplayFC is changed.
+     * An iterator of SplayFC that follows the live tree.  Like SnapShotIterator
+     * it keeps a stack of the cells still to be visited, so each step takes
+     * constant amortised time; when the tree has been changed it refills the
+     * stack with a non-splaying search for the keys above the last one it
+     * returned, so it picks up the change at the next call to hasNext.
      */
     public class UpdatingIterator implements Iterator<String> {
 
         /**
-         * a cloned SplayFC to iterate over
+         * the SplayFC being iterated over
          */
-        private SplayFC upi;
+        private SplayFC ori;
         /**
-         * a reference to the original SplayFC
+         * the cells whose keys are still to be visited, the next one on top.
+         * Each cell's right subtree is visited straight after its key.
          */
-        private SplayFC ori;
+        private Cell[] stack = new Cell[INITIAL_PATH_LENGTH];
+        /**
+         * the number of cells on the stack
+         */
+        private int size = 0;
+        /**
+         * the last element returned by next, or null before the first call
+         */
+        private String last = null;
         /**
-         * a cell whose right child node points to the root of ssi
+         * the value of ori's modCount when the stack was filled
          */
-        private Cell c;
+        private int expectedModCount;
         /**
          * keeps track of which string remove() should be deleting
          */
@@ -525,24 +1724,55 @@ public class SplayFC implements ISplayFC {
 
         /**
          * creates an instance of the UpdatingIterator
-         * @param sfc the current SplayFC object to be cloned
+         * @param sfc the SplayFC object to iterate over
          */
         public UpdatingIterator(SplayFC sfc) {
             ori = sfc;
-            upi = sfc.clone();
-            upi.setTop(upi.splay(upi.getTop(), STRING_MIN));
-            c = cell(null, null, upi.getTop());
+            expectedModCount = sfc.modCount;
+            refill();
         }
 
         /**
-         * prints out the state of SplayFC
-         * @return an ASCII diagram of the state of SplayFC
+         * fills the stack with the cells of the live tree whose keys are
+         * greater than last, as they would be after visiting last
+         */
+        private void refill() {
+            while (size > 0) {
+                stack[--size] = null;
+            }
+            Cell c = ori.getTop();
+            while (c != null) {
+                if (last == null || last.compareTo(c.key()) < 0) {
+                    push(c);
+                    c = c.lt;
+                } else {
+                    c = c.rt;
+                }
+            }
+        }
+
+        /**
+         * pushes a cell onto the stack
+         * @param c the cell
+         */
+        private void push(Cell c) {
+            if (size == stack.length) {
+                stack = Arrays.copyOf(stack, size * 2);
+            }
+            stack[size++] = c;
+        }
+
+        /**
+         * prints out the keys that are still to be visited
+         * @return an ASCII diagram of the remaining part of the tree
          */
         public String toString() {
-            if (upi.getTop() == null) {
+            // Only done when printing, so the copying does not matter.
+            Cell remaining = last == null ? ori.getTop() : splitCells(ori.getTop(), last).rt;
+            if (remaining == null) {
                 return "[]\n";
             }
-            return upi.getTop().toString("", "   ", "   ", " -");
+            return remaining.toString("", "   ", "   ", " -");
         }
 
         /**
@@ -551,44 +1781,40 @@ public class SplayFC implements ISplayFC {
          * @return true iff the iterator has more elements
          */
         public boolean hasNext() {
-            if (upi.modCount != ori.modCount) {
-                upi = ori.clone().tailSet(upi.getTop().key());
-                c = cell(null, null, upi.getTop());
+            if (expectedModCount != ori.modCount) {
+                IteratorRebuildEvent event = IteratorRebuildEvent.start(last);
+                expectedModCount = ori.modCount;
+                refill();
+                if (event != null) {
+                    event.commit();
+                }
             }
-            return (c.rt != null);
+            return size > 0;
         }
 
         /**
          * returns the next element in the iteration
          * @return the next element in the iteration
          * @throws NoSuchElementException iteration has no more elements
-         * @throws ConcurrentModificationException remove() has been called to
-         *  SplayFC since the most recent call to hasNext()
+         * @throws ConcurrentModificationException the SplayFC has been changed
+         *  since the most recent call to hasNext()
          */
         public String next() throws NoSuchElementException, ConcurrentModificationException {
-            if (upi.modCount != ori.modCount) {
-                throw new ConcurrentModificationException();
+            if (expectedModCount != ori.modCount) {
+                throw new ConcurrentModificationException("the tree has been "
+                        + "changed since the most recent call to hasNext()");
             }
-            if (hasNext()) {
-                if (upi.modCount == ori.modCount) {
-                    c = c.rt;
-                    String temp = c.key();
-                    toBeRemoved = temp;
-                    upi.remove(c.key());
-                    // to counter the remove() above
-                    upi.modCount++;
-                    if (upi.getTop() != null) {
-                        upi.setTop(upi.splay(upi.getTop(), STRING_MIN));
-                    }
-                    c = cell(null, null, upi.getTop());
-                    return temp;
-                } else {
-                    throw new ConcurrentModificationException("remove() has been "
-                            + "called since the most recent call to hasNext()");
-                }
-            } else {
+            if (!hasNext()) {
                 throw new NoSuchElementException("Reached end of tree, no child to go to.");
             }
+            Cell c = stack[--size];
+            stack[size] = null;
+            for (Cell d = c.rt; d != null; d = d.lt) {
+                push(d);
+            }
+            last = c.key();
+            toBeRemoved = last;
+            return last;
         }
 
         /**
@@ -598,9 +1824,10 @@ public class SplayFC implements ISplayFC {
          */
         public void remove() throws IllegalStateException {
             if (toBeRemoved != null) {
-                ori.remove(toBeRemoved);
+                if (ori.remove(toBeRemoved)) {
+                    expectedModCount++;
+                }
                 toBeRemoved = null;
-                upi.modCount--;
             } else {
                 throw new IllegalStateException("next() has not yet been called,"
                         + "or remove() has already been called after the last"
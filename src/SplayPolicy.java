@@ -0,0 +1,225 @@
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides how SplayFC.contains reshapes the tree after a lookup.
+ * <p>
+ *
+ * Splaying on every read adapts the tree to skewed access, but it copies
+ * the whole access path each time, which is wasted work when accesses are
+ * spread evenly.  A policy lets contains splay fully, semi-splay, or leave
+ * the tree as it is and allocate nothing.  The answer contains returns is
+ * the same under every policy.  add, remove and the range operations
+ * always splay, since they rely on the key being at the root.
+ *
+ * @version 1.1
+ */
+public abstract class SplayPolicy {
+
+    /**
+     * What contains does to the tree after a lookup.
+     */
+    public enum Action {
+        /**
+         * leave the tree unchanged
+         */
+        NONE,
+        /**
+         * semi-splay: rotate each pair of cells on the access path once,
+         * roughly halving the depth of the path without bringing the key all
+         * the way to the root
+         */
+        SEMI_SPLAY,
+        /**
+         * splay the key to the root, as SplayFC.splay does
+         */
+        SPLAY
+    }
+
+    /**
+     * Always splay, which is how SplayFC has always behaved.
+     */
+    public static final SplayPolicy ALWAYS = new SplayPolicy() {
+        public Action onAccess(int depth, Cell root) {
+            return Action.SPLAY;
+        }
+
+        public boolean needsDepth() {
+            return false;
+        }
+
+        public String toString() {
+            return "always";
+        }
+    };
+
+    /**
+     * Always semi-splay.
+     */
+    public static final SplayPolicy SEMI = new SplayPolicy() {
+        public Action onAccess(int depth, Cell root) {
+            return Action.SEMI_SPLAY;
+        }
+
+        public boolean needsDepth() {
+            return false;
+        }
+
+        public String toString() {
+            return "semi";
+        }
+    };
+
+    /**
+     * Never change the tree on a lookup.
+     */
+    public static final SplayPolicy NEVER = new SplayPolicy() {
+        public Action onAccess(int depth, Cell root) {
+            return Action.NONE;
+        }
+
+        public boolean needsDepth() {
+            return false;
+        }
+
+        public String toString() {
+            return "never";
+        }
+    };
+
+    /**
+     * Decide what to do after looking up a key.
+     *
+     * @param depth The depth at which the search for the key ended, with the
+     *          root at depth 0, or -1 if needsDepth() is false.
+     * @param root The root of the tree before the lookup; non-null, except
+     *          that a tree keeping no cells, such as ArenaSplayFC, passes
+     *          null when needsDepth() is false.
+     * @return What contains should do to the tree.
+     */
+    public abstract Action onAccess(int depth, Cell root);
+
+    /**
+     * Whether onAccess needs the depth of the search.  If not, contains can
+     * ask before searching and skip a separate search when splaying fully.
+     *
+     * @return true if onAccess uses its depth argument.
+     */
+    public boolean needsDepth() {
+        return true;
+    }
+
+    /**
+     * Get a policy to be used by one tree.  SplayFC.setSplayPolicy and
+     * SplayFC.clone call this, so a policy that keeps state about the tree
+     * it serves should return a fresh copy; the others may return
+     * themselves.
+     *
+     * @return This policy, or a copy of it with no state.
+     */
+    protected SplayPolicy copy() {
+        return this;
+    }
+
+    /**
+     * Splay with probability p on each lookup and otherwise leave the tree
+     * unchanged.  Frequently used keys still drift towards the root, while
+     * on average only a fraction p of lookups allocate.
+     *
+     * @param p The probability of splaying, from 0 to 1.
+     * @return The policy.
+     * @throws IllegalArgumentException if p is not between 0 and 1
+     */
+    public static SplayPolicy probabilistic(final double p) throws IllegalArgumentException {
+        if (!(p >= 0 && p <= 1)) {
+            throw new IllegalArgumentException("probability must be between 0 and 1");
+        }
+        return new SplayPolicy() {
+            public Action onAccess(int depth, Cell root) {
+                return ThreadLocalRandom.current().nextDouble() < p ? Action.SPLAY : Action.NONE;
+            }
+
+            public boolean needsDepth() {
+                return false;
+            }
+
+            public String toString() {
+                return "p=" + p;
+            }
+        };
+    }
+
+    /**
+     * Splay only when a lookup goes deeper than c * log2(size), so that the
+     * tree is reshaped only when it has become badly unbalanced along the
+     * path being used.
+     * <p>
+     *
+     * The size is exact for trees of SizedCell.  Otherwise it is estimated
+     * by sampling random paths, and the estimate is reused for a number of
+     * lookups in between; it only has to be roughly right.  Each tree, and
+     * each clone of it, keeps its own estimate.
+     *
+     * @param c The multiple of log2(size) beyond which to splay; at least 1.
+     * @return The policy.
+     * @throws IllegalArgumentException if c is less than 1
+     */
+    public static SplayPolicy depthTriggered(double c) throws IllegalArgumentException {
+        if (!(c >= 1)) {
+            throw new IllegalArgumentException("c must be at least 1");
+        }
+        return new DepthTriggered(c);
+    }
+
+    /**
+     * The policy made by depthTriggered.
+     */
+    private static class DepthTriggered extends SplayPolicy {
+
+        /**
+         * how many lookups an estimated size is reused for
+         */
+        private static final int REESTIMATE_EVERY = 1024;
+
+        /**
+         * the multiple of log2(size) beyond which to splay
+         */
+        private final double c;
+        /**
+         * the last estimated size, for trees without sizes
+         */
+        private volatile double estimate = -1;
+        /**
+         * lookups since the size was last estimated; races only make the
+         * estimate a little more or less fresh
+         */
+        private int uses = 0;
+
+        DepthTriggered(double c) {
+            this.c = c;
+        }
+
+        public Action onAccess(int depth, Cell root) {
+            double size;
+            if (root instanceof SizedCell) {
+                size = SizedCell.size(root);
+            } else {
+                size = estimate;
+                if (size < 0 || ++uses >= REESTIMATE_EVERY) {
+                    size = CellSpliterator.estimate(root);
+                    estimate = size;
+                    uses = 0;
+                }
+            }
+            double limit = c * Math.log(size + 1) / Math.log(2);
+            return depth > limit ? Action.SPLAY : Action.NONE;
+        }
+
+        protected SplayPolicy copy() {
+            return new DepthTriggered(c);
+        }
+
+        public String toString() {
+            return "depth=" + c;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Optional counters for the hot paths of SplayFC and ConcurrentSplayFC: how
+ * deep splays go, how many zig, zig-zig and zig-zag steps they take, and for
+ * each kind of operation how many calls there were, how many did not find
+ * their key and how many new cells they made.
+ * <p>
+ *
+ * Statistics are off unless the JVM is started with -Dsplayfc.stats=true.
+ * Every hook is guarded by the static final ENABLED flag, which the JIT
+ * compiler treats as a constant, so when statistics are off the hooks are
+ * compiled away entirely.  When they are on, the figures can be read with
+ * snapshot() or over JMX.
+ *
+ * @version 1.1
+ */
+public class SplayStats implements SplayStatsMBean {
+
+    /**
+     * whether statistics are being collected; fixed when the JVM starts
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("splayfc.stats");
+
+    /**
+     * The kinds of operation that are counted.
+     */
+    public enum Op {
+        ADD, REMOVE, CONTAINS, RANGE
+    }
+
+    /**
+     * the number of depth histogram buckets; bucket b counts splays that
+     * reached a depth d with 2^(b-1) <= d < 2^b, and bucket 0 counts d = 0
+     */
+    public static final int DEPTH_BUCKETS = 32;
+
+    private static final LongAdder zigs = new LongAdder();
+    private static final LongAdder zigZigs = new LongAdder();
+    private static final LongAdder zigZags = new LongAdder();
+    private static final LongAdder[] depths = adders(DEPTH_BUCKETS);
+    private static final LongAdder[] calls = adders(Op.values().length);
+    private static final LongAdder[] misses = adders(Op.values().length);
+    private static final LongAdder[] cells = adders(Op.values().length);
+    /**
+     * the number of cells made so far by each thread
+     */
+    private static final ThreadLocal<long[]> made = new ThreadLocal<long[]>() {
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    static {
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new SplayStats(),
+                        new ObjectName("SplayFC:type=SplayStats"));
+            } catch (JMException e) {
+                // Statistics are still available through snapshot().
+            }
+        }
+    }
+
+    private static LongAdder[] adders(int n) {
+        LongAdder[] a = new LongAdder[n];
+        for (int i = 0; i < n; i++) {
+            a[i] = new LongAdder();
+        }
+        return a;
+    }
+
+    /* -- Begin hooks, to be called only when ENABLED. -- */
+
+    /**
+     * Record that a cell has been made by the current thread.
+     */
+    static void cellMade() {
+        made.get()[0]++;
+    }
+
+    /**
+     * @return The number of cells the current thread has made so far.
+     */
+    static long cellsMade() {
+        return made.get()[0];
+    }
+
+    /**
+     * Record one splay.
+     * @param depth The depth of the cell that was brought to the root.
+     * @param zigZigSteps The number of zig-zig steps taken.
+     * @param zigZagSteps The number of zig-zag steps taken.
+     * @param zigSteps The number of zig steps taken (0 or 1).
+     */
+    static void splayed(int depth, int zigZigSteps, int zigZagSteps, int zigSteps) {
+        depths[depth == 0 ? 0 : Math.min(DEPTH_BUCKETS - 1, 32 - Integer.numberOfLeadingZeros(depth))]
+                .increment();
+        zigZigs.add(zigZigSteps);
+        zigZags.add(zigZagSteps);
+        zigs.add(zigSteps);
+    }
+
+    /**
+     * Record one operation.
+     * @param op The kind of operation.
+     * @param found Whether the operation found the key it was looking for.
+     * @param cellsBefore The value of cellsMade() when the operation began.
+     */
+    static void operation(Op op, boolean found, long cellsBefore) {
+        calls[op.ordinal()].increment();
+        if (!found) {
+            misses[op.ordinal()].increment();
+        }
+        cells[op.ordinal()].add(cellsMade() - cellsBefore);
+    }
+
+    /* -- End hooks. -- */
+
+    /**
+     * Take a copy of the statistics so far.  Counters are updated without
+     * locking, so a snapshot taken while operations are running may be
+     * slightly out of step between counters.
+     *
+     * @return The statistics.
+     */
+    public static Snapshot snapshot() {
+        return new Snapshot();
+    }
+
+    /**
+     * Set every counter back to zero.
+     */
+    public static void resetAll() {
+        zigs.reset();
+        zigZigs.reset();
+        zigZags.reset();
+        for (LongAdder[] group : new LongAdder[][] {depths, calls, misses, cells}) {
+            for (LongAdder a : group) {
+                a.reset();
+            }
+        }
+    }
+
+    private static long[] sums(LongAdder[] a) {
+        long[] s = new long[a.length];
+        for (int i = 0; i < a.length; i++) {
+            s[i] = a[i].sum();
+        }
+        return s;
+    }
+
+    /**
+     * A copy of the statistics at one moment.
+     */
+    public static class Snapshot {
+
+        private final long zigSteps = zigs.sum();
+        private final long zigZigSteps = zigZigs.sum();
+        private final long zigZagSteps = zigZags.sum();
+        private final long[] depthHistogram = sums(depths);
+        private final long[] callCounts = sums(calls);
+        private final long[] missCounts = sums(misses);
+        private final long[] cellCounts = sums(cells);
+
+        private Snapshot() {
+        }
+
+        public long zigSteps() {
+            return zigSteps;
+        }
+
+        public long zigZigSteps() {
+            return zigZigSteps;
+        }
+
+        public long zigZagSteps() {
+            return zigZagSteps;
+        }
+
+        /**
+         * @return Splay counts by depth; see DEPTH_BUCKETS.
+         */
+        public long[] depthHistogram() {
+            return depthHistogram.clone();
+        }
+
+        public long calls(Op op) {
+            return callCounts[op.ordinal()];
+        }
+
+        /**
+         * @param op The kind of operation.
+         * @return How many calls did not find their key.
+         */
+        public long misses(Op op) {
+            return missCounts[op.ordinal()];
+        }
+
+        public long cellsAllocated(Op op) {
+            return cellCounts[op.ordinal()];
+        }
+
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("zig ").append(zigSteps).append(", zig-zig ").append(zigZigSteps)
+                    .append(", zig-zag ").append(zigZagSteps).append('\n');
+            for (Op op : Op.values()) {
+                long n = calls(op);
+                sb.append(op).append(": ").append(n).append(" calls, ")
+                        .append(misses(op)).append(" misses, ")
+                        .append(cellsAllocated(op)).append(" cells");
+                if (n > 0) {
+                    sb.append(" (").append(cellsAllocated(op) / (double) n).append(" per call)");
+                }
+                sb.append('\n');
+            }
+            sb.append("depth");
+            for (int b = 0; b < DEPTH_BUCKETS; b++) {
+                if (depthHistogram[b] > 0) {
+                    sb.append(' ').append(b == 0 ? 0 : 1 << (b - 1)).append("+: ").append(depthHistogram[b]);
+                }
+            }
+            return sb.append('\n').toString();
+        }
+    }
+
+    /* -- Begin SplayStatsMBean. -- */
+
+    public long getZigSteps() {
+        return zigs.sum();
+    }
+
+    public long getZigZigSteps() {
+        return zigZigs.sum();
+    }
+
+    public long getZigZagSteps() {
+        return zigZags.sum();
+    }
+
+    public long[] getDepthHistogram() {
+        return sums(depths);
+    }
+
+    public String[] getOperations() {
+        Op[] ops = Op.values();
+        String[] names = new String[ops.length];
+        for (int i = 0; i < ops.length; i++) {
+            names[i] = ops[i].name();
+        }
+        return names;
+    }
+
+    public long[] getCalls() {
+        return sums(calls);
+    }
+
+    public long[] getMisses() {
+        return sums(misses);
+    }
+
+    public long[] getCellsAllocated() {
+        return sums(cells);
+    }
+
+    public void reset() {
+        resetAll();
+    }
+
+    /* -- End SplayStatsMBean. -- */
+}
@@ -0,0 +1,26 @@
+/**
+ * The JMX view of SplayStats, registered as "SplayFC:type=SplayStats" when
+ * statistics are enabled.  See SplayStats for what each figure means.
+ *
+ * @version 1.1
+ */
+public interface SplayStatsMBean {
+
+	public long getZigSteps();
+
+	public long getZigZigSteps();
+
+	public long getZigZagSteps();
+
+	public long[] getDepthHistogram();
+
+	public String[] getOperations();
+
+	public long[] getCalls();
+
+	public long[] getMisses();
+
+	public long[] getCellsAllocated();
+
+	public void reset();
+}
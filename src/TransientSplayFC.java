@@ -0,0 +1,371 @@
+import java.util.Arrays;
+
+/**
+ * A splay tree of strings for making a batch of changes to a SplayFC
+ * cheaply, in the style of Clojure's transients.
+ * <p>
+ *
+ * SplayFC copies every cell on the access path each time it changes, since
+ * cells cannot be modified.  A TransientSplayFC instead copies each cell it
+ * touches once, into a private mutable node, and from then on splays by
+ * relinking its nodes in place.  Subtrees it never touches stay as the
+ * original cells.  persistent() turns the nodes back into cells, sharing
+ * everything that was not touched, and returns a new SplayFC; the SplayFC the
+ * transient was made from, and any clones of it, never see the batch in
+ * progress.
+ * <p>
+ *
+ * Splaying follows exactly the same scheme as SplayFC, so a batch produces
+ * the same tree as making the same calls on a SplayFC, except that adding a
+ * key that is already present leaves the tree splayed on it.  A transient is
+ * for use by one thread, and cannot be used after persistent() has been
+ * called.
+ *
+ * @version 1.1
+ */
+public class TransientSplayFC {
+
+    /**
+     * A mutable tree node.  Until it is thawed, a node stands for a whole
+     * untouched subtree of cells.
+     */
+    private static final class Node {
+
+        /**
+         * the untouched subtree this node stands for, or null once thawed
+         */
+        Cell frozen;
+        /**
+         * the cell this node was thawed from, or null for a new key
+         */
+        Cell source;
+        String key;
+        Node lt;
+        Node rt;
+    }
+
+    /**
+     * the steps recorded by splay while walking down the tree
+     */
+    private static final byte LEFT_ZIG_ZIG = 0;
+    private static final byte LEFT_ZIG_ZAG = 1;
+    private static final byte RIGHT_ZIG_ZIG = 2;
+    private static final byte RIGHT_ZIG_ZAG = 3;
+
+    /**
+     * a clone of the SplayFC this transient was made from
+     */
+    private final SplayFC owner;
+    /**
+     * the root of the tree
+     */
+    private Node root;
+    /**
+     * a cell of the right kind for making new cells, or null if not yet known
+     */
+    private Cell proto;
+    /**
+     * whether persistent() has been called
+     */
+    private boolean done = false;
+    /**
+     * the nodes on the path walked down by splay, reused between calls
+     */
+    private Node[] path = new Node[32];
+    /**
+     * the step taken at each node on the path
+     */
+    private byte[] steps = new byte[32];
+
+    /**
+     * Constructs a TransientSplayFC holding the keys of a SplayFC.
+     * @param source the SplayFC to start from; it is not changed
+     */
+    TransientSplayFC(SplayFC source) {
+        owner = source.clone();
+        proto = owner.getTop();
+        root = wrap(proto);
+    }
+
+    /**
+     * @param c A subtree, possibly null.
+     * @return An unthawed node standing for c, or null if c is null.
+     */
+    private static Node wrap(Cell c) {
+        if (c == null) {
+            return null;
+        }
+        Node n = new Node();
+        n.frozen = c;
+        return n;
+    }
+
+    /**
+     * Copy the root cell of the subtree n stands for into n, if not already
+     * done, so that n can be changed.
+     * @param n The node to thaw.
+     */
+    private static void thaw(Node n) {
+        Cell c = n.frozen;
+        if (c != null) {
+            n.source = c;
+            n.key = c.key();
+            n.lt = wrap(c.lt);
+            n.rt = wrap(c.rt);
+            n.frozen = null;
+        }
+    }
+
+    private void checkActive() {
+        if (done) {
+            throw new IllegalStateException("persistent() has already been called");
+        }
+    }
+
+    /**
+     * Splay the tree with root c in place, exactly as SplayFC.splay would,
+     * thawing the nodes on the access path.
+     *
+     * @param c The non-null root of the tree to splay.
+     * @param k The key for which a "nearest" key is moved to the root.
+     * @return The new root.
+     */
+    private Node splay(Node c, String k) {
+        int depth = 0;
+        Node s;
+
+        // Walk down two levels at a time until a zig step or the nearest key.
+        while (true) {
+            thaw(c);
+            int compareToCKey = k.compareTo(c.key);
+            Node next;
+            byte step;
+
+            if (compareToCKey < 0 && c.lt != null) { // Search left
+                Node p = c.lt;
+                thaw(p);
+                int compareToLtKey = k.compareTo(p.key);
+
+                if (compareToLtKey < 0 && p.lt != null) { // left zig-zig step
+                    step = LEFT_ZIG_ZIG;
+                    next = p.lt;
+                } else if (compareToLtKey > 0 && p.rt != null) { // left zig-zag step
+                    step = LEFT_ZIG_ZAG;
+                    next = p.rt;
+                } else { // left zig step
+                    c.lt = p.rt;
+                    p.rt = c;
+                    s = p;
+                    break;
+                }
+            } else if (compareToCKey > 0 && c.rt != null) { // Search right
+                Node p = c.rt;
+                thaw(p);
+                int compareToRtKey = k.compareTo(p.key);
+
+                if (compareToRtKey > 0 && p.rt != null) { // right zig-zig step
+                    step = RIGHT_ZIG_ZIG;
+                    next = p.rt;
+                } else if (compareToRtKey < 0 && p.lt != null) { // right zig-zag step
+                    step = RIGHT_ZIG_ZAG;
+                    next = p.lt;
+                } else { // right zig step
+                    c.rt = p.lt;
+                    p.lt = c;
+                    s = p;
+                    break;
+                }
+            } else {
+                s = c;
+                break;
+            }
+
+            if (depth == path.length) {
+                path = Arrays.copyOf(path, depth * 2);
+                steps = Arrays.copyOf(steps, depth * 2);
+            }
+            path[depth] = c;
+            steps[depth] = step;
+            depth++;
+            c = next;
+        }
+
+        // Replay the recorded steps, deepest first, relinking around s.
+        while (depth > 0) {
+            depth--;
+            c = path[depth];
+            path[depth] = null;
+            switch (steps[depth]) {
+                case LEFT_ZIG_ZIG: {
+                    Node p = c.lt;
+                    c.lt = p.rt;
+                    p.lt = s.rt;
+                    p.rt = c;
+                    s.rt = p;
+                    break;
+                }
+                case LEFT_ZIG_ZAG: {
+                    Node p = c.lt;
+                    p.rt = s.lt;
+                    c.lt = s.rt;
+                    s.lt = p;
+                    s.rt = c;
+                    break;
+                }
+                case RIGHT_ZIG_ZIG: {
+                    Node p = c.rt;
+                    c.rt = p.lt;
+                    p.lt = c;
+                    p.rt = s.lt;
+                    s.lt = p;
+                    break;
+                }
+                default: { // RIGHT_ZIG_ZAG
+                    Node p = c.rt;
+                    p.lt = s.rt;
+                    c.rt = s.lt;
+                    s.lt = c;
+                    s.rt = p;
+                    break;
+                }
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Insert a specified string key into the tree, as SplayFC.add does.
+     *
+     * @param k The string key to insert.
+     * @return true if k was not already in the tree.
+     * @throws IllegalStateException if persistent() has been called
+     */
+    public boolean add(String k) throws IllegalStateException {
+        checkActive();
+        Node n = new Node();
+        n.key = k;
+        if (root != null) {
+            Node s = splay(root, k);
+            if (s.key.equals(k)) { // checks if its already in the tree
+                root = s;
+                return false;
+            }
+            if (k.compareTo(s.key) < 0) {
+                n.lt = s.lt;
+                s.lt = null;
+                n.rt = s;
+            } else {
+                n.rt = s.rt;
+                s.rt = null;
+                n.lt = s;
+            }
+        }
+        root = n;
+        return true;
+    }
+
+    /**
+     * Remove a specified string from the tree, as SplayFC.remove does.
+     *
+     * @param k The string to remove.
+     * @return true if k was in the tree.
+     * @throws IllegalStateException if persistent() has been called
+     */
+    public boolean remove(String k) throws IllegalStateException {
+        checkActive();
+        if (root == null) {
+            return false;
+        }
+        Node s = splay(root, k);
+        if (!s.key.equals(k)) {
+            root = s;
+            return false;
+        }
+        if (s.lt == null) {
+            root = s.rt;
+        } else if (s.rt == null) {
+            root = s.lt;
+        } else {
+            Node l = splay(s.lt, SplayFC.STRING_MAX);
+            l.rt = s.rt;
+            root = l;
+        }
+        return true;
+    }
+
+    /**
+     * Check whether a string k is in the tree, splaying on k as
+     * SplayFC.contains does.
+     *
+     * @param k The key string to look for.
+     * @return true if k is included in the tree.
+     * @throws IllegalStateException if persistent() has been called
+     */
+    public boolean contains(String k) throws IllegalStateException {
+        checkActive();
+        if (root == null) {
+            return false;
+        }
+        root = splay(root, k);
+        return root.key.equals(k);
+    }
+
+    /**
+     * End the batch, turning the tree back into immutable cells.  Cells that
+     * were never touched are shared, as is any touched cell whose children
+     * are unchanged.  The transient cannot be used afterwards.
+     *
+     * @return A new SplayFC, of the same class as the one this transient was
+     *         made from, holding the keys of the tree.
+     * @throws IllegalStateException if persistent() has already been called
+     */
+    public SplayFC persistent() throws IllegalStateException {
+        checkActive();
+        done = true;
+
+        // List the thawed nodes so that every node comes before its children,
+        // then freeze them in reverse, children first.  This uses no
+        // recursion, however deep the tree.
+        Node[] order = new Node[32];
+        int n = 0;
+        Node[] stack = new Node[32];
+        int size = 0;
+        if (root != null && root.frozen == null) {
+            stack[size++] = root;
+        }
+        while (size > 0) {
+            Node x = stack[--size];
+            if (n == order.length) {
+                order = Arrays.copyOf(order, n * 2);
+            }
+            order[n++] = x;
+            if (size + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            if (x.lt != null && x.lt.frozen == null) {
+                stack[size++] = x.lt;
+            }
+            if (x.rt != null && x.rt.frozen == null) {
+                stack[size++] = x.rt;
+            }
+        }
+        while (n > 0) {
+            Node x = order[--n];
+            Cell l = x.lt == null ? null : x.lt.frozen;
+            Cell r = x.rt == null ? null : x.rt.frozen;
+            if (x.source != null && x.source.lt == l && x.source.rt == r) {
+                x.frozen = x.source;
+            } else {
+                if (proto == null) {
+                    proto = owner.leaf(x.key);
+                }
+                x.frozen = (x.source != null ? x.source : proto).make(x.key, l, r);
+            }
+        }
+
+        SplayFC result = owner;
+        result.setTop(root == null ? null : root.frozen);
+        root = null;
+        return result;
+    }
+}
@@ -0,0 +1,337 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A SplayFC that remembers its past: each commit records the current root as
+ * a numbered, timestamped version that can be read later.
+ * <p>
+ *
+ * Recording a version costs only a reference to the root, since cells are
+ * never changed and the versions share every cell they have in common.
+ * Versions are read through Version objects, which never splay and so never
+ * change, and which any number of threads may read at once.  A
+ * RetentionPolicy drops old versions after each commit, letting the cells
+ * only they reach be garbage collected.
+ * <p>
+ *
+ * Like SplayFC, the tree itself is not thread safe.  Its clones, and the
+ * trees extracted by headSet, tailSet and subSet, are plain SplayFCs with no
+ * history.
+ *
+ * @version 1.1
+ */
+public class VersionedSplayFC extends SplayFC {
+
+    /**
+     * A committed version of the tree, which can be read but not changed.
+     */
+    public static final class Version implements Iterable<String> {
+
+        /**
+         * the version number
+         */
+        private final long number;
+        /**
+         * when the version was committed, in milliseconds since the epoch
+         */
+        private final long time;
+        /**
+         * the root of the tree as it was
+         */
+        private final Cell root;
+
+        /**
+         * Constructs a Version.
+         */
+        private Version(long number, long time, Cell root) {
+            this.number = number;
+            this.time = time;
+            this.root = root;
+        }
+
+        /**
+         * @return The version number.  Each commit has a higher number than
+         *         the one before.
+         */
+        public long number() {
+            return number;
+        }
+
+        /**
+         * @return When the version was committed, in milliseconds since the
+         *         epoch.
+         */
+        public long time() {
+            return time;
+        }
+
+        /**
+         * @return The top cell of the tree as it was.
+         */
+        public Cell getTop() {
+            return root;
+        }
+
+        /**
+         * @param k The key string to look for.
+         * @return true if k was in the tree.
+         */
+        public boolean contains(String k) {
+            return findCell(root, k) != null;
+        }
+
+        /**
+         * @param k A key.
+         * @return The greatest key less than or equal to k, or null if none.
+         */
+        public String floor(String k) {
+            Cell c = floorCell(root, k);
+            return c == null ? null : c.key();
+        }
+
+        /**
+         * @param k A key.
+         * @return The least key greater than or equal to k, or null if none.
+         */
+        public String ceiling(String k) {
+            Cell c = ceilingCell(root, k);
+            return c == null ? null : c.key();
+        }
+
+        /**
+         * @return The least key, or null if the tree was empty.
+         */
+        public String first() {
+            Cell c = firstCell(root);
+            return c == null ? null : c.key();
+        }
+
+        /**
+         * @return The greatest key, or null if the tree was empty.
+         */
+        public String last() {
+            Cell c = lastCell(root);
+            return c == null ? null : c.key();
+        }
+
+        /**
+         * @return An iterator over the keys in order, whose remove throws
+         *         UnsupportedOperationException.
+         */
+        public Iterator<String> iterator() {
+            return toSplayFC().snapShotIterator();
+        }
+
+        /**
+         * @return A spliterator over the keys in order.
+         */
+        public Spliterator<String> spliterator() {
+            return new CellSpliterator(root);
+        }
+
+        /**
+         * @return A sequential stream of the keys in order.
+         */
+        public Stream<String> stream() {
+            return StreamSupport.stream(spliterator(), false);
+        }
+
+        /**
+         * Start a new tree from this version.  Like clone, this takes
+         * constant time, and the version is not affected by changes to it.
+         *
+         * @return A SplayFC holding the keys of this version.
+         */
+        public SplayFC toSplayFC() {
+            return new SplayFC(root);
+        }
+
+        public String toString() {
+            return "version " + number + " at " + time;
+        }
+    }
+
+    /**
+     * the versions kept, oldest first
+     */
+    private final ArrayList<Version> history = new ArrayList<Version>();
+    /**
+     * the number the next commit gets
+     */
+    private long nextVersion = 1;
+    /**
+     * decides which versions are kept
+     */
+    private RetentionPolicy retention = RetentionPolicy.KEEP_ALL;
+
+    /**
+     * Constructs a VersionedSplayFC with a null root and no versions.
+     */
+    public VersionedSplayFC() {
+        super();
+    }
+
+    /**
+     * Constructs a VersionedSplayFC with the specified cell as root and no
+     * versions.
+     * @param c the cell to be made root
+     */
+    public VersionedSplayFC(Cell c) {
+        super(c);
+    }
+
+    /**
+     * Record the tree as it is now as a new version, timestamped with the
+     * current time.
+     *
+     * @return The version.
+     */
+    public Version commit() {
+        long now = System.currentTimeMillis();
+        // Keep timestamps in order even if the clock is set back.
+        return commit(history.isEmpty() ? now : Math.max(now, history.get(history.size() - 1).time));
+    }
+
+    /**
+     * Record the tree as it is now as a new version with a given timestamp.
+     *
+     * @param time The time of the version, in milliseconds since the epoch.
+     * @return The version.
+     * @throws IllegalArgumentException if time is earlier than the last
+     *         commit's
+     */
+    public Version commit(long time) throws IllegalArgumentException {
+        if (!history.isEmpty() && time < history.get(history.size() - 1).time) {
+            throw new IllegalArgumentException("commit at " + time + " is earlier than the last one");
+        }
+        Version v = new Version(nextVersion++, time, getTop());
+        history.add(v);
+        prune();
+        return v;
+    }
+
+    /**
+     * Drop the versions the retention policy does not keep.
+     */
+    private void prune() {
+        if (retention == RetentionPolicy.KEEP_ALL) {
+            return;
+        }
+        List<Version> all = Collections.unmodifiableList(history);
+        int n = history.size();
+        boolean[] keep = new boolean[n];
+        for (int i = 0; i < n - 1; i++) {
+            keep[i] = retention.keep(all, i);
+        }
+        keep[n - 1] = true;
+        int kept = 0;
+        for (int i = 0; i < n; i++) {
+            if (keep[i]) {
+                history.set(kept++, history.get(i));
+            }
+        }
+        history.subList(kept, n).clear();
+    }
+
+    /**
+     * Get the policy deciding which versions are kept.
+     *
+     * @return The retention policy.
+     */
+    public RetentionPolicy getRetentionPolicy() {
+        return retention;
+    }
+
+    /**
+     * Set the policy deciding which versions are kept, and apply it to the
+     * versions kept so far.
+     *
+     * @param policy The policy.
+     * @throws NullPointerException if policy is null
+     */
+    public void setRetentionPolicy(RetentionPolicy policy) throws NullPointerException {
+        if (policy == null) {
+            throw new NullPointerException("policy");
+        }
+        retention = policy;
+        if (!history.isEmpty()) {
+            prune();
+        }
+    }
+
+    /**
+     * Get a version by number.
+     *
+     * @param version The version number.
+     * @return The version.
+     * @throws NoSuchElementException if there was no such version, or it has
+     *         been dropped
+     */
+    public Version asOf(long version) throws NoSuchElementException {
+        int lo = 0;
+        int hi = history.size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long number = history.get(mid).number;
+            if (number < version) {
+                lo = mid + 1;
+            } else if (number > version) {
+                hi = mid - 1;
+            } else {
+                return history.get(mid);
+            }
+        }
+        throw new NoSuchElementException("version " + version + " is not kept");
+    }
+
+    /**
+     * Get the newest version kept that was committed at or before a time.
+     * If versions have been dropped, this is the nearest kept version before
+     * the time, not necessarily the last one committed before it.
+     *
+     * @param time A time in milliseconds since the epoch.
+     * @return The version.
+     * @throws NoSuchElementException if no version kept is that old
+     */
+    public Version asOfTime(long time) throws NoSuchElementException {
+        int lo = 0;
+        int hi = history.size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (history.get(mid).time <= time) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        if (hi < 0) {
+            throw new NoSuchElementException("no version kept from " + time + " or earlier");
+        }
+        return history.get(hi);
+    }
+
+    /**
+     * @return The versions kept, oldest first.
+     */
+    public List<Version> versions() {
+        return Collections.unmodifiableList(new ArrayList<Version>(history));
+    }
+
+    /**
+     * Create a plain SplayFC holding the current keys, without the history.
+     * This takes constant time.
+     *
+     * @return The created SplayFC object.
+     */
+    public SplayFC clone() {
+        SplayFC t = new SplayFC(getTop());
+        t.setSplayPolicy(getSplayPolicy());
+        return t;
+    }
+}
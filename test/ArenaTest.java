@@ -0,0 +1,162 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that ArenaSplayFC builds the same trees as SplayFC under a random
+ * mix of operations, with clones and compaction along the way, and compares
+ * the heap used by the two for a million keys.
+ * @author Jonathan Chua
+ */
+public class ArenaTest {
+
+    /**
+     * @param it An iterator.
+     * @return The elements it visits, separated by commas.
+     */
+    private static String join(Iterator<String> it) {
+        StringBuilder sb = new StringBuilder();
+        while (it.hasNext()) {
+            sb.append(it.next()).append(',');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return The heap in use after collecting garbage, in bytes.
+     */
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    /**
+     * Run the checks.
+     * @param args the command line arguments (ignored)
+     */
+    public static void main(String[] args) {
+        Random rnd = new Random(1);
+        SplayFC plain = new SplayFC();
+        ArenaSplayFC arena = new ArenaSplayFC();
+        List<SplayFC> plainClones = new ArrayList<SplayFC>();
+        List<ArenaSplayFC> arenaClones = new ArrayList<ArenaSplayFC>();
+        int wrong = 0;
+        for (int i = 0; i < 100000; i++) {
+            String k = Integer.toString(rnd.nextInt(5000), 36);
+            switch (rnd.nextInt(6)) {
+                case 0:
+                case 1:
+                    wrong += plain.add(k) == arena.add(k) ? 0 : 1;
+                    break;
+                case 2:
+                    wrong += plain.remove(k) == arena.remove(k) ? 0 : 1;
+                    break;
+                case 3:
+                    wrong += plain.contains(k) == arena.contains(k) ? 0 : 1;
+                    break;
+                case 4:
+                    String k2 = Integer.toString(rnd.nextInt(5000), 36);
+                    wrong += plain.subSet(k, k2).toString().equals(arena.subSet(k, k2).toString()) ? 0 : 1;
+                    break;
+                default:
+                    wrong += String.valueOf(plain.floor(k)).equals(String.valueOf(arena.floor(k))) ? 0 : 1;
+                    wrong += String.valueOf(plain.ceiling(k)).equals(String.valueOf(arena.ceiling(k))) ? 0 : 1;
+                    break;
+            }
+            if (i % 10000 == 0) {
+                wrong += plain.toString().equals(arena.toString()) ? 0 : 1;
+                plainClones.add(plain.clone());
+                arenaClones.add(arena.clone());
+                if (arenaClones.size() > 3) { // let the oldest clones become garbage
+                    plainClones.remove(0);
+                    arenaClones.remove(0);
+                }
+            }
+        }
+        wrong += plain.toString().equals(arena.toString()) ? 0 : 1;
+        for (int i = 0; i < plainClones.size(); i++) {
+            wrong += join(plainClones.get(i).snapShotIterator())
+                    .equals(join(arenaClones.get(i).snapShotIterator())) ? 0 : 1;
+        }
+        System.out.println("same trees: " + (wrong == 0) + ", " + arena.arena().epoch() + " compactions");
+
+        // A snapshot iterator carries on across a compaction.
+        Iterator<String> snap = arena.snapShotIterator();
+        Iterator<String> expected = plain.snapShotIterator();
+        for (int i = 0; i < 100; i++) {
+            wrong += snap.next().equals(expected.next()) ? 0 : 1;
+        }
+        arena.compact();
+        while (expected.hasNext()) {
+            wrong += snap.hasNext() && snap.next().equals(expected.next()) ? 0 : 1;
+        }
+        wrong += snap.hasNext() ? 1 : 0;
+        System.out.println("iterator across compaction: " + (wrong == 0));
+
+        // The updating iterator removes through the live tree.
+        Iterator<String> it = arena.updatingIterator();
+        while (it.hasNext()) {
+            if (it.next().length() % 2 == 0) {
+                it.remove();
+            }
+        }
+        Iterator<String> pit = plain.updatingIterator();
+        while (pit.hasNext()) {
+            if (pit.next().length() % 2 == 0) {
+                pit.remove();
+            }
+        }
+        wrong += join(plain.snapShotIterator()).equals(join(arena.snapShotIterator())) ? 0 : 1;
+        System.out.println("updating iterator: " + (wrong == 0));
+
+        // Every splay policy is accepted; semi-splaying gives the same trees as
+        // SplayFC's, and policies that need the depth splay as ALWAYS does.
+        SplayPolicy[] policies = {SplayPolicy.SEMI, SplayPolicy.NEVER, SplayPolicy.probabilistic(0.5),
+            SplayPolicy.depthTriggered(2)};
+        for (SplayPolicy policy : policies) {
+            SplayFC p = plain.clone();
+            ArenaSplayFC a = arena.clone();
+            p.setSplayPolicy(policy == SplayPolicy.SEMI || policy == SplayPolicy.NEVER ? policy : SplayPolicy.ALWAYS);
+            a.setSplayPolicy(policy);
+            for (int i = 0; i < 2000; i++) {
+                String k = Integer.toString(rnd.nextInt(5000), 36);
+                wrong += p.contains(k) == a.contains(k) ? 0 : 1;
+            }
+            boolean sameShape = p.toString().equals(a.toString());
+            wrong += sameShape || policy.toString().startsWith("p=") ? 0 : 1;
+        }
+        System.out.println("splay policies: " + (wrong == 0));
+
+        // Memory for a million keys, made afresh for each tree so that the
+        // heap used includes the keys each tree keeps.
+        long start = System.nanoTime();
+        long base = usedHeap();
+        SplayFC big = new SplayFC();
+        Random keys = new Random(2);
+        for (int i = 0; i < 1000000; i++) {
+            big.add(Integer.toString(keys.nextInt(Integer.MAX_VALUE), 36));
+        }
+        long cellBytes = usedHeap() - base;
+        long cellMillis = (System.nanoTime() - start) / 1000000;
+        big = null;
+        start = System.nanoTime();
+        base = usedHeap();
+        ArenaSplayFC bigArena = new ArenaSplayFC();
+        keys = new Random(2);
+        for (int i = 0; i < 1000000; i++) {
+            bigArena.add(Integer.toString(keys.nextInt(Integer.MAX_VALUE), 36));
+        }
+        bigArena.compact();
+        long arenaBytes = usedHeap() - base;
+        long arenaMillis = (System.nanoTime() - start) / 1000000;
+        System.out.println("heap for 10^6 keys: SplayFC " + cellBytes / 1000000 + " bytes/key, ArenaSplayFC "
+                + arenaBytes / 1000000 + " bytes/key (" + bigArena.arena().bytesAllocated() / 1000000
+                + " in arrays)");
+        System.out.println("time to build: SplayFC " + cellMillis + " ms, ArenaSplayFC " + arenaMillis + " ms");
+        System.out.println("wrong: " + wrong);
+    }
+}
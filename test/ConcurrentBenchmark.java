@@ -0,0 +1,187 @@
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures throughput of ConcurrentSplayFC and ShardedSplayFC against a
+ * SplayFC guarded by a single global lock, from 1 to 64 threads.  The locked
+ * and lock-free trees are measured with splaying and with non-splaying
+ * reads, so that each comparison is between the same kind of lookup;
+ * ShardedSplayFC only has splaying reads.
+ * @author Jonathan Chua
+ */
+public class ConcurrentBenchmark {
+
+    /**
+     * the number of distinct keys the workloads draw from
+     */
+    private static final int KEYS = 100000;
+    /**
+     * how long each measurement runs for, in milliseconds
+     */
+    private static final long RUN_MILLIS = 500;
+
+    /**
+     * The set operations a workload needs, so both implementations can be
+     * driven by the same loop.
+     */
+    interface Target {
+        boolean add(String k);
+        boolean remove(String k);
+        boolean contains(String k);
+    }
+
+    /**
+     * A SplayFC with every operation under one lock, as callers do today.
+     */
+    static class LockedTarget implements Target {
+        private final SplayFC t = new SplayFC();
+        private final boolean splay;
+
+        LockedTarget(boolean splay) {
+            this.splay = splay;
+        }
+
+        public synchronized boolean add(String k) {
+            return t.add(k);
+        }
+
+        public synchronized boolean remove(String k) {
+            return t.remove(k);
+        }
+
+        public synchronized boolean contains(String k) {
+            return splay ? t.contains(k) : t.containsNoSplay(k);
+        }
+    }
+
+    /**
+     * A ConcurrentSplayFC.
+     */
+    static class LockFreeTarget implements Target {
+        private final ConcurrentSplayFC t = new ConcurrentSplayFC();
+        private final boolean splay;
+
+        LockFreeTarget(boolean splay) {
+            this.splay = splay;
+        }
+
+        public boolean add(String k) {
+            return t.add(k);
+        }
+
+        public boolean remove(String k) {
+            return t.remove(k);
+        }
+
+        public boolean contains(String k) {
+            return splay ? t.contains(k) : t.containsNoSplay(k);
+        }
+    }
+
+    /**
+     * A ShardedSplayFC, locking one shard per operation.
+     */
+    static class ShardedTarget implements Target {
+        private final ShardedSplayFC t = new ShardedSplayFC();
+
+        public boolean add(String k) {
+            return t.add(k);
+        }
+
+        public boolean remove(String k) {
+            return t.remove(k);
+        }
+
+        public boolean contains(String k) {
+            return t.contains(k);
+        }
+    }
+
+    /**
+     * Run a mixed workload against a target.
+     * @param target The set to exercise.
+     * @param threads The number of threads.
+     * @param writePercent The percentage of operations that are writes.
+     * @return The total throughput in operations per second.
+     */
+    private static long run(final Target target, int threads, final int writePercent)
+            throws InterruptedException {
+        final String[] keys = new String[KEYS];
+        Random rnd = new Random(42);
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = Integer.toString(rnd.nextInt(Integer.MAX_VALUE), 36);
+            if (i % 2 == 0) {
+                target.add(keys[i]);
+            }
+        }
+
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicLong ops = new AtomicLong();
+        final CountDownLatch ready = new CountDownLatch(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int seed = i;
+            workers[i] = new Thread() {
+                public void run() {
+                    Random r = new Random(seed);
+                    long n = 0;
+                    ready.countDown();
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    while (!stop.get()) {
+                        String k = keys[r.nextInt(KEYS)];
+                        int op = r.nextInt(100);
+                        if (op < writePercent / 2) {
+                            target.add(k);
+                        } else if (op < writePercent) {
+                            target.remove(k);
+                        } else {
+                            target.contains(k);
+                        }
+                        n++;
+                    }
+                    ops.addAndGet(n);
+                }
+            };
+            workers[i].start();
+        }
+        ready.await();
+        long begin = System.nanoTime();
+        start.countDown();
+        Thread.sleep(RUN_MILLIS);
+        stop.set(true);
+        for (Thread w : workers) {
+            w.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        return ops.get() * 1000000000L / elapsed;
+    }
+
+    /**
+     * Run the benchmark for each thread count and mix.
+     * @param args the command line arguments (ignored)
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int[] mixes = {5, 50};
+        for (int writePercent : mixes) {
+            System.out.println("--- " + writePercent + "% writes ---");
+            for (int threads = 1; threads <= 64; threads *= 2) {
+                long locked = run(new LockedTarget(true), threads, writePercent);
+                long lockFree = run(new LockFreeTarget(true), threads, writePercent);
+                long sharded = run(new ShardedTarget(), threads, writePercent);
+                long lockedNoSplay = run(new LockedTarget(false), threads, writePercent);
+                long lockFreeNoSplay = run(new LockFreeTarget(false), threads, writePercent);
+                System.out.println(threads + " threads, splaying reads: locked " + locked
+                        + " ops/s, lock-free " + lockFree + " ops/s, sharded " + sharded + " ops/s");
+                System.out.println(threads + " threads, non-splaying reads: locked " + lockedNoSplay
+                        + " ops/s, lock-free " + lockFreeNoSplay + " ops/s");
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Checks ConcurrentSplayFC's updating iterator against TreeSet while the tree
+ * is changed under it, by the iterator itself and by another thread, and
+ * times a pass over the long spine sorted inserts leave.
+ * @author Jonathan Chua
+ */
+public class ConcurrentTest {
+
+    /**
+     * Run the checks.
+     * @param args the command line arguments (ignored)
+     * @throws InterruptedException if interrupted while waiting for the writer
+     */
+    public static void main(String[] args) throws InterruptedException {
+        Random rnd = new Random(4);
+
+        // Changes between steps are seen from the next call to hasNext on.
+        int wrong = 0;
+        for (int round = 0; round < 200; round++) {
+            ConcurrentSplayFC t = new ConcurrentSplayFC();
+            TreeSet<String> expected = new TreeSet<String>();
+            int range = 1 + rnd.nextInt(400);
+            for (int i = rnd.nextInt(300); i > 0; i--) {
+                String k = Integer.toString(rnd.nextInt(range), 36);
+                t.add(k);
+                expected.add(k);
+            }
+            Iterator<String> it = t.updatingIterator();
+            String last = null;
+            while (it.hasNext()) {
+                String k = it.next();
+                String e = last == null ? (expected.isEmpty() ? null : expected.first()) : expected.higher(last);
+                wrong += k.equals(e) ? 0 : 1;
+                last = k;
+                switch (rnd.nextInt(4)) {
+                    case 0:
+                        it.remove();
+                        expected.remove(k);
+                        break;
+                    case 1:
+                        String a = Integer.toString(rnd.nextInt(range), 36);
+                        t.add(a);
+                        expected.add(a);
+                        break;
+                    case 2:
+                        String r = Integer.toString(rnd.nextInt(range), 36);
+                        t.remove(r);
+                        expected.remove(r);
+                        break;
+                    default:
+                        t.contains(Integer.toString(rnd.nextInt(range), 36));
+                }
+            }
+            wrong += last == null ? (expected.isEmpty() ? 0 : 1) : (expected.higher(last) == null ? 0 : 1);
+        }
+        System.out.println("200 random trees changed while iterating, wrong: " + wrong);
+
+        // Another thread adds keys while the iterator runs; every key that
+        // was there from the start is still visited, in order.
+        final ConcurrentSplayFC shared = new ConcurrentSplayFC();
+        List<String> start = new ArrayList<String>();
+        for (int i = 0; i < 20000; i += 2) {
+            String k = String.format("%06d", i);
+            shared.add(k);
+            start.add(k);
+        }
+        Thread writer = new Thread(() -> {
+            for (int i = 1; i < 20000; i += 2) {
+                shared.add(String.format("%06d", i));
+            }
+        });
+        writer.start();
+        List<String> seen = new ArrayList<String>();
+        Iterator<String> it = shared.updatingIterator();
+        while (it.hasNext()) {
+            seen.add(it.next());
+        }
+        writer.join();
+        boolean ordered = true;
+        for (int i = 1; i < seen.size(); i++) {
+            ordered &= seen.get(i - 1).compareTo(seen.get(i)) < 0;
+        }
+        System.out.println("with a concurrent writer: in order " + ordered + ", original keys all seen "
+                + seen.containsAll(start));
+
+        // Sorted inserts leave a spine 100000 cells deep.
+        ConcurrentSplayFC spine = new ConcurrentSplayFC();
+        for (int i = 0; i < 100000; i++) {
+            spine.add(String.format("%06d", i));
+        }
+        long begin = System.nanoTime();
+        int n = 0;
+        for (Iterator<String> i = spine.updatingIterator(); i.hasNext(); i.next()) {
+            n++;
+        }
+        System.out.println("spine of 100000: " + n + " keys in " + (System.nanoTime() - begin) / 1000000 + " ms");
+    }
+}
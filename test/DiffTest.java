@@ -0,0 +1,149 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Checks diff against TreeSet set differences, on unrelated trees, on clones
+ * that share most of their cells and on the long spines sorted inserts
+ * leave, and times it on a large tree with a few changes.
+ * @author Jonathan Chua
+ */
+public class DiffTest {
+
+    /**
+     * Collects the keys reported by diff, in the order reported.
+     */
+    private static class Recorder implements SplayFC.DiffListener {
+
+        /**
+         * the keys reported as added
+         */
+        List<String> added = new ArrayList<String>();
+        /**
+         * the keys reported as removed
+         */
+        List<String> removed = new ArrayList<String>();
+
+        public void added(String k) {
+            added.add(k);
+        }
+
+        public void removed(String k) {
+            removed.add(k);
+        }
+    }
+
+    /**
+     * @param a The older tree.
+     * @param b The newer tree.
+     * @param ea The keys in a.
+     * @param eb The keys in b.
+     * @return 0 if diff reports exactly the keys of eb - ea as added and of
+     *         ea - eb as removed, each in increasing order, otherwise 1.
+     */
+    private static int check(SplayFC a, SplayFC b, TreeSet<String> ea, TreeSet<String> eb) {
+        Recorder r = new Recorder();
+        a.diff(b, r);
+        TreeSet<String> added = new TreeSet<String>(eb);
+        added.removeAll(ea);
+        TreeSet<String> removed = new TreeSet<String>(ea);
+        removed.removeAll(eb);
+        return r.added.equals(new ArrayList<String>(added))
+                && r.removed.equals(new ArrayList<String>(removed)) ? 0 : 1;
+    }
+
+    /**
+     * Run the checks.
+     * @param args the command line arguments (ignored)
+     */
+    public static void main(String[] args) {
+        Random rnd = new Random(9);
+
+        // Random trees, and clones changed a little.
+        int wrong = 0;
+        int unchanged = 0;
+        for (int round = 0; round < 200; round++) {
+            SplayFC a = new SplayFC();
+            TreeSet<String> ea = new TreeSet<String>();
+            int range = 1 + rnd.nextInt(400);
+            for (int i = rnd.nextInt(300); i > 0; i--) {
+                String k = Integer.toString(rnd.nextInt(range), 36);
+                a.add(k);
+                ea.add(k);
+            }
+            SplayFC b = new SplayFC();
+            TreeSet<String> eb = new TreeSet<String>();
+            if (round % 2 == 0) {
+                b = a.clone();
+                eb.addAll(ea);
+            }
+            for (int i = rnd.nextInt(round % 2 == 0 ? 20 : 300); i > 0; i--) {
+                String k = Integer.toString(rnd.nextInt(range), 36);
+                if (rnd.nextBoolean()) {
+                    b.add(k);
+                    eb.add(k);
+                } else {
+                    b.remove(k);
+                    eb.remove(k);
+                }
+            }
+            Cell aBefore = a.getTop();
+            Cell bBefore = b.getTop();
+            wrong += check(a, b, ea, eb) + check(b, a, eb, ea) + check(a, a, ea, ea);
+            unchanged += a.getTop() == aBefore && b.getTop() == bBefore ? 1 : 0;
+        }
+        System.out.println("200 random pairs, wrong: " + wrong + ", trees unchanged: " + unchanged);
+
+        // Empty trees on either side.
+        SplayFC empty = new SplayFC();
+        SplayFC some = SplayFC.fromSorted(new TreeSet<String>(Arrays.asList("a", "b", "c")).iterator());
+        TreeSet<String> eSome = new TreeSet<String>(Arrays.asList("a", "b", "c"));
+        System.out.println("empty trees, wrong: " + (check(empty, some, new TreeSet<String>(), eSome)
+                + check(some, empty, eSome, new TreeSet<String>())
+                + check(empty, new SplayFC(), new TreeSet<String>(), new TreeSet<String>())));
+
+        // Sorted inserts leave a spine 100000 cells deep.
+        SplayFC spine = new SplayFC();
+        SplayFC odd = new SplayFC();
+        TreeSet<String> eSpine = new TreeSet<String>();
+        TreeSet<String> eOdd = new TreeSet<String>();
+        for (int i = 0; i < 100000; i++) {
+            String k = String.format("%06d", i);
+            spine.add(k);
+            eSpine.add(k);
+            if (i % 2 == 1) {
+                odd.add(k);
+                eOdd.add(k);
+            }
+        }
+        System.out.println("spines of 100000, wrong: "
+                + (check(spine, odd, eSpine, eOdd) + check(odd, spine, eOdd, eSpine)));
+
+        // A clone of a million keys with ten changes.
+        TreeSet<String> eBig = new TreeSet<String>();
+        for (int i = 0; i < 1000000; i++) {
+            eBig.add(Integer.toString(rnd.nextInt(), 36));
+        }
+        SplayFC big = SplayFC.fromSorted(eBig.iterator());
+        SplayFC next = big.clone();
+        TreeSet<String> eNext = new TreeSet<String>(eBig);
+        for (int i = 0; i < 5; i++) {
+            String k = Integer.toString(rnd.nextInt(), 36);
+            next.add(k);
+            eNext.add(k);
+            k = next.ceiling(Integer.toString(rnd.nextInt(), 36));
+            if (k != null) {
+                next.remove(k);
+                eNext.remove(k);
+            }
+        }
+        Recorder r = new Recorder();
+        long start = System.nanoTime();
+        big.diff(next, r);
+        long time = System.nanoTime() - start;
+        System.out.println("10^6 keys, 10 changes: " + (r.added.size() + r.removed.size())
+                + " reported in " + time / 1000 + " us, wrong: " + check(big, next, eBig, eNext));
+    }
+}
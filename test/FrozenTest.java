@@ -0,0 +1,129 @@
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Checks FrozenStringSet's index arithmetic against TreeSet: every lookup,
+ * iteration and range on sets of every size up to a few hundred, so that
+ * every shape of partly filled last level is covered, and on a large random
+ * set frozen from a SplayFC.
+ * @author Jonathan Chua
+ */
+public class FrozenTest {
+
+    /**
+     * @param a One key, possibly null.
+     * @param b Another, possibly null.
+     * @return 0 if they are equal, otherwise 1.
+     */
+    private static int same(String a, String b) {
+        return a == null ? (b == null ? 0 : 1) : (a.equals(b) ? 0 : 1);
+    }
+
+    /**
+     * @param it An iterator.
+     * @param expected The keys it should visit.
+     * @return 0 if it visits exactly the expected keys, in order, otherwise 1.
+     */
+    private static int check(Iterator<String> it, Iterable<String> expected) {
+        for (String k : expected) {
+            if (!it.hasNext() || !it.next().equals(k)) {
+                return 1;
+            }
+        }
+        return it.hasNext() ? 1 : 0;
+    }
+
+    /**
+     * @param f A frozen set.
+     * @param expected The keys it holds.
+     * @param k A key to look up.
+     * @return The number of lookups from k that disagree with expected.
+     */
+    private static int check(FrozenStringSet f, TreeSet<String> expected, String k) {
+        int wrong = f.contains(k) == expected.contains(k) ? 0 : 1;
+        wrong += same(f.floor(k), expected.floor(k));
+        wrong += same(f.ceiling(k), expected.ceiling(k));
+        return wrong;
+    }
+
+    /**
+     * @param i A number.
+     * @return The key for i; keys for even i are put in the sets, so those
+     *         for odd i fall between them.
+     */
+    private static String key(int i) {
+        return String.format("%04d", i);
+    }
+
+    /**
+     * Run the checks.
+     * @param args the command line arguments (ignored)
+     */
+    public static void main(String[] args) {
+        Random rnd = new Random(10);
+
+        // Every size from empty to 512 keys, looking up every key, every gap
+        // and both ends.
+        int wrong = 0;
+        int lookups = 0;
+        for (int n = 0; n <= 512; n++) {
+            SplayFC t = new SplayFC();
+            TreeSet<String> expected = new TreeSet<String>();
+            for (int i = 0; i < n; i++) {
+                t.add(key(2 * i));
+                expected.add(key(2 * i));
+            }
+            FrozenStringSet f = t.freeze();
+            wrong += f.size() == n ? 0 : 1;
+            wrong += same(f.first(), n == 0 ? null : expected.first());
+            wrong += same(f.last(), n == 0 ? null : expected.last());
+            wrong += check(f.iterator(), expected) + check(f.snapShotIterator(), expected);
+            for (int i = -1; i <= 2 * n + 1; i++) {
+                wrong += check(f, expected, i < 0 ? "" : key(i));
+                lookups++;
+            }
+            wrong += check(f, expected, "~");
+            for (int r = 0; r < 20; r++) {
+                int lo = rnd.nextInt(2 * n + 3) - 1;
+                int hi = lo + rnd.nextInt(2 * n + 3 - lo);
+                String k1 = lo < 0 ? "" : key(lo);
+                String k2 = key(hi);
+                wrong += check(f.subSetIterator(k1, k2), expected.subSet(k1, k2));
+            }
+        }
+        System.out.println("sizes 0 to 512, " + lookups + " lookups, wrong: " + wrong);
+
+        // A large random set, frozen from a tree that goes on changing.
+        SplayFC t = new SplayFC();
+        TreeSet<String> expected = new TreeSet<String>();
+        for (int i = 0; i < 200000; i++) {
+            String k = Integer.toString(rnd.nextInt(1000000), 36);
+            t.add(k);
+            expected.add(k);
+        }
+        Cell before = t.getTop();
+        FrozenStringSet f = t.freeze();
+        boolean unchanged = t.getTop() == before;
+        t.add("new");
+        t.remove(expected.first());
+        int w = f.size() == expected.size() ? 0 : 1;
+        w += check(f.iterator(), expected);
+        for (int i = 0; i < 100000; i++) {
+            String k = Integer.toString(rnd.nextInt(1000000), 36);
+            w += check(f, expected, k) + check(f, expected, k + "0");
+        }
+        for (int r = 0; r < 100; r++) {
+            String k1 = Integer.toString(rnd.nextInt(1000000), 36);
+            String k2 = expected.higher(k1);
+            for (int j = rnd.nextInt(1000); k2 != null && j > 0; j--) {
+                k2 = expected.higher(k2);
+            }
+            if (k2 != null) {
+                w += check(f.subSetIterator(k1, k2), expected.subSet(k1, k2));
+            }
+        }
+        System.out.println(expected.size() + " random keys, wrong: " + w + ", tree unchanged by freeze: "
+                + unchanged);
+    }
+}
@@ -0,0 +1,138 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Checks that HashedSplayFC's content hash depends only on the keys, that
+ * equals agrees with TreeSet's, and that CellInterner makes trees holding the
+ * same keys share one root; and times equals on large trees.
+ * @author Jonathan Chua
+ */
+public class HashedTest {
+
+    /**
+     * @param it An iterator.
+     * @return The sum of HashedCell.keyHash over the elements it visits.
+     */
+    private static long sum(Iterator<String> it) {
+        long h = 0;
+        while (it.hasNext()) {
+            h += HashedCell.keyHash(it.next());
+        }
+        return h;
+    }
+
+    /**
+     * Run the checks.
+     * @param args the command line arguments (ignored)
+     * @throws IOException never, since the snapshot is in memory
+     */
+    public static void main(String[] args) throws IOException {
+        Random rnd = new Random(1);
+        HashedSplayFC t = new HashedSplayFC();
+        TreeSet<String> expected = new TreeSet<String>();
+        List<HashedSplayFC> versions = new ArrayList<HashedSplayFC>();
+        List<TreeSet<String>> expectedVersions = new ArrayList<TreeSet<String>>();
+        int wrong = 0;
+        for (int i = 0; i < 20000; i++) {
+            String k = Integer.toString(rnd.nextInt(300), 36);
+            switch (rnd.nextInt(4)) {
+                case 0:
+                    t.remove(k);
+                    expected.remove(k);
+                    break;
+                case 1:
+                    t.contains(k);
+                    break;
+                default:
+                    t.add(k);
+                    expected.add(k);
+            }
+            wrong += t.contentHash() == sum(expected.iterator()) ? 0 : 1;
+            if (i % 500 == 0) {
+                versions.add(t.clone());
+                expectedVersions.add(new TreeSet<String>(expected));
+            }
+        }
+        String k1 = Integer.toString(rnd.nextInt(300), 36);
+        HashedSplayFC head = t.headSet(k1);
+        wrong += head.contentHash() == sum(expected.headSet(k1).iterator()) ? 0 : 1;
+        wrong += t.contentHash() == sum(expected.iterator()) ? 0 : 1;
+        System.out.println("hash matches keys after every operation, wrong: " + wrong);
+
+        // equals and hashCode against TreeSet's.
+        int disagreements = 0;
+        for (int i = 0; i < versions.size(); i++) {
+            for (int j = 0; j < versions.size(); j++) {
+                boolean same = expectedVersions.get(i).equals(expectedVersions.get(j));
+                disagreements += versions.get(i).equals(versions.get(j)) == same ? 0 : 1;
+                disagreements += !same || versions.get(i).hashCode() == versions.get(j).hashCode() ? 0 : 1;
+            }
+        }
+        System.out.println("equals over " + versions.size() + " versions, disagreements: " + disagreements);
+
+        // The same keys added in different orders give different shapes but equal trees.
+        List<String> keys = new ArrayList<String>(expected);
+        HashedSplayFC a = new HashedSplayFC();
+        HashedSplayFC b = new HashedSplayFC();
+        for (String k : keys) {
+            a.add(k);
+        }
+        Collections.shuffle(keys, rnd);
+        for (String k : keys) {
+            b.add(k);
+        }
+        HashedSplayFC c = HashedSplayFC.fromSorted(expected.iterator());
+        System.out.println("different shapes: " + !a.toString().equals(b.toString()) + ", equal: "
+                + (a.equals(b) && b.equals(c) && a.hashCode() == c.hashCode()));
+
+        // Interning shares one root between equal trees.
+        CellInterner interner = new CellInterner();
+        List<HashedSplayFC> tenants = new ArrayList<HashedSplayFC>();
+        for (int i = 0; i < 100; i++) {
+            HashedSplayFC tenant = new HashedSplayFC();
+            Collections.shuffle(keys, rnd);
+            for (String k : keys) {
+                tenant.add(k);
+            }
+            if (i % 2 == 1) {
+                tenant.remove(expected.first());
+            }
+            tenants.add(interner.intern(tenant));
+        }
+        System.out.println("100 tenants interned: " + interner.size() + " distinct roots, shared: "
+                + (tenants.get(0).getTop() == tenants.get(98).getTop()
+                        && tenants.get(1).getTop() == tenants.get(99).getTop()));
+
+        // Hashed trees survive a snapshot.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SnapshotWriter w = new SnapshotWriter(bytes);
+        w.checkpoint(t);
+        w.close();
+        SplayFC loaded = new SnapshotReader(new ByteArrayInputStream(bytes.toByteArray())).tree(0);
+        System.out.println("snapshot: " + t.equals(loaded));
+
+        // Timing equals on a million keys.
+        HashedSplayFC big = new HashedSplayFC();
+        for (int i = 0; i < 1000000; i++) {
+            big.add(Integer.toString(rnd.nextInt(), 36));
+        }
+        HashedSplayFC other = HashedSplayFC.fromSorted(big.snapShotIterator());
+        HashedSplayFC changed = other.clone();
+        changed.add("one more");
+        long start = System.nanoTime();
+        boolean differ = big.equals(changed);
+        long reject = System.nanoTime() - start;
+        start = System.nanoTime();
+        boolean same = big.equals(other);
+        long confirm = System.nanoTime() - start;
+        System.out.println("10^6 keys: unequal trees told apart in " + reject / 1000 + " us (" + !differ
+                + "), equal trees confirmed in " + confirm / 1000000 + " ms (" + same + ")");
+    }
+}
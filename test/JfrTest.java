@@ -0,0 +1,64 @@
+import java.io.File;
+import java.util.Iterator;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Records SplayFC's flight recorder events for a workload that builds a deep
+ * tree and changes it under an updating iterator, then prints what was
+ * recorded.
+ * @author Jonathan Chua
+ */
+public class JfrTest {
+
+    /**
+     * Run the workload under a recording and print the events.
+     * @param args the command line arguments (ignored)
+     */
+    public static void main(String[] args) throws Exception {
+        File file = File.createTempFile("splayfc", ".jfr");
+        file.deleteOnExit();
+        Recording recording = new Recording();
+        recording.enable("splayfc.SlowOperation");
+        recording.enable("splayfc.IteratorRebuild");
+        recording.start();
+
+        // Keys added in order leave a spine, so a search for the least key
+        // goes down the whole tree.
+        SplayFC t = new SplayFC();
+        for (int i = 0; i < 1000; i++) {
+            t.add(String.format("%04d", i));
+        }
+        t.contains("0000");
+        t.contains("0001");
+
+        Iterator<String> it = t.updatingIterator();
+        it.next();
+        t.add("0500x");
+        it.hasNext();
+
+        recording.stop();
+        recording.dump(file.toPath());
+        recording.close();
+
+        int slow = 0;
+        int resumes = 0;
+        for (RecordedEvent e : RecordingFile.readAllEvents(file.toPath())) {
+            String name = e.getEventType().getName();
+            if (name.equals("splayfc.SlowOperation")) {
+                slow++;
+                if (e.getInt("depth") >= SlowOperationEvent.DEPTH_THRESHOLD) {
+                    System.out.println("slow " + e.getString("operation") + " " + e.getString("key")
+                            + " depth " + e.getInt("depth") + " found " + e.getBoolean("found"));
+                }
+            } else if (name.equals("splayfc.IteratorRebuild")) {
+                resumes++;
+                System.out.println("resume from " + e.getString("key") + " took "
+                        + e.getDuration().toNanos() + " ns");
+            }
+        }
+        System.out.println(slow + " slow operations, " + resumes + " iterator resumes");
+    }
+}
@@ -0,0 +1,116 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Times LoggedSplayFC: durable writes from one or more threads, and then
+ * recovery from a log of ten million operations, with and without a
+ * checkpoint.  The number of operations may be given as the first argument.
+ * @author Jonathan Chua
+ */
+public class LoggedBenchmark {
+
+    /**
+     * @param a An iterator.
+     * @param b Another.
+     * @return true if they visit the same strings.
+     */
+    private static boolean same(Iterator<String> a, Iterator<String> b) {
+        while (a.hasNext() && b.hasNext()) {
+            if (!a.next().equals(b.next())) {
+                return false;
+            }
+        }
+        return !a.hasNext() && !b.hasNext();
+    }
+
+    /**
+     * @param dir A directory to delete, with everything in it.
+     */
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> s = Files.walk(dir)) {
+            s.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /**
+     * Run the benchmark.
+     * @param args the number of operations to log, by default 10^7
+     * @throws Exception if the files cannot be used or a thread is interrupted
+     */
+    public static void main(String[] args) throws Exception {
+        int ops = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+
+        // Durable writes: the more threads, the more records each force covers.
+        for (int threads = 1; threads <= 16; threads *= 4) {
+            Path dir = Files.createTempDirectory("logged");
+            final LoggedSplayFC t = LoggedSplayFC.open(dir);
+            final int each = 4000 / threads;
+            Thread[] writers = new Thread[threads];
+            long start = System.nanoTime();
+            for (int w = 0; w < threads; w++) {
+                final int seed = w;
+                writers[w] = new Thread() {
+                    public void run() {
+                        for (int i = 0; i < each; i++) {
+                            t.add(seed + ":" + i);
+                        }
+                    }
+                };
+                writers[w].start();
+            }
+            for (Thread w : writers) {
+                w.join();
+            }
+            long time = System.nanoTime() - start;
+            System.out.printf("%2d threads: %6.0f durable adds/s, %.1f records per force%n", threads,
+                    each * threads * 1e9 / time, (double) (each * threads) / t.syncs());
+            t.close();
+            delete(dir);
+        }
+
+        // Recovery from a long log.
+        Path dir = Files.createTempDirectory("logged");
+        try {
+            Random rnd = new Random(1);
+            LoggedSplayFC t = LoggedSplayFC.open(dir, false);
+            long start = System.nanoTime();
+            for (int i = 0; i < ops; i++) {
+                String k = Integer.toString(rnd.nextInt(2000000), 36);
+                if (rnd.nextInt(3) == 0) {
+                    t.remove(k);
+                } else {
+                    t.add(k);
+                }
+            }
+            t.sync();
+            long logBytes;
+            try (Stream<Path> s = Files.list(dir)) {
+                logBytes = s.mapToLong(p -> p.toFile().length()).sum();
+            }
+            System.out.println(ops + " operations logged in " + (System.nanoTime() - start) / 1000000 + " ms, "
+                    + logBytes / 1000000 + " MB of log");
+            SplayFC before = t.clone();
+
+            // A crash, then recovery by replaying the whole log.
+            start = System.nanoTime();
+            t = LoggedSplayFC.open(dir, false);
+            System.out.println("replayed " + t.recovered() + " records in " + (System.nanoTime() - start) / 1000000
+                    + " ms, identical: " + same(t.snapShotIterator(), before.snapShotIterator()));
+
+            // Recovery from a checkpoint.
+            t.checkpoint();
+            start = System.nanoTime();
+            t = LoggedSplayFC.open(dir, false);
+            System.out.println("after checkpoint: loaded in " + (System.nanoTime() - start) / 1000000
+                    + " ms, identical: " + same(t.snapShotIterator(), before.snapShotIterator()));
+            t.close();
+        } finally {
+            delete(dir);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * Checks that LoggedSplayFC recovers exactly the changes that were durable:
+ * after a crash, after a record is cut short or followed by garbage, after
+ * checkpoints and setTop, and after several threads have written at once.
+ * @author Jonathan Chua
+ */
+public class LoggedTest {
+
+    /**
+     * @param it An iterator.
+     * @return The elements it visits, separated by commas.
+     */
+    private static String join(Iterator<String> it) {
+        StringBuilder sb = new StringBuilder();
+        while (it.hasNext()) {
+            sb.append(it.next()).append(',');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param dir A directory.
+     * @return The newest log in it.
+     */
+    private static Path newestLog(Path dir) throws IOException {
+        Path newest = null;
+        int generation = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "log.*")) {
+            for (Path f : files) {
+                int g = Integer.parseInt(f.getFileName().toString().substring(4));
+                if (g > generation) {
+                    generation = g;
+                    newest = f;
+                }
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * Run the checks.
+     * @param args the command line arguments (ignored)
+     * @throws Exception if the files cannot be used or a thread is interrupted
+     */
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("logged");
+        try {
+            Random rnd = new Random(1);
+            TreeSet<String> expected = new TreeSet<String>();
+            LoggedSplayFC t = LoggedSplayFC.open(dir);
+            int wrong = 0;
+            for (int i = 0; i < 5000; i++) {
+                String k = Integer.toString(rnd.nextInt(2000), 36);
+                if (rnd.nextInt(3) == 0) {
+                    wrong += t.remove(k) == expected.remove(k) ? 0 : 1;
+                } else {
+                    wrong += t.add(k) == expected.add(k) ? 0 : 1;
+                }
+            }
+            // A crash: the tree is dropped without being closed.
+            t = LoggedSplayFC.open(dir);
+            wrong += join(t.snapShotIterator()).equals(join(expected.iterator())) ? 0 : 1;
+            System.out.println("after crash: replayed " + t.recovered() + ", wrong: " + wrong);
+
+            // A record cut short loses that change and no other.
+            t.add("last one");
+            Path log = newestLog(dir);
+            try (FileChannel c = FileChannel.open(log, StandardOpenOption.WRITE)) {
+                c.truncate(c.size() - 2);
+            }
+            t = LoggedSplayFC.open(dir);
+            System.out.println("torn record dropped: " + (!t.contains("last one")
+                    && join(t.snapShotIterator()).equals(join(expected.iterator()))));
+
+            // So does garbage whose length runs past the end of the log.
+            t.add("garbage follows");
+            expected.add("garbage follows");
+            log = newestLog(dir);
+            try (FileChannel c = FileChannel.open(log, StandardOpenOption.APPEND)) {
+                c.write(ByteBuffer.wrap(new byte[] { 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 7 }));
+            }
+            t = LoggedSplayFC.open(dir);
+            System.out.println("garbage length dropped: "
+                    + join(t.snapShotIterator()).equals(join(expected.iterator())));
+
+            // Without syncWrites, a megabyte of records is written out unasked.
+            t.close();
+            t = LoggedSplayFC.open(dir, false);
+            long syncsBefore = t.syncs();
+            for (int i = 0; i < 100000; i++) {
+                t.add(String.format("unsynced %06d", i));
+            }
+            System.out.println("unsynced writes flushed: " + (t.syncs() > syncsBefore));
+
+            // The sorted inserts left a long spine; one pass over it is linear.
+            long start = System.nanoTime();
+            int n = 0;
+            for (Iterator<String> i = t.updatingIterator(); i.hasNext(); i.next()) {
+                n++;
+            }
+            System.out.println("updating iterator: " + n + " keys in "
+                    + (System.nanoTime() - start) / 1000000 + " ms");
+            for (int i = 0; i < 100000; i++) {
+                t.remove(String.format("unsynced %06d", i));
+            }
+            t.close();
+            t = LoggedSplayFC.open(dir);
+
+            // Checkpoints delete old logs; changes after one are replayed.
+            t.checkpoint();
+            for (int i = 0; i < 1000; i++) {
+                String k = Integer.toString(rnd.nextInt(2000), 36);
+                t.remove(k);
+                expected.remove(k);
+            }
+            Iterator<String> it = t.updatingIterator();
+            while (it.hasNext()) {
+                if (it.next().endsWith("a")) {
+                    it.remove();
+                }
+            }
+            expected.removeIf(k -> k.endsWith("a"));
+            t = LoggedSplayFC.open(dir);
+            long files;
+            try (Stream<Path> s = Files.list(dir)) {
+                files = s.count();
+            }
+            System.out.println("after checkpoint: replayed " + t.recovered() + ", "
+                    + join(t.snapShotIterator()).equals(join(expected.iterator())) + ", " + files + " files");
+
+            // setTop is durable at once.
+            t.setTop(SplayFC.fromSorted(expected.headSet("m").iterator()).getTop());
+            expected = new TreeSet<String>(expected.headSet("m"));
+            t.add("zz");
+            expected.add("zz");
+            t.close();
+            t = LoggedSplayFC.open(dir);
+            System.out.println("after setTop: " + join(t.snapShotIterator()).equals(join(expected.iterator())));
+
+            // Several writers sharing the forces.
+            final LoggedSplayFC shared = t;
+            Thread[] writers = new Thread[8];
+            syncsBefore = shared.syncs();
+            for (int w = 0; w < writers.length; w++) {
+                final int seed = w;
+                writers[w] = new Thread() {
+                    public void run() {
+                        for (int i = 0; i < 500; i++) {
+                            shared.add("w" + seed + ":" + i);
+                        }
+                    }
+                };
+                writers[w].start();
+            }
+            for (Thread w : writers) {
+                w.join();
+            }
+            for (int w = 0; w < writers.length; w++) {
+                for (int i = 0; i < 500; i++) {
+                    expected.add("w" + w + ":" + i);
+                }
+            }
+            long syncs = shared.syncs() - syncsBefore;
+            t = LoggedSplayFC.open(dir);
+            System.out.println("after concurrent writes: " + join(t.snapShotIterator()).equals(join(expected.iterator()))
+                    + ", 4000 records in " + syncs + " forces");
+            t.close();
+        } finally {
+            try (Stream<Path> s = Files.walk(dir)) {
+                s.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+}
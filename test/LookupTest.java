@@ -0,0 +1,97 @@
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Checks the non-splaying lookups containsNoSplay, floor, ceiling, first and
+ * last against TreeSet, and that none of them changes the tree.
+ * @author Jonathan Chua
+ */
+public class LookupTest {
+
+    /**
+     * @param a One key, possibly null.
+     * @param b Another, possibly null.
+     * @return 0 if they are equal, otherwise 1.
+     */
+    private static int same(String a, String b) {
+        return a == null ? (b == null ? 0 : 1) : (a.equals(b) ? 0 : 1);
+    }
+
+    /**
+     * @param t A tree.
+     * @param expected The keys it holds.
+     * @param k A key to look up.
+     * @return The number of lookups from k that disagree with expected.
+     */
+    private static int check(SplayFC t, TreeSet<String> expected, String k) {
+        int wrong = t.containsNoSplay(k) == expected.contains(k) ? 0 : 1;
+        wrong += same(t.floor(k), expected.floor(k));
+        wrong += same(t.ceiling(k), expected.ceiling(k));
+        return wrong;
+    }
+
+    /**
+     * Run the checks.
+     * @param args the command line arguments (ignored)
+     */
+    public static void main(String[] args) {
+        Random rnd = new Random(3);
+
+        // Random trees, looking up keys in, between and beyond their keys.
+        int wrong = 0;
+        int unchanged = 0;
+        int lookups = 0;
+        for (int round = 0; round < 200; round++) {
+            SplayFC t = new SplayFC();
+            TreeSet<String> expected = new TreeSet<String>();
+            int range = 1 + rnd.nextInt(400);
+            for (int i = rnd.nextInt(300); i > 0; i--) {
+                String k = Integer.toString(rnd.nextInt(range), 36);
+                if (rnd.nextInt(4) == 0) {
+                    t.remove(k);
+                    expected.remove(k);
+                } else {
+                    t.add(k);
+                    expected.add(k);
+                }
+            }
+            Cell before = t.getTop();
+            String beforeText = t.toString();
+            for (int i = 0; i < 100; i++) {
+                String k = Integer.toString(rnd.nextInt(range + 2) - 1, 36);
+                wrong += check(t, expected, k);
+                wrong += check(t, expected, k + "0");
+                lookups += 2;
+            }
+            wrong += check(t, expected, "");
+            wrong += check(t, expected, "~");
+            wrong += same(t.first(), expected.isEmpty() ? null : expected.first());
+            wrong += same(t.last(), expected.isEmpty() ? null : expected.last());
+            unchanged += t.getTop() == before && t.toString().equals(beforeText) ? 1 : 0;
+        }
+        System.out.println("200 random trees, " + lookups + " lookups, wrong: " + wrong
+                + ", trees unchanged: " + unchanged);
+
+        // The empty tree.
+        SplayFC empty = new SplayFC();
+        System.out.println("empty tree: " + (!empty.containsNoSplay("a") && empty.floor("a") == null
+                && empty.ceiling("a") == null && empty.first() == null && empty.last() == null));
+
+        // Sorted inserts leave a spine 100000 cells deep, which contains would
+        // splay; the lookups must leave it alone.
+        SplayFC spine = new SplayFC();
+        TreeSet<String> eSpine = new TreeSet<String>();
+        for (int i = 0; i < 100000; i += 2) {
+            String k = String.format("%06d", i);
+            spine.add(k);
+            eSpine.add(k);
+        }
+        Cell before = spine.getTop();
+        int w = 0;
+        for (int i = 0; i < 1000; i++) {
+            w += check(spine, eSpine, String.format("%06d", rnd.nextInt(100001)));
+        }
+        w += same(spine.first(), eSpine.first()) + same(spine.last(), eSpine.last());
+        System.out.println("spine of 50000, wrong: " + w + ", top unchanged: " + (spine.getTop() == before));
+    }
+}
@@ -0,0 +1,110 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Checks that trees written to a MappedCellStore reopen from the file as they
+ * were committed, and compares reopening a large tree with rebuilding it.
+ * @author Jonathan Chua
+ */
+public class MappedTest {
+
+    /**
+     * @param it An iterator.
+     * @return The elements it visits, separated by commas.
+     */
+    private static String join(Iterator<String> it) {
+        StringBuilder sb = new StringBuilder();
+        while (it.hasNext()) {
+            sb.append(it.next()).append(',');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Run the checks.
+     * @param args the command line arguments (ignored)
+     * @throws IOException if the store cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        Path file = Files.createTempFile("splay", ".cells");
+        Files.delete(file);
+        try {
+            Random rnd = new Random(1);
+            SplayFC plain = new SplayFC();
+            String[] shapes = new String[3];
+            MappedCellStore store = MappedCellStore.open(file);
+            ArenaSplayFC t = store.tree();
+            int wrong = 0;
+            for (int round = 0; round < 3; round++) {
+                for (int i = 0; i < 20000; i++) {
+                    String k = Integer.toString(rnd.nextInt(10000), 36);
+                    if (rnd.nextInt(4) == 0) {
+                        wrong += plain.remove(k) == t.remove(k) ? 0 : 1;
+                    } else {
+                        wrong += plain.add(k) == t.add(k) ? 0 : 1;
+                    }
+                }
+                store.commit(t);
+                shapes[round] = plain.toString();
+            }
+            // Changes after the last commit are lost on reopening.
+            t.add("uncommitted");
+            store.close();
+
+            store = MappedCellStore.open(file);
+            int[] commits = store.commits();
+            System.out.println(commits.length + " commits, " + store.bytesAllocated() + " bytes");
+            for (int round = 0; round < 3; round++) {
+                ArenaSplayFC old = store.tree(commits[2 - round]);
+                old.setSplayPolicy(SplayPolicy.NEVER);
+                wrong += old.toString().equals(shapes[round]) ? 0 : 1;
+            }
+            ArenaSplayFC latest = store.tree();
+            wrong += latest.containsNoSplay("uncommitted") ? 1 : 0;
+            wrong += join(latest.snapShotIterator()).equals(join(plain.snapShotIterator())) ? 0 : 1;
+            // The reopened tree carries on where it left off.
+            wrong += latest.add("uncommitted") == plain.add("uncommitted") ? 0 : 1;
+            wrong += latest.toString().equals(plain.toString()) ? 0 : 1;
+            System.out.println("wrong: " + wrong);
+            store.close();
+            Files.delete(file);
+
+            // Reopening a million keys against adding them again.
+            String[] keys = new String[1000000];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = Integer.toString(rnd.nextInt(Integer.MAX_VALUE), 36);
+            }
+            long start = System.nanoTime();
+            SplayFC rebuilt = new SplayFC();
+            for (String k : keys) {
+                rebuilt.add(k);
+            }
+            System.out.println("rebuild with adds: " + (System.nanoTime() - start) / 1000000 + " ms");
+
+            store = MappedCellStore.open(file);
+            t = store.tree();
+            for (String k : keys) {
+                t.add(k);
+            }
+            store.commit(t);
+            store.close();
+
+            start = System.nanoTime();
+            store = MappedCellStore.open(file);
+            ArenaSplayFC reopened = store.tree();
+            reopened.setSplayPolicy(SplayPolicy.NEVER);
+            int found = 0;
+            for (int i = 0; i < 1000; i++) {
+                found += reopened.contains(keys[rnd.nextInt(keys.length)]) ? 1 : 0;
+            }
+            System.out.println("reopen and 1000 lookups: " + (System.nanoTime() - start) / 1000000 + " ms, found "
+                    + found + ", " + store.bytesAllocated() / 1000000 + " MB in the file");
+            store.close();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Checks that SplayFC answers the same under every SplayPolicy, comparing a
+ * random mix of operations against java.util.TreeSet.
+ * @author Jonathan Chua
+ */
+public class PolicyTest {
+
+    /**
+     * Run the checks.
+     * @param args the command line arguments (ignored)
+     */
+    public static void main(String[] args) {
+        SplayPolicy[] policies = {SplayPolicy.ALWAYS, SplayPolicy.SEMI, SplayPolicy.NEVER,
+            SplayPolicy.probabilistic(0.3), SplayPolicy.depthTriggered(2)};
+        Random rnd = new Random(1);
+        for (SplayPolicy policy : policies) {
+            int wrong = 0;
+            for (int trial = 0; trial < 100; trial++) {
+                SplayFC t = trial % 2 == 0 ? new SplayFC() : new SizedSplayFC();
+                t.setSplayPolicy(policy);
+                TreeSet<String> expected = new TreeSet<String>();
+                for (int i = 0; i < 1000; i++) {
+                    String k = Integer.toString(rnd.nextInt(500));
+                    int op = rnd.nextInt(4);
+                    if (op == 0) {
+                        wrong += t.add(k) == expected.add(k) ? 0 : 1;
+                    } else if (op == 1) {
+                        wrong += t.remove(k) == expected.remove(k) ? 0 : 1;
+                    } else {
+                        wrong += t.contains(k) == expected.contains(k) ? 0 : 1;
+                    }
+                }
+                StringBuilder keys = new StringBuilder();
+                t.stream().forEach(k -> keys.append(k).append(','));
+                StringBuilder expectedKeys = new StringBuilder();
+                for (String k : expected) {
+                    expectedKeys.append(k).append(',');
+                }
+                wrong += keys.toString().equals(expectedKeys.toString()) ? 0 : 1;
+            }
+            System.out.println(policy + ": " + wrong + " wrong");
+        }
+        System.out.println("contains on an empty tree: " + new SplayFC().contains("a"));
+
+        // A depth-triggered policy keeps a size estimate, so each tree needs its own.
+        SplayFC t = new SplayFC();
+        t.setSplayPolicy(SplayPolicy.depthTriggered(2));
+        t.add("a");
+        SplayFC copy = t.clone();
+        SplayFC head = t.headSet("b");
+        System.out.println("policy state shared: " + (t.getSplayPolicy() == copy.getSplayPolicy()
+                || t.getSplayPolicy() == head.getSplayPolicy()) + ", stateless policy shared: "
+                + (new SplayFC().clone().getSplayPolicy() == SplayPolicy.ALWAYS));
+    }
+}
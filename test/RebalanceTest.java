@@ -0,0 +1,115 @@
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Builds a spine by inserting keys in order into a ConcurrentSplayFC, then
+ * reads it without splaying with and without a background Rebalancer, and
+ * prints the depth of the deepest key and the time taken.
+ * @author Jonathan Chua
+ */
+public class RebalanceTest {
+
+    /**
+     * the number of keys inserted
+     */
+    private static final int KEYS = 100000;
+    /**
+     * the number of lookups timed
+     */
+    private static final int LOOKUPS = 2000;
+
+    /**
+     * @param i A number.
+     * @return A key that sorts in the same order as i.
+     */
+    private static String key(int i) {
+        return String.format("%08d", i);
+    }
+
+    /**
+     * @param t The tree.
+     * @return The greatest depth of any key in the tree.
+     */
+    private static int maxDepth(ConcurrentSplayFC t) {
+        int max = 0;
+        for (int i = 0; i < KEYS; i += KEYS / 1000) {
+            max = Math.max(max, SplayFC.depthOf(t.getTop(), key(i)));
+        }
+        return Math.max(max, SplayFC.depthOf(t.getTop(), key(0)));
+    }
+
+    /**
+     * Look up random keys in the tree, without splaying.
+     * @param t The tree.
+     * @return The time taken in milliseconds.
+     */
+    private static long readAll(ConcurrentSplayFC t) {
+        Random rnd = new Random(1);
+        long start = System.nanoTime();
+        int missing = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            missing += t.containsNoSplay(key(rnd.nextInt(KEYS))) ? 0 : 1;
+        }
+        if (missing != 0) {
+            System.out.println(missing + " keys missing");
+        }
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    /**
+     * Run the test.
+     * @param args the command line arguments (ignored)
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public static void main(String[] args) throws InterruptedException {
+        for (boolean sized : new boolean[] {false, true}) {
+            ConcurrentSplayFC plain = new ConcurrentSplayFC();
+            ConcurrentSplayFC balanced = new ConcurrentSplayFC();
+            Rebalancer r = new Rebalancer();
+            balanced.setRebalancer(r);
+            for (ConcurrentSplayFC t : new ConcurrentSplayFC[] {plain, balanced}) {
+                if (sized) {
+                    t.setTop(new SizedCell(key(0), null, null));
+                } else {
+                    t.add(key(0));
+                }
+                for (int i = 1; i < KEYS; i++) {
+                    t.add(key(i));
+                }
+            }
+            System.out.println(sized ? "SizedCell" : "Cell");
+            System.out.println("  depth after inserts: " + maxDepth(balanced));
+            System.out.println("  without rebalancer: " + readAll(plain) + " ms, depth "
+                    + maxDepth(plain));
+            long ms = readAll(balanced);
+            while (r.installed() == 0) {
+                Thread.sleep(10);
+            }
+            System.out.println("  with rebalancer: " + ms + " ms, depth " + maxDepth(balanced)
+                    + ", " + r.installed() + " installed");
+            System.out.println("  again: " + readAll(balanced) + " ms");
+            if (sized) {
+                System.out.println("  size: " + SizedCell.size(balanced.getTop()));
+            }
+            int wrong = 0;
+            Iterator<String> it = balanced.snapShotIterator();
+            for (int i = 0; i < KEYS; i++) {
+                wrong += it.hasNext() && it.next().equals(key(i)) ? 0 : 1;
+            }
+            System.out.println("  keys out of place: " + (wrong + (it.hasNext() ? 1 : 0)));
+        }
+
+        // Rebalancing on the calling thread, checking every lookup.
+        ConcurrentSplayFC t = new ConcurrentSplayFC();
+        Rebalancer r = new Rebalancer(3, 1, Runnable::run);
+        t.setRebalancer(r);
+        for (int i = 0; i < KEYS; i++) {
+            t.add(key(i));
+        }
+        t.containsNoSplay(key(0));
+        System.out.println("synchronous: depth " + maxDepth(t) + ", " + r);
+        System.out.println("already balanced: " + t.rebalance() + ", " + r);
+        t.setTop(null);
+        System.out.println("empty tree: " + t.rebalance());
+    }
+}
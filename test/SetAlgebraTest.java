@@ -0,0 +1,160 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Checks union, intersection and difference against TreeSet, on random trees,
+ * on trees sharing cells, on the long spines sorted inserts leave, and on
+ * trees made of different kinds of cell.
+ * @author Jonathan Chua
+ */
+public class SetAlgebraTest {
+
+    /**
+     * @param t A tree.
+     * @param expected The keys it should hold.
+     * @return 0 if t holds exactly the expected keys, in order, otherwise 1.
+     */
+    private static int check(SplayFC t, TreeSet<String> expected) {
+        Iterator<String> i = t.snapShotIterator();
+        for (String k : expected) {
+            if (!i.hasNext() || !i.next().equals(k)) {
+                return 1;
+            }
+        }
+        return i.hasNext() ? 1 : 0;
+    }
+
+    /**
+     * @param a One set.
+     * @param b Another.
+     * @param op 0 for union, 1 for intersection, 2 for difference.
+     * @return The result of the operation, as a new set.
+     */
+    private static TreeSet<String> expected(TreeSet<String> a, TreeSet<String> b, int op) {
+        TreeSet<String> r = new TreeSet<String>(a);
+        if (op == 0) {
+            r.addAll(b);
+        } else if (op == 1) {
+            r.retainAll(b);
+        } else {
+            r.removeAll(b);
+        }
+        return r;
+    }
+
+    /**
+     * @param a One tree.
+     * @param b Another.
+     * @param op 0 for union, 1 for intersection, 2 for difference.
+     * @return The result of the operation.
+     */
+    private static SplayFC apply(SplayFC a, SplayFC b, int op) {
+        return op == 0 ? a.union(b) : op == 1 ? a.intersection(b) : a.difference(b);
+    }
+
+    /**
+     * Run the checks.
+     * @param args the command line arguments (ignored)
+     */
+    public static void main(String[] args) {
+        Random rnd = new Random(8);
+        String[] names = { "union", "intersection", "difference" };
+
+        // Random trees, and clones that share most of their cells.
+        int wrong = 0;
+        int unchanged = 0;
+        for (int round = 0; round < 200; round++) {
+            SplayFC a = new SplayFC();
+            SplayFC b = new SplayFC();
+            TreeSet<String> ea = new TreeSet<String>();
+            TreeSet<String> eb = new TreeSet<String>();
+            int range = 1 + rnd.nextInt(400);
+            for (int i = rnd.nextInt(300); i > 0; i--) {
+                String k = Integer.toString(rnd.nextInt(range), 36);
+                a.add(k);
+                ea.add(k);
+            }
+            if (round % 2 == 0) {
+                b = a.clone();
+                eb.addAll(ea);
+            }
+            for (int i = rnd.nextInt(300); i > 0; i--) {
+                String k = Integer.toString(rnd.nextInt(range), 36);
+                if (rnd.nextBoolean()) {
+                    b.add(k);
+                    eb.add(k);
+                } else {
+                    b.remove(k);
+                    eb.remove(k);
+                }
+            }
+            String aBefore = a.toString();
+            String bBefore = b.toString();
+            for (int op = 0; op < 3; op++) {
+                wrong += check(apply(a, b, op), expected(ea, eb, op));
+                wrong += check(apply(b, a, op), expected(eb, ea, op));
+            }
+            unchanged += a.toString().equals(aBefore) && b.toString().equals(bBefore) ? 1 : 0;
+        }
+        System.out.println("200 random pairs, wrong: " + wrong + ", inputs unchanged: " + unchanged);
+
+        // Sorted inserts leave a spine 100000 cells deep.
+        SplayFC spine = new SplayFC();
+        SplayFC odd = new SplayFC();
+        TreeSet<String> eSpine = new TreeSet<String>();
+        TreeSet<String> eOdd = new TreeSet<String>();
+        for (int i = 0; i < 100000; i++) {
+            String k = String.format("%06d", i);
+            spine.add(k);
+            eSpine.add(k);
+            if (i % 2 == 1) {
+                odd.add(k);
+                eOdd.add(k);
+            }
+        }
+        for (int op = 0; op < 3; op++) {
+            long start = System.nanoTime();
+            int w = check(apply(spine, odd, op), expected(eSpine, eOdd, op))
+                    + check(apply(odd, spine, op), expected(eOdd, eSpine, op));
+            System.out.println("spines of 100000: " + names[op] + " wrong: " + w + " in "
+                    + (System.nanoTime() - start) / 1000000 + " ms");
+        }
+
+        // Mixed kinds of cell take the kind of the tree the method is called on.
+        List<SplayFC> kinds = new ArrayList<SplayFC>();
+        kinds.add(new SplayFC());
+        kinds.add(new SizedSplayFC());
+        kinds.add(new HashedSplayFC());
+        TreeSet<String> eLeft = new TreeSet<String>();
+        TreeSet<String> eRight = new TreeSet<String>();
+        for (int i = 0; i < 500; i++) {
+            eLeft.add(Integer.toString(rnd.nextInt(1000), 36));
+            eRight.add(Integer.toString(rnd.nextInt(1000), 36));
+        }
+        int mixedWrong = 0;
+        for (SplayFC left : kinds) {
+            for (SplayFC right : kinds) {
+                SplayFC l = left.clone();
+                SplayFC r = right.clone();
+                l.addAllSorted(eLeft.iterator());
+                r.addAllSorted(eRight.iterator());
+                for (int op = 0; op < 3; op++) {
+                    SplayFC result = apply(l, r, op);
+                    TreeSet<String> e = expected(eLeft, eRight, op);
+                    mixedWrong += check(result, e);
+                    mixedWrong += result.getClass() == l.getClass() ? 0 : 1;
+                    if (result instanceof SizedSplayFC) {
+                        mixedWrong += ((SizedSplayFC) result).size() == e.size() ? 0 : 1;
+                    }
+                    if (result instanceof HashedSplayFC) {
+                        mixedWrong += result.equals(HashedSplayFC.fromSorted(e.iterator())) ? 0 : 1;
+                    }
+                }
+            }
+        }
+        System.out.println("plain, sized and hashed trees combined every way, wrong: " + mixedWrong);
+    }
+}
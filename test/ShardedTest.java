@@ -0,0 +1,122 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Checks ShardedSplayFC against java.util.TreeSet, from one thread with
+ * shards splitting and merging as keys come and go, and from several threads
+ * writing at once.
+ * @author Jonathan Chua
+ */
+public class ShardedTest {
+
+    /**
+     * @param it An iterator.
+     * @return The elements it visits, separated by commas.
+     */
+    private static String join(Iterator<String> it) {
+        StringBuilder sb = new StringBuilder();
+        while (it.hasNext()) {
+            sb.append(it.next()).append(',');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Run the checks.
+     * @param args the command line arguments (ignored)
+     * @throws InterruptedException if interrupted while waiting for threads
+     */
+    public static void main(String[] args) throws InterruptedException {
+        Random rnd = new Random(1);
+        ShardedSplayFC t = new ShardedSplayFC(8);
+        TreeSet<String> expected = new TreeSet<String>();
+        int wrong = 0;
+        int maxShards = 0;
+        for (int round = 0; round < 6; round++) {
+            boolean growing = round % 2 == 0;
+            for (int i = 0; i < 20000; i++) {
+                String k = Integer.toString(rnd.nextInt(50000), 36);
+                int op = rnd.nextInt(10);
+                if (op < (growing ? 7 : 2)) {
+                    wrong += t.add(k) == expected.add(k) ? 0 : 1;
+                } else if (op < 9) {
+                    wrong += t.remove(k) == expected.remove(k) ? 0 : 1;
+                } else {
+                    wrong += t.contains(k) == expected.contains(k) ? 0 : 1;
+                }
+                maxShards = Math.max(maxShards, t.shardCount());
+            }
+            String k1 = Integer.toString(rnd.nextInt(50000), 36);
+            String k2 = Integer.toString(rnd.nextInt(50000), 36);
+            if (k1.compareTo(k2) > 0) {
+                String k = k1;
+                k1 = k2;
+                k2 = k;
+            }
+            wrong += join(t.headSet(k2).snapShotIterator()).equals(join(expected.headSet(k2).iterator())) ? 0 : 1;
+            wrong += join(t.tailSet(k1).snapShotIterator()).equals(join(expected.tailSet(k1).iterator())) ? 0 : 1;
+            wrong += join(t.subSet(k1, k2).snapShotIterator())
+                    .equals(join(expected.subSet(k1, k2).iterator())) ? 0 : 1;
+            wrong += join(t.snapShotIterator()).equals(join(expected.iterator())) ? 0 : 1;
+            wrong += join(t.updatingIterator()).equals(join(expected.iterator())) ? 0 : 1;
+            wrong += t.size() == expected.size() ? 0 : 1;
+            System.out.println("round " + round + ": " + expected.size() + " keys in " + t.shardCount()
+                    + " shards");
+        }
+        System.out.println("most shards: " + maxShards + ", wrong: " + wrong);
+
+        // Removing through the updating iterator.
+        Iterator<String> it = t.updatingIterator();
+        while (it.hasNext()) {
+            if (it.next().length() % 2 == 0) {
+                it.remove();
+            }
+        }
+        expected.removeIf(k -> k.length() % 2 == 0);
+        System.out.println("after iterator removal: "
+                + join(t.snapShotIterator()).equals(join(expected.iterator())) + ", " + t.shardCount() + " shards");
+
+        // setTop divides a plain tree between the shards.
+        t.setTop(SplayFC.fromSorted(expected.iterator()).getTop());
+        System.out.println("after setTop: " + join(t.snapShotIterator()).equals(join(expected.iterator()))
+                + ", " + t.shardCount() + " shards");
+
+        // Boundaries from a sample, then writers on several threads.
+        List<String> sample = new ArrayList<String>();
+        for (int i = 0; i < 1000; i++) {
+            sample.add(Integer.toString(rnd.nextInt(1000000), 36));
+        }
+        final ShardedSplayFC shared = new ShardedSplayFC(16, sample);
+        System.out.println("from sample: " + shared.shardCount() + " shards");
+        Thread[] writers = new Thread[8];
+        for (int w = 0; w < writers.length; w++) {
+            final int seed = w;
+            writers[w] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 50000; i++) {
+                        // Each thread adds its own keys, then removes the odd ones.
+                        shared.add(seed + ":" + i);
+                        if (i % 2 == 1) {
+                            shared.remove(seed + ":" + i);
+                        }
+                    }
+                }
+            };
+            writers[w].start();
+        }
+        for (Thread w : writers) {
+            w.join();
+        }
+        TreeSet<String> left = new TreeSet<String>();
+        for (int w = 0; w < writers.length; w++) {
+            for (int i = 0; i < 50000; i += 2) {
+                left.add(w + ":" + i);
+            }
+        }
+        System.out.println("after concurrent writes: " + join(shared.snapShotIterator()).equals(join(left.iterator()))
+                + ", " + shared.size() + " keys in " + shared.shardCount() + " shards");
+    }
+}
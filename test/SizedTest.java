@@ -0,0 +1,128 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Checks SizedSplayFC's size, rank, select and subSetSize against TreeSet, on
+ * random trees and on the long spine sorted inserts leave, and that sized and
+ * hashed trees refuse a root of the wrong kind of cell.
+ * @author Jonathan Chua
+ */
+public class SizedTest {
+
+    /**
+     * @param t A tree.
+     * @param expected The keys it holds.
+     * @param k1 A key.
+     * @param k2 Another.
+     * @return The number of order statistics from k1 and k2 that disagree
+     *         with expected.
+     */
+    private static int check(SizedSplayFC t, TreeSet<String> expected, String k1, String k2) {
+        int wrong = t.rank(k1) == expected.headSet(k1).size() ? 0 : 1;
+        int e = k1.compareTo(k2) < 0 ? expected.subSet(k1, k2).size() : 0;
+        wrong += t.subSetSize(k1, k2) == e ? 0 : 1;
+        return wrong;
+    }
+
+    /**
+     * @param t A sized or hashed tree.
+     * @param c A cell.
+     * @return true if t refuses c as its root and is left as it was.
+     */
+    private static boolean refuses(SplayFC t, Cell c) {
+        Cell before = t.getTop();
+        try {
+            t.setTop(c);
+            return false;
+        } catch (IllegalArgumentException e) {
+            return t.getTop() == before;
+        }
+    }
+
+    /**
+     * Run the checks.
+     * @param args the command line arguments (ignored)
+     */
+    public static void main(String[] args) {
+        Random rnd = new Random(5);
+
+        // Random trees, with every position selected and ranks taken at keys,
+        // between keys and beyond both ends.
+        int wrong = 0;
+        for (int round = 0; round < 200; round++) {
+            SizedSplayFC t = round % 2 == 0 ? new SizedSplayFC() : new HashedSplayFC();
+            TreeSet<String> expected = new TreeSet<String>();
+            int range = 1 + rnd.nextInt(400);
+            for (int i = rnd.nextInt(300); i > 0; i--) {
+                String k = Integer.toString(rnd.nextInt(range), 36);
+                if (rnd.nextInt(4) == 0) {
+                    t.remove(k);
+                    expected.remove(k);
+                } else {
+                    t.add(k);
+                    expected.add(k);
+                }
+            }
+            wrong += t.size() == expected.size() ? 0 : 1;
+            List<String> inOrder = new ArrayList<String>(expected);
+            for (int i = 0; i < inOrder.size(); i++) {
+                wrong += t.select(i).equals(inOrder.get(i)) ? 0 : 1;
+                int j = rnd.nextInt(inOrder.size());
+                wrong += t.select(j).equals(inOrder.get(j)) ? 0 : 1;
+            }
+            for (int i = 0; i < 100; i++) {
+                String k1 = Integer.toString(rnd.nextInt(range + 2) - 1, 36);
+                String k2 = Integer.toString(rnd.nextInt(range + 2) - 1, 36);
+                wrong += check(t, expected, k1, k2) + check(t, expected, k1 + "0", k2);
+            }
+            wrong += check(t, expected, "", "~") + check(t, expected, "~", "");
+            wrong += t.size() == expected.size() ? 0 : 1;
+        }
+        System.out.println("200 random trees, wrong: " + wrong);
+
+        // select refuses positions outside the tree.
+        SizedSplayFC small = SizedSplayFC.fromSorted(Arrays.asList("a", "b").iterator());
+        int refused = 0;
+        for (int i : new int[] { -1, 2 }) {
+            try {
+                small.select(i);
+            } catch (IndexOutOfBoundsException e) {
+                refused++;
+            }
+        }
+        System.out.println("select out of range refused: " + (refused == 2)
+                + ", empty tree: " + (new SizedSplayFC().size() == 0 && new SizedSplayFC().rank("a") == 0));
+
+        // Sorted inserts leave a spine 100000 cells deep.
+        SizedSplayFC spine = new SizedSplayFC();
+        for (int i = 0; i < 100000; i++) {
+            spine.add(String.format("%06d", i));
+        }
+        int w = spine.size() == 100000 ? 0 : 1;
+        long start = System.nanoTime();
+        for (int i = 0; i < 10000; i++) {
+            int a = rnd.nextInt(100001);
+            int b = rnd.nextInt(100001);
+            w += spine.select(Math.min(a, 99999)).equals(String.format("%06d", Math.min(a, 99999))) ? 0 : 1;
+            w += spine.rank(String.format("%06d", a)) == a ? 0 : 1;
+            w += spine.rank(String.format("%06d", a) + "5") == Math.min(a + 1, 100000) ? 0 : 1;
+            w += spine.subSetSize(String.format("%06d", a), String.format("%06d", b)) == Math.max(b - a, 0) ? 0 : 1;
+        }
+        System.out.println("spine of 100000, wrong: " + w + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+
+        // A root of the wrong kind is refused.
+        Cell plain = new Cell("a", null, null);
+        Cell sized = new SizedCell("a", null, null);
+        SizedSplayFC s = SizedSplayFC.fromSorted(Arrays.asList("x").iterator());
+        HashedSplayFC h = HashedSplayFC.fromSorted(Arrays.asList("x").iterator());
+        boolean kinds = refuses(s, plain) && refuses(h, plain) && refuses(h, sized);
+        s.setTop(sized);
+        h.setTop(new HashedCell("a", null, null));
+        s.setTop(null);
+        System.out.println("roots of the wrong kind refused: " + kinds + ", right kinds taken: "
+                + (s.size() == 0 && h.size() == 1));
+    }
+}
@@ -0,0 +1,113 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Checks SnapShotIterator against TreeSet: on random trees, while the tree is
+ * changed under it, on the long spines sorted inserts leave, and at its ends.
+ * @author Jonathan Chua
+ */
+public class SnapShotIteratorTest {
+
+    /**
+     * @param it An iterator.
+     * @param expected The keys it should visit.
+     * @return 0 if it visits exactly the expected keys, in order, otherwise 1.
+     */
+    private static int check(Iterator<String> it, TreeSet<String> expected) {
+        for (String k : expected) {
+            if (!it.hasNext() || !it.next().equals(k)) {
+                return 1;
+            }
+        }
+        return it.hasNext() ? 1 : 0;
+    }
+
+    /**
+     * Run the checks.
+     * @param args the command line arguments (ignored)
+     */
+    public static void main(String[] args) {
+        Random rnd = new Random(2);
+
+        // Random trees, with the tree left as it was.
+        int wrong = 0;
+        int unchanged = 0;
+        for (int round = 0; round < 200; round++) {
+            SplayFC t = new SplayFC();
+            TreeSet<String> expected = new TreeSet<String>();
+            int range = 1 + rnd.nextInt(400);
+            for (int i = rnd.nextInt(300); i > 0; i--) {
+                String k = Integer.toString(rnd.nextInt(range), 36);
+                if (rnd.nextInt(4) == 0) {
+                    t.remove(k);
+                    expected.remove(k);
+                } else {
+                    t.add(k);
+                    expected.add(k);
+                }
+            }
+            Cell before = t.getTop();
+            wrong += check(t.snapShotIterator(), expected);
+            unchanged += t.getTop() == before ? 1 : 0;
+        }
+        System.out.println("200 random trees, wrong: " + wrong + ", trees unchanged: " + unchanged);
+
+        // Changes made while iterating are not seen.
+        SplayFC t = new SplayFC();
+        TreeSet<String> expected = new TreeSet<String>();
+        for (int i = 0; i < 2000; i++) {
+            String k = Integer.toString(rnd.nextInt(5000), 36);
+            t.add(k);
+            expected.add(k);
+        }
+        List<String> seen = new ArrayList<String>();
+        Iterator<String> it = t.snapShotIterator();
+        while (it.hasNext()) {
+            seen.add(it.next());
+            String k = Integer.toString(rnd.nextInt(5000), 36);
+            if (rnd.nextBoolean()) {
+                t.add(k);
+            } else {
+                t.remove(k);
+            }
+            t.contains(Integer.toString(rnd.nextInt(5000), 36));
+        }
+        System.out.println("changed while iterating, snapshot kept: "
+                + seen.equals(new ArrayList<String>(expected)));
+
+        // Sorted inserts leave a spine 100000 cells deep.
+        SplayFC spine = new SplayFC();
+        TreeSet<String> eSpine = new TreeSet<String>();
+        for (int i = 0; i < 100000; i++) {
+            String k = String.format("%06d", i);
+            spine.add(k);
+            eSpine.add(k);
+        }
+        long start = System.nanoTime();
+        int w = check(spine.snapShotIterator(), eSpine);
+        System.out.println("spine of 100000, wrong: " + w + " in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+
+        // The ends: empty trees, next past the end and remove.
+        boolean ends = !new SplayFC().snapShotIterator().hasNext();
+        Iterator<String> one = SplayFC.fromSorted(eSpine.headSet("000001").iterator()).snapShotIterator();
+        ends &= one.next().equals("000000") && !one.hasNext();
+        try {
+            one.next();
+            ends = false;
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+        try {
+            t.snapShotIterator().remove();
+            ends = false;
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        System.out.println("empty tree, end of iteration and remove: " + ends);
+    }
+}
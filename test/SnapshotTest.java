@@ -0,0 +1,169 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that versions of a tree written by SnapshotWriter load back with the
+ * same shapes and the same sharing, and compares the size of one snapshot of
+ * many versions with writing each version on its own.
+ * @author Jonathan Chua
+ */
+public class SnapshotTest {
+
+    /**
+     * Count the distinct cells reachable from some trees.
+     * @param trees The trees.
+     * @return The number of cells.
+     */
+    private static int distinctCells(List<SplayFC> trees) {
+        IdentityHashMap<Cell, Boolean> seen = new IdentityHashMap<Cell, Boolean>();
+        List<Cell> stack = new ArrayList<Cell>();
+        for (SplayFC t : trees) {
+            if (t.getTop() != null) {
+                stack.add(t.getTop());
+            }
+            while (!stack.isEmpty()) {
+                Cell c = stack.remove(stack.size() - 1);
+                if (seen.put(c, true) == null) {
+                    if (c.lt != null) {
+                        stack.add(c.lt);
+                    }
+                    if (c.rt != null) {
+                        stack.add(c.rt);
+                    }
+                }
+            }
+        }
+        return seen.size();
+    }
+
+    /**
+     * Run the checks.
+     * @param args the command line arguments (ignored)
+     * @throws IOException never, since the snapshots are in memory
+     */
+    public static void main(String[] args) throws IOException {
+        Random rnd = new Random(1);
+        SplayFC t = new SplayFC();
+        for (int i = 0; i < 100000; i++) {
+            t.add(Integer.toString(rnd.nextInt(1000000), 36));
+        }
+
+        // A checkpoint after every thousand changes.
+        List<SplayFC> versions = new ArrayList<SplayFC>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SnapshotWriter w = new SnapshotWriter(bytes);
+        long separate = 0;
+        long start = System.nanoTime();
+        for (int v = 0; v < 50; v++) {
+            for (int i = 0; i < 1000; i++) {
+                String k = Integer.toString(rnd.nextInt(1000000), 36);
+                if (rnd.nextBoolean()) {
+                    t.add(k);
+                } else {
+                    t.remove(k);
+                }
+            }
+            versions.add(t.clone());
+            w.checkpoint(t);
+            if (v == 0) {
+                System.out.println("first version: " + bytes.size() + " bytes");
+            }
+        }
+        w.close();
+        long writeTime = System.nanoTime() - start;
+        for (SplayFC version : versions) {
+            ByteArrayOutputStream one = new ByteArrayOutputStream();
+            new SnapshotWriter(one).checkpoint(version);
+            separate += one.size();
+        }
+        System.out.println("50 versions: " + bytes.size() + " bytes in one snapshot, " + separate
+                + " written separately, " + writeTime / 1000000 + " ms to write");
+
+        start = System.nanoTime();
+        SnapshotReader r = new SnapshotReader(new ByteArrayInputStream(bytes.toByteArray()));
+        long readTime = System.nanoTime() - start;
+        List<SplayFC> loaded = new ArrayList<SplayFC>();
+        int wrong = r.size() == versions.size() ? 0 : 1;
+        for (int v = 0; v < r.size(); v++) {
+            loaded.add(r.tree(v));
+            wrong += loaded.get(v).toString().equals(versions.get(v).toString()) ? 0 : 1;
+        }
+        System.out.println("loaded in " + readTime / 1000000 + " ms, wrong: " + wrong + ", distinct cells: "
+                + distinctCells(loaded) + " loaded, " + distinctCells(versions) + " written");
+
+        // Carrying on after loading writes only the new cells.
+        ByteArrayOutputStream more = new ByteArrayOutputStream();
+        SnapshotWriter w2 = new SnapshotWriter(more, r);
+        SplayFC next = r.tree(r.size() - 1);
+        next.add("carried on");
+        int n = w2.checkpoint(next);
+        w2.close();
+        ByteArrayOutputStream whole = new ByteArrayOutputStream();
+        whole.write(bytes.toByteArray());
+        whole.write(more.toByteArray());
+        SnapshotReader r2 = new SnapshotReader(new ByteArrayInputStream(whole.toByteArray()));
+        System.out.println("carried on: version " + n + " in " + more.size() + " bytes, "
+                + r2.tree(n).toString().equals(next.toString()));
+
+        // Sized trees, empty trees and keys outside ASCII.
+        SizedSplayFC s = new SizedSplayFC();
+        for (String k : new String[] { "sm\u00f8rrebr\u00f8d", "\u65e5\u672c", "\ud83c\udf32", "plain" }) {
+            s.add(k);
+        }
+        ByteArrayOutputStream small = new ByteArrayOutputStream();
+        SnapshotWriter w3 = new SnapshotWriter(small);
+        w3.checkpoint(s);
+        w3.checkpoint(new SizedSplayFC());
+        w3.checkpoint(new SplayFC());
+        w3.close();
+        SnapshotReader r3 = new SnapshotReader(new ByteArrayInputStream(small.toByteArray()));
+        SplayFC s2 = r3.tree(0);
+        System.out.println("sized: " + (s2 instanceof SizedSplayFC && ((SizedSplayFC) s2).size() == 4
+                && s2.toString().equals(s.toString())) + ", empty: "
+                + (r3.tree(1) instanceof SizedSplayFC && r3.tree(1).getTop() == null
+                        && !(r3.tree(2) instanceof SizedSplayFC)));
+        try {
+            s.add("\ud800");
+            new SnapshotWriter(new ByteArrayOutputStream()).checkpoint(s);
+            System.out.println("unpaired surrogate written");
+        } catch (IllegalArgumentException e) {
+            System.out.println("unpaired surrogate refused");
+        }
+
+        // Damaged streams are refused with an IOException, without
+        // allocating what a corrupt length asks for.
+        int[][] damaged = {
+            // a negative reference, and one to a record not yet written
+            { SnapshotWriter.ROOT, 0xFF, 0xFF, 0xFF, 0xFF, 0x0F },
+            { SnapshotWriter.ROOT, 5 },
+            // a negative key length, a huge one and an int of too many bytes
+            { SnapshotWriter.CELL, 0, 0xFF, 0xFF, 0xFF, 0xFF, 0x0F },
+            { SnapshotWriter.CELL, 0, 0xF0, 0xFF, 0xFF, 0xFF, 0x07, 'a' },
+            { SnapshotWriter.CELL, 0, 0x80, 0x80, 0x80, 0x80, 0x80 },
+            // a sized cell over a plain one, and a hashed root on a plain one
+            { SnapshotWriter.CELL, 0, 1, 'a', 0, 0, SnapshotWriter.SIZED_CELL, 0, 1, 'b', 1, 0 },
+            { SnapshotWriter.CELL, 0, 1, 'a', 0, 0, SnapshotWriter.HASHED_ROOT, 1 },
+            // an unknown record
+            { 99 },
+        };
+        int refused = 0;
+        for (int[] record : damaged) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            stream.write(SnapshotWriter.MAGIC);
+            for (int b : record) {
+                stream.write(b);
+            }
+            try {
+                new SnapshotReader(new ByteArrayInputStream(stream.toByteArray()));
+            } catch (IOException e) {
+                refused++;
+            }
+        }
+        System.out.println("damaged streams refused: " + refused + " of " + damaged.length);
+    }
+}
@@ -0,0 +1,146 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Checks fromSorted and addAllSorted against TreeSet, that the trees they
+ * build are balanced and of the right kind of cell, and that keys out of
+ * order are rejected without changing the tree.
+ * @author Jonathan Chua
+ */
+public class SortedTest {
+
+    /**
+     * @param t A tree.
+     * @param expected The keys it should hold.
+     * @return 0 if t holds exactly the expected keys, in order, otherwise 1.
+     */
+    private static int check(SplayFC t, TreeSet<String> expected) {
+        Iterator<String> i = t.snapShotIterator();
+        for (String k : expected) {
+            if (!i.hasNext() || !i.next().equals(k)) {
+                return 1;
+            }
+        }
+        return i.hasNext() ? 1 : 0;
+    }
+
+    /**
+     * @param t A tree.
+     * @param keys The keys it holds.
+     * @return The depth of its deepest key.
+     */
+    private static int height(SplayFC t, TreeSet<String> keys) {
+        int max = -1;
+        for (String k : keys) {
+            max = Math.max(max, SplayFC.depthOf(t.getTop(), k));
+        }
+        return max;
+    }
+
+    /**
+     * @param keys Keys to add.
+     * @param t A tree.
+     * @return true if addAllSorted rejects the keys and leaves t as it was.
+     */
+    private static boolean rejects(List<String> keys, SplayFC t) {
+        Cell before = t.getTop();
+        try {
+            t.addAllSorted(keys.iterator());
+            return false;
+        } catch (IllegalArgumentException e) {
+            return t.getTop() == before;
+        }
+    }
+
+    /**
+     * Run the checks.
+     * @param args the command line arguments (ignored)
+     */
+    public static void main(String[] args) {
+        Random rnd = new Random(6);
+
+        // fromSorted, then addAllSorted into a tree built by add.
+        int wrong = 0;
+        int unbalanced = 0;
+        int reported = 0;
+        for (int round = 0; round < 200; round++) {
+            TreeSet<String> a = new TreeSet<String>();
+            TreeSet<String> b = new TreeSet<String>();
+            int range = 1 + rnd.nextInt(400);
+            for (int i = rnd.nextInt(300); i > 0; i--) {
+                a.add(Integer.toString(rnd.nextInt(range), 36));
+            }
+            for (int i = rnd.nextInt(300); i > 0; i--) {
+                b.add(Integer.toString(rnd.nextInt(range), 36));
+            }
+            SplayFC t = SplayFC.fromSorted(a.iterator());
+            wrong += check(t, a);
+            // A balanced tree of n keys is floor(log2 n) deep.
+            unbalanced += a.isEmpty() || height(t, a) == 31 - Integer.numberOfLeadingZeros(a.size()) ? 0 : 1;
+
+            SplayFC u = new SplayFC();
+            for (String k : a) {
+                u.add(k);
+            }
+            TreeSet<String> merged = new TreeSet<String>(a);
+            boolean changed = merged.addAll(b);
+            reported += u.addAllSorted(b.iterator()) == changed ? 0 : 1;
+            wrong += check(u, merged);
+            unbalanced += merged.isEmpty() || !changed
+                    || height(u, merged) == 31 - Integer.numberOfLeadingZeros(merged.size()) ? 0 : 1;
+        }
+        System.out.println("200 random sets, wrong: " + wrong + ", unbalanced: " + unbalanced
+                + ", wrong return values: " + reported);
+
+        // Each kind of tree builds its own kind of cell.
+        TreeSet<String> keys = new TreeSet<String>();
+        for (int i = 0; i < 1000; i++) {
+            keys.add(Integer.toString(rnd.nextInt(5000), 36));
+        }
+        SizedSplayFC sized = SizedSplayFC.fromSorted(keys.iterator());
+        HashedSplayFC hashed = HashedSplayFC.fromSorted(keys.iterator());
+        HashedSplayFC added = new HashedSplayFC();
+        for (String k : keys) {
+            added.add(k);
+        }
+        System.out.println("sized and hashed: " + (check(sized, keys) == 0 && check(hashed, keys) == 0
+                && sized.size() == keys.size() && sized.getTop() instanceof SizedCell
+                && hashed.getTop() instanceof HashedCell && hashed.equals(added)));
+
+        // Keys out of order or repeated are rejected, leaving the tree alone.
+        SplayFC t = SplayFC.fromSorted(keys.iterator());
+        List<String> unsorted = new ArrayList<String>(keys);
+        unsorted.add(unsorted.remove(0));
+        boolean rejected = rejects(unsorted, t) && rejects(Arrays.asList("a", "b", "b", "c"), t)
+                && rejects(Arrays.asList("b", "a"), new SplayFC()) && check(t, keys) == 0;
+        try {
+            SplayFC.fromSorted(Arrays.asList("z", "y").iterator());
+            rejected = false;
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        System.out.println("unsorted and repeated keys rejected, tree unchanged: " + rejected);
+
+        // Nothing new to add.
+        SplayFC same = SplayFC.fromSorted(keys.iterator());
+        Cell before = same.getTop();
+        boolean nothing = !same.addAllSorted(keys.headSet("5").iterator())
+                && !same.addAllSorted(new TreeSet<String>().iterator()) && same.getTop() == before;
+        System.out.println("no new keys: returns false, tree unchanged: " + nothing);
+
+        // A million keys.
+        TreeSet<String> big = new TreeSet<String>();
+        while (big.size() < 1000000) {
+            big.add(Integer.toString(rnd.nextInt(), 36));
+        }
+        long start = System.nanoTime();
+        SplayFC built = SplayFC.fromSorted(big.iterator());
+        long bulk = System.nanoTime() - start;
+        System.out.println("10^6 keys: built in " + bulk / 1000000 + " ms, wrong: " + check(built, big)
+                + ", height: " + height(built, big));
+    }
+}
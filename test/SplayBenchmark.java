@@ -0,0 +1,165 @@
+import java.util.Random;
+
+/**
+ * Compares the iterative splay engine in SplayFC against the original
+ * recursive implementation, both for speed and for the shape of the trees
+ * they produce.
+ * @author Jonathan Chua
+ */
+public class SplayBenchmark {
+
+    /**
+     * The original recursive splay, kept here as the reference implementation.
+     * @param c The cell at root of the tree to splay.
+     * @param k The key for which a "nearest" key from the tree is moved to the
+     *          root.
+     * @return The root cell of the new tree.
+     */
+    static Cell recursiveSplay(Cell c, String k) {
+        int compareToCKey = k.compareTo(c.key());
+
+        if (compareToCKey < 0 && c.lt != null) { // Search left
+            int compareToLtKey = k.compareTo(c.lt.key());
+
+            if (compareToLtKey < 0 && c.lt.lt != null) { // left zig-zig step
+                Cell ll = recursiveSplay(c.lt.lt, k);
+                Cell newRR = new Cell(c.key(), c.lt.rt, c.rt);
+                return new Cell(ll.key(), ll.lt, new Cell(c.lt.key(), ll.rt, newRR));
+            } else if (compareToLtKey > 0 && c.lt.rt != null) { // left zig-zag step
+                Cell lr = recursiveSplay(c.lt.rt, k);
+                Cell newRRP = new Cell(c.lt.key(), c.lt.lt, lr.lt);
+                Cell newRRG = new Cell(c.key(), lr.rt, c.rt);
+                return new Cell(lr.key(), newRRP, newRRG);
+            } else { // left zig step
+                return new Cell(c.lt.key(), c.lt.lt, new Cell(c.key(), c.lt.rt, c.rt));
+            }
+        } else if (compareToCKey > 0 && c.rt != null) { // Search right
+            int compareToRtKey = k.compareTo(c.rt.key());
+
+            if (compareToRtKey > 0 && c.rt.rt != null) { // right zig-zig step
+                Cell rr = recursiveSplay(c.rt.rt, k);
+                Cell newRR = new Cell(c.key(), c.lt, c.rt.lt);
+                return new Cell(rr.key(), new Cell(c.rt.key(), newRR, rr.lt), rr.rt);
+            } else if (compareToRtKey < 0 && c.rt.lt != null) { // right zig-zag step
+                Cell rl = recursiveSplay(c.rt.lt, k);
+                Cell newRRP = new Cell(c.rt.key(), rl.rt, c.rt.rt);
+                Cell newRRG = new Cell(c.key(), c.lt, rl.lt);
+                return new Cell(rl.key(), newRRG, newRRP);
+            } else { // right zig step
+                return new Cell(c.rt.key(), new Cell(c.key(), c.lt, c.rt.lt), c.rt.rt);
+            }
+        } else {
+            return c;
+        }
+    }
+
+    /**
+     * Generate n random keys.
+     * @param n The number of keys.
+     * @param rnd The source of randomness.
+     * @return The generated keys.
+     */
+    private static String[] randomKeys(int n, Random rnd) {
+        String[] keys = new String[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = Integer.toString(rnd.nextInt(Integer.MAX_VALUE), 36);
+        }
+        return keys;
+    }
+
+    /**
+     * Check that both engines give identical trees for a sequence of splays.
+     * @param keys The keys to insert and then splay on.
+     * @return true if every splay produced the same tree.
+     */
+    private static boolean sameShapes(String[] keys) {
+        SplayFC t = new SplayFC();
+        for (String k : keys) {
+            t.add(k);
+        }
+        Cell a = t.getTop();
+        Cell b = t.getTop();
+        for (String k : keys) {
+            a = t.splay(a, k);
+            b = recursiveSplay(b, k);
+            if (!new SplayFC(a).toString().equals(new SplayFC(b).toString())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Time a run of splays over a random tree with both engines.
+     * @param n The number of keys in the tree.
+     * @param ops The number of splays to perform.
+     */
+    private static void timeRandom(int n, int ops) {
+        Random rnd = new Random(n);
+        String[] keys = randomKeys(n, rnd);
+        SplayFC t = new SplayFC();
+        for (String k : keys) {
+            t.add(k);
+        }
+        String[] probes = new String[ops];
+        for (int i = 0; i < ops; i++) {
+            probes[i] = keys[rnd.nextInt(n)];
+        }
+
+        for (int round = 0; round < 3; round++) { // the first rounds are warm-up
+            Cell c = t.getTop();
+            long start = System.nanoTime();
+            for (String k : probes) {
+                c = recursiveSplay(c, k);
+            }
+            long recursive = System.nanoTime() - start;
+
+            c = t.getTop();
+            start = System.nanoTime();
+            for (String k : probes) {
+                c = t.splay(c, k);
+            }
+            long iterative = System.nanoTime() - start;
+
+            System.out.println("n=" + n + " round " + round
+                    + ": recursive " + (recursive / ops) + " ns/op"
+                    + ", iterative " + (iterative / ops) + " ns/op");
+        }
+    }
+
+    /**
+     * Splay to the bottom of a spine of n keys inserted in sorted order.
+     * @param n The number of keys.
+     */
+    private static void sortedSpine(int n) {
+        SplayFC t = new SplayFC();
+        for (int i = 0; i < n; i++) {
+            t.add(String.format("%09d", i));
+        }
+        try {
+            recursiveSplay(t.getTop(), SplayFC.STRING_MIN);
+            System.out.println("n=" + n + " sorted: recursive ok");
+        } catch (StackOverflowError e) {
+            System.out.println("n=" + n + " sorted: recursive threw StackOverflowError");
+        }
+        long start = System.nanoTime();
+        Cell c = t.splay(t.getTop(), SplayFC.STRING_MIN);
+        long iterative = System.nanoTime() - start;
+        System.out.println("n=" + n + " sorted: iterative ok, min = " + c.key()
+                + " in " + (iterative / 1000000) + " ms");
+    }
+
+    /**
+     * Run the comparison.
+     * @param args the command line arguments (ignored)
+     */
+    public static void main(String[] args) {
+        System.out.println("Same shapes: " + sameShapes(randomKeys(2000, new Random(1))));
+        timeRandom(1000, 1000000);
+        timeRandom(100000, 1000000);
+        timeRandom(1000000, 1000000);
+        sortedSpine(10000);
+        sortedSpine(1000000);
+        sortedSpine(4000000);
+    }
+}
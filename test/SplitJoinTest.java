@@ -0,0 +1,136 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Checks split, join, headSet, tailSet and subSet against TreeSet, on random
+ * trees and on the long spines sorted inserts leave, and joins of trees made
+ * of different kinds of cell.
+ * @author Jonathan Chua
+ */
+public class SplitJoinTest {
+
+    /**
+     * @param t A tree.
+     * @param expected The keys it should hold.
+     * @return 0 if t holds exactly the expected keys, in order, otherwise 1.
+     */
+    private static int check(SplayFC t, Iterable<String> expected) {
+        Iterator<String> i = t.snapShotIterator();
+        for (String k : expected) {
+            if (!i.hasNext() || !i.next().equals(k)) {
+                return 1;
+            }
+        }
+        return i.hasNext() ? 1 : 0;
+    }
+
+    /**
+     * Run the checks.
+     * @param args the command line arguments (ignored)
+     */
+    public static void main(String[] args) {
+        Random rnd = new Random(7);
+
+        // Random trees split at random keys and joined back together.
+        int wrong = 0;
+        for (int round = 0; round < 200; round++) {
+            SplayFC t = new SplayFC();
+            TreeSet<String> expected = new TreeSet<String>();
+            int range = 1 + rnd.nextInt(400);
+            for (int i = rnd.nextInt(300); i > 0; i--) {
+                String k = Integer.toString(rnd.nextInt(range), 36);
+                t.add(k);
+                expected.add(k);
+            }
+            for (int i = 0; i < 10; i++) {
+                String k1 = Integer.toString(rnd.nextInt(range + 2) - 1, 36);
+                String k2 = Integer.toString(rnd.nextInt(range + 2) - 1, 36);
+                if (k1.compareTo(k2) > 0) {
+                    String swap = k1;
+                    k1 = k2;
+                    k2 = swap;
+                }
+                SplayFC[] halves = t.split(k1);
+                wrong += check(halves[0], expected.headSet(k1));
+                wrong += check(halves[1], expected.tailSet(k1));
+                wrong += check(SplayFC.join(halves[0], halves[1]), expected);
+                wrong += check(t.headSet(k1), expected.headSet(k1));
+                wrong += check(t.tailSet(k1), expected.tailSet(k1));
+                wrong += check(t.subSet(k1, k2), expected.subSet(k1, k2));
+                wrong += check(t, expected);
+            }
+        }
+        System.out.println("200 random trees, wrong: " + wrong);
+
+        // Overlapping keys are rejected.
+        SplayFC low = SplayFC.fromSorted(Arrays.asList("a", "c").iterator());
+        SplayFC high = SplayFC.fromSorted(Arrays.asList("b", "d").iterator());
+        boolean rejected = false;
+        try {
+            SplayFC.join(low, high);
+        } catch (IllegalArgumentException e) {
+            rejected = true;
+        }
+        System.out.println("overlapping keys rejected: " + rejected);
+
+        // Sorted inserts leave a spine 100000 cells deep.
+        SplayFC spine = new SplayFC();
+        TreeSet<String> eSpine = new TreeSet<String>();
+        for (int i = 0; i < 100000; i++) {
+            String k = String.format("%06d", i);
+            spine.add(k);
+            eSpine.add(k);
+        }
+        SplayFC[] halves = spine.clone().split("050000");
+        int w = check(halves[0], eSpine.headSet("050000")) + check(halves[1], eSpine.tailSet("050000"))
+                + check(SplayFC.join(halves[0], halves[1]), eSpine)
+                + check(spine.subSet("025000", "075000"), eSpine.subSet("025000", "075000"));
+        System.out.println("spine of 100000, wrong: " + w);
+
+        // Joins of every kind of tree to every other take the kind of left.
+        List<SplayFC> kinds = new ArrayList<SplayFC>();
+        kinds.add(new SplayFC());
+        kinds.add(new SizedSplayFC());
+        kinds.add(new HashedSplayFC());
+        TreeSet<String> eLeft = new TreeSet<String>();
+        TreeSet<String> eRight = new TreeSet<String>();
+        for (int i = 0; i < 500; i++) {
+            eLeft.add(String.format("a%04d", rnd.nextInt(1000)));
+            eRight.add(String.format("b%04d", rnd.nextInt(1000)));
+        }
+        TreeSet<String> eAll = new TreeSet<String>(eLeft);
+        eAll.addAll(eRight);
+        int mixedWrong = 0;
+        for (SplayFC left : kinds) {
+            for (SplayFC right : kinds) {
+                for (int empty = 0; empty < 2; empty++) {
+                    SplayFC l = left.clone();
+                    SplayFC r = right.clone();
+                    r.addAllSorted(eRight.iterator());
+                    if (empty == 0) {
+                        l.addAllSorted(eLeft.iterator());
+                    }
+                    TreeSet<String> e = empty == 0 ? eAll : eRight;
+                    SplayFC joined = SplayFC.join(l, r);
+                    mixedWrong += check(joined, e);
+                    mixedWrong += joined.getClass() == l.getClass() ? 0 : 1;
+                    if (joined instanceof SizedSplayFC) {
+                        mixedWrong += ((SizedSplayFC) joined).size() == e.size() ? 0 : 1;
+                        joined.add("c");
+                        mixedWrong += ((SizedSplayFC) joined).size() == e.size() + 1 ? 0 : 1;
+                    }
+                    if (joined instanceof HashedSplayFC) {
+                        mixedWrong += joined.equals(HashedSplayFC.fromSorted(e.iterator())) ? 1 : 0;
+                        joined.remove("c");
+                        mixedWrong += joined.equals(HashedSplayFC.fromSorted(e.iterator())) ? 0 : 1;
+                    }
+                }
+            }
+        }
+        System.out.println("plain, sized and hashed trees joined every way, wrong: " + mixedWrong);
+    }
+}
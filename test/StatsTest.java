@@ -0,0 +1,47 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Exercises SplayFC with statistics switched on and prints what SplayStats
+ * recorded, both from a snapshot and over JMX.  Run with -Dsplayfc.stats=true.
+ * @author Jonathan Chua
+ */
+public class StatsTest {
+
+    /**
+     * Run a mixed workload and print the statistics.
+     * @param args the command line arguments (ignored)
+     */
+    public static void main(String[] args) throws Exception {
+        if (!SplayStats.ENABLED) {
+            System.out.println("Statistics are off; run with -Dsplayfc.stats=true");
+            return;
+        }
+        SplayFC t = new SplayFC();
+        Random rnd = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            t.add(Integer.toString(rnd.nextInt(20000)));
+        }
+        for (int i = 0; i < 10000; i++) {
+            t.contains(Integer.toString(rnd.nextInt(20000)));
+        }
+        for (int i = 0; i < 1000; i++) {
+            t.remove(Integer.toString(rnd.nextInt(20000)));
+        }
+        t.headSet("5");
+        t.tailSet("5");
+        t.subSet("2", "3");
+        System.out.print(SplayStats.snapshot());
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("SplayFC:type=SplayStats");
+        System.out.println("JMX calls " + Arrays.toString((String[]) server.getAttribute(name, "Operations"))
+                + " = " + Arrays.toString((long[]) server.getAttribute(name, "Calls")));
+        server.invoke(name, "reset", null, null);
+        System.out.println("After reset: " + SplayStats.snapshot().calls(SplayStats.Op.ADD) + " adds");
+    }
+}
@@ -0,0 +1,63 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+
+/**
+ * Checks that streams over SplayFC and SizedSplayFC visit the keys in order,
+ * sequentially and in parallel, and prints how evenly the spliterators split.
+ * @author Jonathan Chua
+ */
+public class StreamTest {
+
+    /**
+     * Split a spliterator into 2^rounds parts and print the size of each.
+     * @param s The spliterator to split.
+     * @param rounds The number of rounds of splitting.
+     */
+    private static void printParts(Spliterator<String> s, int rounds) {
+        List<Spliterator<String>> parts = new ArrayList<Spliterator<String>>();
+        parts.add(s);
+        for (int round = 0; round < rounds; round++) {
+            List<Spliterator<String>> next = new ArrayList<Spliterator<String>>();
+            for (Spliterator<String> p : parts) {
+                Spliterator<String> prefix = p.trySplit();
+                if (prefix != null) {
+                    next.add(prefix);
+                }
+                next.add(p);
+            }
+            parts = next;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Spliterator<String> p : parts) {
+            final long[] count = new long[1];
+            p.forEachRemaining(k -> count[0]++);
+            sb.append(' ').append(count[0]);
+        }
+        System.out.println(parts.size() + " parts:" + sb);
+    }
+
+    /**
+     * Run the checks.
+     * @param args the command line arguments (ignored)
+     */
+    public static void main(String[] args) {
+        SplayFC[] trees = {new SplayFC(), new SizedSplayFC()};
+        for (SplayFC t : trees) {
+            Random rnd = new Random(1);
+            for (int i = 0; i < 200000; i++) {
+                t.add(Integer.toString(rnd.nextInt(Integer.MAX_VALUE), 36));
+            }
+            List<String> ordered = new ArrayList<String>();
+            t.snapShotIterator().forEachRemaining(ordered::add);
+            System.out.println(t.getClass().getName() + ": " + ordered.size() + " keys");
+            System.out.println("stream in order: " + t.stream().collect(Collectors.toList()).equals(ordered));
+            System.out.println("parallelStream in order: "
+                    + t.parallelStream().collect(Collectors.toList()).equals(ordered));
+            System.out.println("exact size: " + t.spliterator().getExactSizeIfKnown());
+            printParts(t.spliterator(), 3);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that a batch made through TransientSplayFC gives the same keys as
+ * the same calls on a SplayFC, without changing the original tree, and
+ * times both.
+ * @author Jonathan Chua
+ */
+public class TransientTest {
+
+    /**
+     * @param t A tree.
+     * @return The keys of t, in order.
+     */
+    private static List<String> keys(SplayFC t) {
+        List<String> all = new ArrayList<String>();
+        t.snapShotIterator().forEachRemaining(all::add);
+        return all;
+    }
+
+    /**
+     * Run the checks.
+     * @param args the command line arguments (ignored)
+     */
+    public static void main(String[] args) {
+        Random rnd = new Random(1);
+        SplayFC original = new SplayFC();
+        for (int i = 0; i < 100000; i++) {
+            original.add(Integer.toString(rnd.nextInt(Integer.MAX_VALUE), 36));
+        }
+        String[] batch = new String[100000];
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = Integer.toString(rnd.nextInt(Integer.MAX_VALUE), 36);
+        }
+        List<String> before = keys(original);
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            SplayFC copied = original.clone();
+            for (String k : batch) {
+                copied.add(k);
+            }
+            for (int i = 0; i < batch.length; i += 2) {
+                copied.remove(batch[i]);
+            }
+            long persistent = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            TransientSplayFC t = original.asTransient();
+            for (String k : batch) {
+                t.add(k);
+            }
+            for (int i = 0; i < batch.length; i += 2) {
+                t.remove(batch[i]);
+            }
+            SplayFC result = t.persistent();
+            long inPlace = System.nanoTime() - start;
+
+            System.out.println("round " + round + ": same keys " + keys(result).equals(keys(copied))
+                    + ", original unchanged " + keys(original).equals(before)
+                    + ", SplayFC " + (persistent / 1000000) + " ms, transient "
+                    + (inPlace / 1000000) + " ms");
+        }
+        try {
+            TransientSplayFC t = original.asTransient();
+            t.persistent();
+            t.add("again");
+        } catch (IllegalStateException e) {
+            System.out.println("thrown " + e);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Checks that VersionedSplayFC's versions keep the keys they were committed
+ * with while the tree changes, that retention policies keep the right
+ * versions and free the rest, and measures what a version costs in memory.
+ * @author Jonathan Chua
+ */
+public class VersionedTest {
+
+    /**
+     * @param it An iterator.
+     * @return The elements it visits, separated by commas.
+     */
+    private static String join(Iterator<String> it) {
+        StringBuilder sb = new StringBuilder();
+        while (it.hasNext()) {
+            sb.append(it.next()).append(',');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return The heap in use after collecting garbage, in bytes.
+     */
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    /**
+     * Run the checks.
+     * @param args the command line arguments (ignored)
+     */
+    public static void main(String[] args) {
+        Random rnd = new Random(1);
+        VersionedSplayFC t = new VersionedSplayFC();
+        List<TreeSet<String>> expected = new ArrayList<TreeSet<String>>();
+        TreeSet<String> now = new TreeSet<String>();
+        int wrong = 0;
+        for (int v = 1; v <= 50; v++) {
+            for (int i = 0; i < 200; i++) {
+                String k = Integer.toString(rnd.nextInt(3000), 36);
+                if (rnd.nextInt(3) == 0) {
+                    t.remove(k);
+                    now.remove(k);
+                } else {
+                    t.add(k);
+                    now.add(k);
+                }
+            }
+            wrong += t.commit(v * 1000L).number() == v ? 0 : 1;
+            expected.add(new TreeSet<String>(now));
+            t.contains(Integer.toString(rnd.nextInt(3000), 36)); // splays the live tree only
+        }
+        for (int v = 1; v <= 50; v++) {
+            VersionedSplayFC.Version old = t.asOf(v);
+            TreeSet<String> e = expected.get(v - 1);
+            Cell top = old.getTop();
+            wrong += join(old.iterator()).equals(join(e.iterator())) ? 0 : 1;
+            for (int i = 0; i < 50; i++) {
+                String k = Integer.toString(rnd.nextInt(3000), 36);
+                wrong += old.contains(k) == e.contains(k) ? 0 : 1;
+                String f = old.floor(k);
+                wrong += f == null ? (e.floor(k) == null ? 0 : 1) : (f.equals(e.floor(k)) ? 0 : 1);
+                String c = old.ceiling(k);
+                wrong += c == null ? (e.ceiling(k) == null ? 0 : 1) : (c.equals(e.ceiling(k)) ? 0 : 1);
+            }
+            wrong += old.first().equals(e.first()) && old.last().equals(e.last()) ? 0 : 1;
+            wrong += old.getTop() == top ? 0 : 1; // reading never splays
+        }
+        wrong += t.asOfTime(7500).number() == 7 && t.asOfTime(8000).number() == 8 ? 0 : 1;
+        System.out.println("50 versions read back, wrong: " + wrong);
+
+        // A version forked into a tree of its own is unaffected by changes.
+        SplayFC fork = t.asOf(10).toSplayFC();
+        fork.add("forked");
+        System.out.println("fork leaves version alone: " + !t.asOf(10).contains("forked"));
+
+        // Retention.
+        t.setRetentionPolicy(RetentionPolicy.keepLast(5));
+        System.out.println("keep last 5: " + t.versions());
+        VersionedSplayFC hourly = new VersionedSplayFC();
+        hourly.setRetentionPolicy(RetentionPolicy.keepLast(2).or(RetentionPolicy.keepPerInterval(3600000)));
+        for (int m = 0; m < 300; m += 20) {
+            hourly.add("minute " + m);
+            hourly.commit(m * 60000L);
+        }
+        StringBuilder kept = new StringBuilder();
+        for (VersionedSplayFC.Version v : hourly.versions()) {
+            kept.append(v.time() / 60000).append(' ');
+        }
+        System.out.println("last 2 or one per hour, minutes kept: " + kept);
+        try {
+            hourly.asOf(1);
+            System.out.println("dropped version found");
+        } catch (java.util.NoSuchElementException e) {
+            System.out.println("dropped version not found");
+        }
+
+        // Dropped versions' cells are freed.
+        t.add("only in version 51");
+        WeakReference<Cell> dropped = new WeakReference<Cell>(t.commit().getTop());
+        for (int v = 0; v < 5; v++) {
+            t.remove("only in version 51");
+            t.add(Integer.toString(rnd.nextInt(3000), 36));
+            t.commit();
+        }
+        usedHeap();
+        System.out.println("dropped version collected: " + (dropped.get() == null));
+
+        // Memory per version on a large tree.
+        VersionedSplayFC big = new VersionedSplayFC();
+        for (int i = 0; i < 200000; i++) {
+            big.add(Integer.toString(rnd.nextInt(), 36));
+        }
+        big.commit();
+        long base = usedHeap();
+        for (int v = 0; v < 200; v++) {
+            for (int i = 0; i < 100; i++) {
+                big.add(Integer.toString(rnd.nextInt(), 36));
+            }
+            big.commit();
+        }
+        long all = usedHeap();
+        System.out.println("200 versions of 100 adds over 200000 keys: " + (all - base) / 200 / 1024
+                + " KB per version, the whole tree " + base / 1024 / 1024 + " MB");
+        big.setRetentionPolicy(RetentionPolicy.keepLast(1));
+        long one = usedHeap();
+        System.out.println("keeping only the last: " + (all - one) / 1024 / 1024 + " MB freed");
+    }
+}